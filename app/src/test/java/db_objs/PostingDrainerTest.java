@@ -0,0 +1,184 @@
+package db_objs;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+    Replay of a PostingLog a previous run left behind, against an in-memory H2 database in MySQL mode with the
+    applied_postings table of sql/005
+ */
+class PostingDrainerTest {
+    // offset of the applied mark in the log's header, see PostingLog
+    private static final int HEADER_APPLIED = 24;
+
+    private static int databases;
+
+    @TempDir
+    Path dir;
+
+    private ConnectionPool pool;
+    private JournalWriter journal;
+    private PostingDrainer drainer;
+    private PostingLog log;
+
+    @BeforeEach
+    void createDatabase() throws Exception {
+        pool = new ConnectionPool("jdbc:h2:mem:replay" + (++databases) + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "",
+                1, 4, 60_000, 5_000, 2, 60_000, 16);
+        try (Connection connection = pool.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE users(id INT AUTO_INCREMENT PRIMARY KEY, username VARCHAR(255), " +
+                    "current_balance DECIMAL(15,2) NOT NULL, version BIGINT NOT NULL DEFAULT 0)");
+            statement.execute("CREATE TABLE transactions(id INT AUTO_INCREMENT PRIMARY KEY, user_id INT, " +
+                    "transaction_type VARCHAR(50), transaction_amount DECIMAL(15,2), transaction_date DATETIME)");
+            statement.execute(Files.readString(Paths.get("..", "sql", "005_applied_postings.sql")));
+            statement.execute("INSERT INTO users(username, current_balance) VALUES('replay1', 0)");
+        }
+        journal = new JournalWriter(pool, new AccountCache(100, 1_000), 100, 1);
+    }
+
+    @AfterEach
+    void shutdown() throws IOException {
+        if (drainer != null) drainer.shutdown();
+        if (log != null) log.close();
+        journal.shutdown();
+        pool.shutdown();
+    }
+
+    @Test
+    void replayAppliesWhatTheDatabaseHasNotCommitted() throws Exception {
+        Path file = dir.resolve("postings.wal");
+        long logId;
+        try (PostingLog crashed = new PostingLog(file, 8, true)) {
+            logId = crashed.getLogId();
+            crashed.append(PostingLog.DEPOSIT, 1, 0, 500);
+            crashed.append(PostingLog.WITHDRAW, 1, 0, -200);
+            crashed.append(PostingLog.WITHDRAW, 1, 0, -900);
+            crashed.append(PostingLog.DEPOSIT, 1, 0, 100);
+        }
+
+        // the first one was committed just before the crash, the log didn't get to mark it
+        try (Connection connection = pool.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("UPDATE users SET current_balance = 5, version = 1 WHERE id = 1");
+            statement.execute("INSERT INTO transactions(user_id, transaction_type, transaction_amount, transaction_date) " +
+                    "VALUES(1, 'Deposit', 5, NOW())");
+            statement.execute("INSERT INTO applied_postings(log_id, log_sequence, outcome) VALUES(" + logId + ", 1, 'SUCCESS')");
+        }
+
+        drain(file, 4);
+
+        // 5.00 - 2.00 + 1.00, the withdrawal of 9.00 is refused
+        assertEquals(Money.ofCents(400), balance());
+        assertEquals(3, count("SELECT COUNT(*) FROM transactions"));
+        assertEquals("INSUFFICIENT_FUNDS", outcome(logId, 3));
+        assertEquals(4, count("SELECT COUNT(*) FROM applied_postings"));
+        assertEquals(0, log.getPendingCount());
+    }
+
+    @Test
+    void replayingAgainAppliesNothingTwice() throws Exception {
+        Path file = dir.resolve("postings.wal");
+        try (PostingLog crashed = new PostingLog(file, 8, false)) {
+            crashed.append(PostingLog.DEPOSIT, 1, 0, 700);
+            crashed.append(PostingLog.WITHDRAW, 1, 0, -300);
+        }
+        drain(file, 2);
+        assertEquals(Money.ofCents(400), balance());
+        drainer.shutdown();
+        log.close();
+        drainer = null;
+        log = null;
+
+        // the applied mark never reached the disk (forceOnAppend off), both records are replayed once more
+        resetAppliedMark(file);
+        drain(file, 2);
+
+        assertEquals(Money.ofCents(400), balance());
+        assertEquals(2, count("SELECT COUNT(*) FROM transactions"));
+    }
+
+    @Test
+    void tornRecordIsReportedAndTheOthersReplayed() throws Exception {
+        Path file = dir.resolve("postings.wal");
+        try (PostingLog crashed = new PostingLog(file, 8, false)) {
+            crashed.append(PostingLog.DEPOSIT, 1, 0, 100);
+            crashed.append(PostingLog.DEPOSIT, 1, 0, 200);
+            crashed.append(PostingLog.DEPOSIT, 1, 0, 400);
+        }
+        PostingLogTest.corrupt(file, 8, 2);
+
+        drain(file, 3);
+
+        assertEquals(1, log.getSkippedRecordCount());
+        assertEquals(Money.ofCents(500), balance());
+    }
+
+    // opens the log and replays it until the applied mark reaches sequence
+    private void drain(Path file, long sequence) throws Exception {
+        log = new PostingLog(file, 8, false);
+        drainer = new PostingDrainer(pool, log, journal, record -> {
+            throw new SQLException("no transfers in this test");
+        }, 100);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (log.getAppliedSequence() < sequence) {
+            assertTrue(System.nanoTime() < deadline, "replay didn't finish");
+            Thread.sleep(10);
+        }
+    }
+
+    private static void resetAppliedMark(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).putLong(0, 0), HEADER_APPLIED);
+        }
+    }
+
+    private Money balance() throws SQLException {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement queryBalance = connection.prepareStatement("SELECT current_balance FROM users WHERE id = 1");
+             ResultSet resultSet = queryBalance.executeQuery()) {
+            resultSet.next();
+            return Money.read(resultSet, 1);
+        }
+    }
+
+    private String outcome(long logId, long sequence) throws SQLException {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement queryOutcome = connection.prepareStatement(
+                     "SELECT outcome FROM applied_postings WHERE log_id = ? AND log_sequence = ?")) {
+            queryOutcome.setLong(1, logId);
+            queryOutcome.setLong(2, sequence);
+            try (ResultSet resultSet = queryOutcome.executeQuery()) {
+                return resultSet.next() ? resultSet.getString(1) : null;
+            }
+        }
+    }
+
+    private long count(String sql) throws SQLException {
+        try (Connection connection = pool.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+}
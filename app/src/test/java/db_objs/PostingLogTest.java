@@ -0,0 +1,136 @@
+package db_objs;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+    Crash recovery of the PostingLog: a "crash" is closing the log without marking the records applied, then
+    opening the same file again
+ */
+class PostingLogTest {
+    // offsets of the file layout, see PostingLog
+    private static final int HEADER_SIZE = 64, RECORD_SIZE = 64, AMOUNT = 20;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void recordsNotMarkedAppliedAreReplayedInOrder() throws IOException {
+        Path file = dir.resolve("postings.wal");
+        try (PostingLog log = new PostingLog(file, 8, true)) {
+            log.append(PostingLog.DEPOSIT, 1, 0, 500);
+            log.append(PostingLog.WITHDRAW, 1, 0, -200);
+            log.append(PostingLog.TRANSFER, 1, 2, 100);
+            log.markApplied(1);
+        }
+
+        try (PostingLog log = new PostingLog(file, 8, true)) {
+            List<PostingLog.Record> pending = log.pending();
+            assertEquals(List.of(2L, 3L), sequences(pending));
+            assertEquals(PostingLog.WITHDRAW, pending.get(0).getKind());
+            assertEquals(-200, pending.get(0).getAmountCents());
+            assertEquals(2, pending.get(1).getRecipientId());
+            assertEquals(2, log.getPendingCount());
+            assertEquals(0, log.getSkippedRecordCount());
+
+            // numbering goes on after the replayed records
+            assertEquals(4, log.append(PostingLog.DEPOSIT, 1, 0, 1).getSequence());
+        }
+    }
+
+    @Test
+    void replayFollowsTheRingAroundItsEnd() throws IOException {
+        Path file = dir.resolve("postings.wal");
+        try (PostingLog log = new PostingLog(file, 4, false)) {
+            for (int i = 1; i <= 3; i++) log.append(PostingLog.DEPOSIT, 1, 0, i);
+            log.markApplied(3);
+            // 4 goes in the first slot, 5 and 6 over the applied 1 and 2
+            for (int i = 4; i <= 6; i++) log.append(PostingLog.DEPOSIT, 1, 0, i);
+        }
+
+        try (PostingLog log = new PostingLog(file, 4, false)) {
+            assertEquals(List.of(4L, 5L, 6L), sequences(log.pending()));
+            assertEquals(0, log.getSkippedRecordCount());
+        }
+    }
+
+    @Test
+    void fullLogRefusesAppends() throws IOException {
+        try (PostingLog log = new PostingLog(dir.resolve("postings.wal"), 2, false)) {
+            log.append(PostingLog.DEPOSIT, 1, 0, 1);
+            log.append(PostingLog.DEPOSIT, 1, 0, 2);
+            assertThrows(IOException.class, () -> log.append(PostingLog.DEPOSIT, 1, 0, 3));
+
+            log.markApplied(1);
+            assertEquals(3, log.append(PostingLog.DEPOSIT, 1, 0, 3).getSequence());
+        }
+    }
+
+    @Test
+    void tornRecordIsSkippedAndCounted() throws IOException {
+        Path file = dir.resolve("postings.wal");
+        try (PostingLog log = new PostingLog(file, 8, false)) {
+            for (int i = 1; i <= 3; i++) log.append(PostingLog.DEPOSIT, 1, 0, i);
+        }
+        corrupt(file, 8, 2);
+
+        try (PostingLog log = new PostingLog(file, 8, false)) {
+            assertEquals(List.of(1L, 3L), sequences(log.pending()));
+            assertEquals(1, log.getSkippedRecordCount());
+        }
+    }
+
+    @Test
+    void tornRecordOverAnAppliedOneIsCounted() throws IOException {
+        Path file = dir.resolve("postings.wal");
+        try (PostingLog log = new PostingLog(file, 2, false)) {
+            log.append(PostingLog.DEPOSIT, 1, 0, 1);
+            log.append(PostingLog.DEPOSIT, 1, 0, 2);
+            log.markApplied(2);
+            log.append(PostingLog.DEPOSIT, 1, 0, 3);
+        }
+        corrupt(file, 2, 3);
+
+        try (PostingLog log = new PostingLog(file, 2, false)) {
+            assertTrue(log.pending().isEmpty());
+            assertEquals(1, log.getSkippedRecordCount());
+        }
+    }
+
+    @Test
+    void emptySlotsAreNotCounted() throws IOException {
+        Path file = dir.resolve("postings.wal");
+        new PostingLog(file, 16, false).close();
+
+        try (PostingLog log = new PostingLog(file, 16, false)) {
+            assertTrue(log.pending().isEmpty());
+            assertEquals(0, log.getSkippedRecordCount());
+        }
+    }
+
+    // flips a byte of the amount of the record with the given sequence, as a write torn by a crash would
+    static void corrupt(Path file, int capacity, long sequence) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long position = HEADER_SIZE + (sequence % capacity) * RECORD_SIZE + AMOUNT;
+            ByteBuffer amount = ByteBuffer.allocate(1);
+            channel.read(amount, position);
+            amount.put(0, (byte) (amount.get(0) ^ 0x5A)).rewind();
+            channel.write(amount, position);
+        }
+    }
+
+    private static List<Long> sequences(List<PostingLog.Record> records) {
+        return records.stream().map(PostingLog.Record::getSequence).toList();
+    }
+}
@@ -0,0 +1,163 @@
+package benchmarks;
+
+import db_objs.AccountStore;
+import db_objs.AccountStores;
+import db_objs.BatchTransferResult;
+import db_objs.CredentialService;
+import db_objs.InMemoryAccountStore;
+import db_objs.Money;
+import db_objs.PasswordHasher;
+import db_objs.PaymentLine;
+import db_objs.Transaction;
+import db_objs.TransactionPage;
+import db_objs.TransactionQuery;
+import db_objs.TransferResult;
+import db_objs.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    Hot paths of the persistence layer: login, register, transfers, bulk payments and history reads.
+    Runs against the in-process store by default, pass -p engine=mysql to run the same operations against
+    the database configured in dbconfig.properties of the working directory.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AccountStoreBenchmark {
+    // accounts used by login and transfer
+    private static final int ACCOUNTS = 1024;
+
+    // payees of one bulk payment, a payroll-sized run
+    private static final int BATCH_LINES = 1000;
+
+    // only these accounts get the long history, so large history sizes don't need gigabytes of heap
+    private static final int HISTORY_ACCOUNTS = 8;
+
+    private static final String PASSWORD = "benchmark-password";
+    private static final Money ONE = Money.parse("1.00");
+    private static final Money TEN = Money.parse("10.00");
+
+    @Param({"memory"})
+    public String engine;
+
+    @Param({"10", "1000", "100000"})
+    public int historySize;
+
+    // password hashing cost of the memory engine, kept low so setting up 1024 accounts stays quick
+    // pass -p hashIterations=210000 to measure login at the production cost
+    @Param({"1000"})
+    public int hashIterations;
+
+    private AccountStore store;
+    private User[] users;
+    private final AtomicLong registerCounter = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        if ("memory".equals(engine)) {
+            int workers = Runtime.getRuntime().availableProcessors();
+            store = new InMemoryAccountStore(64, new CredentialService(new PasswordHasher(hashIterations),
+                    workers, 1024, 60_000, 0, 1));
+        } else {
+            store = AccountStores.create(engine);
+        }
+        String prefix = "bench" + System.nanoTime() + "_";
+
+        users = new User[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            String username = prefix + i;
+            store.register(username, PASSWORD);
+            users[i] = store.validateLogin(username, PASSWORD);
+            store.postTransaction(new Transaction(users[i].getId(), "Deposit", Money.parse("1000000.00"), null)).get();
+        }
+
+        for (int i = 0; i < HISTORY_ACCOUNTS; i++) {
+            for (int j = 1; j < historySize; j++) {
+                String type = (j & 1) == 0 ? "Deposit" : "Withdraw";
+                Money amount = (j & 1) == 0 ? TEN : TEN.negate();
+                store.postTransaction(new Transaction(users[i].getId(), type, amount, null)).get();
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private final SplittableRandom random = new SplittableRandom();
+        private User sender, recipient;
+        private User historyUser;
+        private int batchSenderIndex;
+
+        @Setup(Level.Iteration)
+        public void pickAccounts(AccountStoreBenchmark benchmark) {
+            int senderIndex = random.nextInt(ACCOUNTS);
+            int recipientIndex = (senderIndex + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+            sender = benchmark.users[senderIndex];
+            recipient = benchmark.users[recipientIndex];
+            historyUser = benchmark.users[random.nextInt(HISTORY_ACCOUNTS)];
+            batchSenderIndex = senderIndex;
+        }
+    }
+
+    @Benchmark
+    public User validateLogin(ThreadState state) {
+        return store.validateLogin(state.sender.getUsername(), PASSWORD);
+    }
+
+    @Benchmark
+    public boolean register() {
+        return store.register("reg" + System.identityHashCode(this) + "_" + registerCounter.incrementAndGet(), PASSWORD);
+    }
+
+    @Benchmark
+    public TransferResult transfer(ThreadState state) {
+        // swap direction every call so balances stay put no matter how long the run is
+        TransferResult result = store.transfer(state.sender, state.recipient.getUsername(), ONE);
+        User sender = state.sender;
+        state.sender = state.recipient;
+        state.recipient = sender;
+        return result;
+    }
+
+    @Benchmark
+    public BatchTransferResult transferBatch(ThreadState state) {
+        // pay the next BATCH_LINES accounts, the sender moves on every call so over a full round every account
+        // pays and receives about the same and balances stay put
+        int senderIndex = state.batchSenderIndex;
+        state.batchSenderIndex = (senderIndex + 1) % ACCOUNTS;
+        List<PaymentLine> lines = new ArrayList<>(BATCH_LINES);
+        for (int i = 1; i <= BATCH_LINES; i++) {
+            lines.add(new PaymentLine(users[(senderIndex + i) % ACCOUNTS].getUsername(), ONE));
+        }
+        return store.transferBatch(users[senderIndex], lines);
+    }
+
+    @Benchmark
+    public List<Transaction> getPastTransaction(ThreadState state) {
+        return store.getPastTransaction(state.historyUser);
+    }
+
+    @Benchmark
+    public TransactionPage getTransactionPage(ThreadState state) {
+        return store.getTransactionPage(state.historyUser, new TransactionQuery());
+    }
+}
@@ -0,0 +1,49 @@
+package benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Arrays;
+
+/*
+    Runs the benchmarks once per thread count with the gc profiler attached (allocation rate per operation)
+    and writes one JSON result file per thread count.
+
+    java -jar benchmarks/target/benchmarks.jar [--threads=1,4,16] [--engine=memory|mysql] [benchmark regex]
+ */
+public class BenchmarkRunner {
+    public static void main(String[] args) throws RunnerException {
+        int[] threadCounts = {1, 4, 16};
+        String engine = null;
+        String include = "benchmarks\\..*";
+
+        for (String arg : args) {
+            if (arg.startsWith("--threads=")) {
+                threadCounts = Arrays.stream(arg.substring("--threads=".length()).split(","))
+                        .mapToInt(value -> Integer.parseInt(value.trim()))
+                        .toArray();
+            } else if (arg.startsWith("--engine=")) {
+                engine = arg.substring("--engine=".length());
+            } else {
+                include = arg;
+            }
+        }
+
+        for (int threads : threadCounts) {
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("jmh-result-" + threads + "-threads.json");
+            if (engine != null) {
+                options.param("engine", engine);
+            }
+            new Runner(options.build()).run();
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package benchmarks;
+
+import db_objs.AccountStore;
+import db_objs.AccountStores;
+import db_objs.BankService;
+import db_objs.CredentialService;
+import db_objs.DbConfig;
+import db_objs.InMemoryAccountStore;
+import db_objs.LatencyHistogram;
+import db_objs.Metrics;
+import db_objs.Money;
+import db_objs.MyJDBC;
+import db_objs.OperationMetrics;
+import db_objs.PasswordHasher;
+import db_objs.TransactionQuery;
+import db_objs.TransferResult;
+import db_objs.User;
+import db_objs.VirtualThreads;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+    Simulates many concurrent users, each on its own (virtual) thread, running a weighted mix of login,
+    deposit, withdraw, transfer and history reads through BankService, then reports throughput, outcomes and
+    latency percentiles per operation. Unlike the JMH benchmarks it keeps thousands of operations in flight at
+    once, so it shows how the system behaves when the connection pool, the credential workers or the database
+    are saturated.
+
+    java -cp benchmarks/target/benchmarks.jar benchmarks.LoadGenerator [--engine=memory|mysql] [--users=1000]
+        [--seconds=60] [--warmupSeconds=10] [--mix=login=5,deposit=30,withdraw=25,transfer=30,history=10]
+        [--thinkMillis=0] [--reportSeconds=5] [--hashIterations=1000]
+
+    --hashIterations only applies to the memory engine, mysql uses the settings of dbconfig.properties.
+ */
+public class LoadGenerator {
+    enum Operation {
+        LOGIN, DEPOSIT, WITHDRAW, TRANSFER, HISTORY
+    }
+
+    private static final String PASSWORD = "load-password";
+    private static final Money ONE = Money.parse("1.00");
+    private static final Money STARTING_BALANCE = Money.parse("10000.00");
+
+    private final BankService bankService;
+    private final int[] weights = new int[Operation.values().length];
+    private final int totalWeight;
+    private final long thinkMillis;
+
+    // per operation: latencies, and the calls that succeeded, were refused by a business rule or failed
+    private final LatencyHistogram[] latencies = new LatencyHistogram[Operation.values().length];
+    private final LongAdder[] succeeded = new LongAdder[Operation.values().length];
+    private final LongAdder[] refused = new LongAdder[Operation.values().length];
+    private final LongAdder[] failed = new LongAdder[Operation.values().length];
+    private final LongAdder completed = new LongAdder();
+
+    // every latency since the last progress line
+    private final LatencyHistogram interval = new LatencyHistogram();
+    private volatile boolean measuring;
+
+    private String[] usernames;
+
+    LoadGenerator(BankService bankService, String mix, long thinkMillis) {
+        this.bankService = bankService;
+        this.thinkMillis = thinkMillis;
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split("=");
+            if (parts.length != 2) throw new IllegalArgumentException("Expected operation=weight in --mix: " + entry);
+            weights[Operation.valueOf(parts[0].trim().toUpperCase(Locale.ROOT)).ordinal()] = Integer.parseInt(parts[1].trim());
+        }
+        totalWeight = Arrays.stream(weights).sum();
+        if (totalWeight <= 0) throw new IllegalArgumentException("--mix needs at least one positive weight");
+
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+            succeeded[i] = new LongAdder();
+            refused[i] = new LongAdder();
+            failed[i] = new LongAdder();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String engine = "memory";
+        int users = 1000;
+        long seconds = 60, warmupSeconds = 10, thinkMillis = 0, reportSeconds = 5;
+        int hashIterations = 1000;
+        String mix = "login=5,deposit=30,withdraw=25,transfer=30,history=10";
+
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--engine=")) {
+                engine = value;
+            } else if (arg.startsWith("--users=")) {
+                users = Integer.parseInt(value);
+            } else if (arg.startsWith("--seconds=")) {
+                seconds = Long.parseLong(value);
+            } else if (arg.startsWith("--warmupSeconds=")) {
+                warmupSeconds = Long.parseLong(value);
+            } else if (arg.startsWith("--mix=")) {
+                mix = value;
+            } else if (arg.startsWith("--thinkMillis=")) {
+                thinkMillis = Long.parseLong(value);
+            } else if (arg.startsWith("--reportSeconds=")) {
+                reportSeconds = Long.parseLong(value);
+            } else if (arg.startsWith("--hashIterations=")) {
+                hashIterations = Integer.parseInt(value);
+            } else {
+                throw new IllegalArgumentException("Unknown argument " + arg);
+            }
+        }
+
+        AccountStore store;
+        if ("memory".equals(engine)) {
+            int workers = Runtime.getRuntime().availableProcessors();
+            store = new InMemoryAccountStore(64, new CredentialService(new PasswordHasher(hashIterations),
+                    workers, 4096, 60_000, 0, 1));
+        } else {
+            store = AccountStores.create(engine);
+        }
+        LoadGenerator generator = new LoadGenerator(
+                new BankService(store, DbConfig.getLong("wal.applyWaitMillis", 3_000)), mix, thinkMillis);
+
+        System.out.println("Creating " + users + " accounts (" + engine + " engine, virtual threads: "
+                + VirtualThreads.isSupported() + ")");
+        List<User> accounts = generator.createAccounts(users);
+        System.out.println("Running for " + warmupSeconds + "s warm-up + " + seconds + "s");
+        generator.run(accounts, warmupSeconds, seconds, reportSeconds);
+
+        if ("mysql".equals(engine)) {
+            System.out.println(MyJDBC.getPoolStats());
+            System.out.println(MyJDBC.getAccountCacheStats());
+            for (OperationMetrics operation : Metrics.operations()) {
+                if (operation.getCalls() == 0) continue;
+                System.out.printf(Locale.ROOT, "%-26s calls=%d errors=%d p99=%.3fms acquire mean=%.3fms p99=%.3fms%n",
+                        operation.getName(), operation.getCalls(), operation.getErrors(), operation.getP99Millis(),
+                        operation.getMeanAcquireMillis(), operation.getP99AcquireMillis());
+            }
+        }
+    }
+
+    // registers and logs in the simulated users, in parallel
+    List<User> createAccounts(int count) throws Exception {
+        if (count < 2) throw new IllegalArgumentException("--users must be at least 2, transfers need a recipient");
+        String prefix = "load" + Long.toString(System.currentTimeMillis(), 36) + "_";
+        usernames = new String[count];
+        List<Future<User>> futures = new ArrayList<>(count);
+        ExecutorService executor = VirtualThreads.newExecutor("load-setup");
+        try {
+            for (int i = 0; i < count; i++) {
+                String username = prefix + i;
+                usernames[i] = username;
+                futures.add(executor.submit(() -> {
+                    bankService.register(username, PASSWORD, PASSWORD);
+                    User user = bankService.login(username, PASSWORD);
+                    if (user == null) throw new IllegalStateException("Could not log in as " + username);
+                    if (bankService.deposit(user, STARTING_BALANCE) != BankService.PostingStatus.SUCCESS) {
+                        throw new IllegalStateException("Could not fund " + username);
+                    }
+                    return user;
+                }));
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        List<User> accounts = new ArrayList<>(count);
+        for (Future<User> future : futures) {
+            accounts.add(future.get());
+        }
+        return accounts;
+    }
+
+    void run(List<User> accounts, long warmupSeconds, long seconds, long reportSeconds) throws InterruptedException {
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(seconds);
+
+        ExecutorService executor = VirtualThreads.newExecutor("load-user");
+        for (int i = 0; i < accounts.size(); i++) {
+            int index = i;
+            executor.execute(() -> simulate(index, accounts.get(index), new SplittableRandom(index), end));
+        }
+        executor.shutdown();
+
+        // progress every reportSeconds, the totals are reset once the warm-up is over
+        long lastCompleted = 0, lastReport = start, measuringSince = start;
+        while (!executor.awaitTermination(reportSeconds, TimeUnit.SECONDS)) {
+            long now = System.nanoTime();
+            long total = completed.sum();
+            System.out.printf("%6.0fs %10.0f ops/s  %s  failed=%d%n", (now - start) / 1e9,
+                    (total - lastCompleted) / ((now - lastReport) / 1e9), interval.summary(), failedCount());
+            interval.reset();
+            lastCompleted = total;
+            lastReport = now;
+
+            if (!measuring && now >= measureFrom) {
+                reset();
+                measuring = true;
+                measuringSince = now;
+                lastCompleted = 0;
+                System.out.println("Warm-up done, measuring");
+            }
+        }
+        report((System.nanoTime() - measuringSince) / 1e9);
+    }
+
+    private void simulate(int index, User user, SplittableRandom random, long end) {
+        while (System.nanoTime() < end) {
+            Operation operation = pick(random);
+            long started = System.nanoTime();
+            Outcome outcome;
+            try {
+                outcome = perform(operation, index, user, random);
+            } catch (RuntimeException e) {
+                // e.g. a connection that couldn't be borrowed in time, or a login shed by the credential workers
+                outcome = Outcome.FAILED;
+            }
+            long elapsed = System.nanoTime() - started;
+
+            int slot = operation.ordinal();
+            latencies[slot].record(elapsed);
+            interval.record(elapsed);
+            (outcome == Outcome.SUCCEEDED ? succeeded : outcome == Outcome.REFUSED ? refused : failed)[slot].increment();
+            completed.increment();
+
+            if (thinkMillis > 0) {
+                try {
+                    Thread.sleep(thinkMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private Outcome perform(Operation operation, int index, User user, SplittableRandom random) {
+        switch (operation) {
+            case LOGIN:
+                return bankService.login(user.getUsername(), PASSWORD) != null ? Outcome.SUCCEEDED : Outcome.FAILED;
+            case DEPOSIT:
+                return outcome(bankService.deposit(user, ONE));
+            case WITHDRAW:
+                return outcome(bankService.withdraw(user, ONE));
+            case TRANSFER: {
+                // any simulated user but this one
+                String recipient = usernames[(index + 1 + random.nextInt(usernames.length - 1)) % usernames.length];
+                TransferResult result = bankService.transfer(user, recipient, ONE);
+                switch (result.getStatus()) {
+                    case SUCCESS:
+                    case PENDING:
+                        return Outcome.SUCCEEDED;
+                    case FAILED:
+                        return Outcome.FAILED;
+                    default:
+                        return Outcome.REFUSED;
+                }
+            }
+            case HISTORY:
+                bankService.getTransactionPage(user, new TransactionQuery());
+                return Outcome.SUCCEEDED;
+            default:
+                throw new IllegalStateException("Unknown operation " + operation);
+        }
+    }
+
+    private static Outcome outcome(BankService.PostingStatus status) {
+        switch (status) {
+            case SUCCESS:
+            case PENDING:
+                return Outcome.SUCCEEDED;
+            case FAILED:
+                return Outcome.FAILED;
+            default:
+                return Outcome.REFUSED;
+        }
+    }
+
+    private Operation pick(SplittableRandom random) {
+        int value = random.nextInt(totalWeight);
+        for (Operation operation : Operation.values()) {
+            value -= weights[operation.ordinal()];
+            if (value < 0) return operation;
+        }
+        throw new IllegalStateException("Weights changed");
+    }
+
+    private void reset() {
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i].reset();
+            succeeded[i].reset();
+            refused[i].reset();
+            failed[i].reset();
+        }
+        completed.reset();
+    }
+
+    private long failedCount() {
+        long count = 0;
+        for (LongAdder adder : failed) {
+            count += adder.sum();
+        }
+        return count;
+    }
+
+    private void report(double seconds) {
+        System.out.printf("%n%-9s %10s %10s %9s %9s  %s%n", "operation", "count", "ops/s", "refused", "failed",
+                "latency");
+        LatencyHistogram all = new LatencyHistogram();
+        long total = 0, totalRefused = 0, totalFailed = 0;
+        for (Operation operation : Operation.values()) {
+            int i = operation.ordinal();
+            long count = succeeded[i].sum() + refused[i].sum() + failed[i].sum();
+            if (count == 0) continue;
+            System.out.printf("%-9s %10d %10.0f %9d %9d  %s%n", operation.name().toLowerCase(Locale.ROOT), count,
+                    count / seconds, refused[i].sum(), failed[i].sum(), latencies[i].summary());
+            all.add(latencies[i]);
+            total += count;
+            totalRefused += refused[i].sum();
+            totalFailed += failed[i].sum();
+        }
+        System.out.printf("%-9s %10d %10.0f %9d %9d  %s%n", "total", total, total / seconds, totalRefused,
+                totalFailed, all.summary());
+    }
+
+    private enum Outcome {
+        SUCCEEDED, REFUSED, FAILED
+    }
+}
@@ -0,0 +1,44 @@
+package benchmarks;
+
+import db_objs.Money;
+import db_objs.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+    Cost of the balance arithmetic and amount parsing done on every posting
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class UserBenchmark {
+    private final User user = new User(1, "benchmark", Money.parse("1000.00"));
+    private final Money amount = Money.parse("12.34");
+    private boolean add;
+
+    @Benchmark
+    public Money setCurrentBalance() {
+        add = !add;
+        Money balance = user.getCurrentBalance();
+        user.setCurrentBalance(add ? balance.plus(amount) : balance.minus(amount));
+        return user.getCurrentBalance();
+    }
+
+    // what the dialog does with the text typed into the amount field
+    @Benchmark
+    public Money parseAmount() {
+        return Money.parse("1234.56");
+    }
+}
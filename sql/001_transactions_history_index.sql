@@ -0,0 +1,3 @@
+-- Composite index used by MyJDBC.getTransactionPage
+-- lets the keyset pagination on (transaction_date, id) for a single user read only the rows of the page
+CREATE INDEX idx_transactions_user_date_id ON transactions (user_id, transaction_date, id);
@@ -0,0 +1,3 @@
+-- Row version of the balance, every statement that changes current_balance also increments it
+-- used by the account cache to tell newer balances from older ones
+ALTER TABLE users ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,3 @@
+-- Passwords are stored as salted PBKDF2 hashes ("pbkdf2-sha256$<iterations>$<salt>$<hash>", about 90 characters)
+-- existing plaintext rows keep working and are replaced with a hash on the user's next successful login
+ALTER TABLE users MODIFY COLUMN password VARCHAR(255) NOT NULL;
@@ -0,0 +1,3 @@
+-- Registration is a single INSERT, the unique key is what stops two clients from taking the same username
+-- remove any existing duplicate usernames before running this
+ALTER TABLE users ADD CONSTRAINT uq_users_username UNIQUE (username);
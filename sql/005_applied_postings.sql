@@ -0,0 +1,10 @@
+-- Postings from the local write-ahead log that have been applied, keyed by the log's id and the record's sequence
+-- a replayed record whose key is already here is skipped, so nothing is applied twice after a crash
+-- outcome is SUCCESS or the TransferResult status the posting failed with
+CREATE TABLE applied_postings (
+    log_id BIGINT NOT NULL,
+    log_sequence BIGINT NOT NULL,
+    outcome VARCHAR(32) NOT NULL,
+    applied_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (log_id, log_sequence)
+);
@@ -0,0 +1,19 @@
+-- Past balances are derived from the transactions ledger: the newest snapshot of an account before a date plus
+-- the ledger entries after its last_transaction_id. Snapshots are added in the background and never updated.
+-- users.current_balance stays the current balance, the row every posting locks and checks for overdrafts.
+CREATE TABLE balance_snapshots (
+    user_id INT NOT NULL,
+    last_transaction_id BIGINT NOT NULL,
+    last_transaction_date DATETIME NOT NULL,
+    balance DECIMAL(15,2) NOT NULL,
+    PRIMARY KEY (user_id, last_transaction_id)
+);
+
+-- the ledger tail of an account is read by id
+CREATE INDEX idx_transactions_user_id ON transactions (user_id, id);
+
+-- start every existing account from its current balance, whatever its ledger adds up to
+INSERT INTO balance_snapshots (user_id, last_transaction_id, last_transaction_date, balance)
+SELECT u.id, COALESCE(MAX(t.id), 0), COALESCE(MAX(t.transaction_date), '1970-01-01 00:00:00'), u.current_balance
+FROM users u LEFT JOIN transactions t ON t.user_id = u.id
+GROUP BY u.id, u.current_balance;
@@ -0,0 +1,9 @@
+-- Progress of bulk imports (TransactionImporter), updated in the same commit as every chunk of imported rows
+-- an interrupted import resumes after lines_done, delete the row to import the same file again
+CREATE TABLE import_checkpoints (
+    import_key VARCHAR(255) NOT NULL PRIMARY KEY,
+    lines_done BIGINT NOT NULL,
+    rows_imported BIGINT NOT NULL,
+    rows_rejected BIGINT NOT NULL,
+    updated_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+);
@@ -0,0 +1,10 @@
+-- How far SnapshotCompactor has looked at the ledger, so a restart continues from there instead of scanning the
+-- entries of every account again. One row, moved forward by whichever instance finishes a pass
+CREATE TABLE snapshot_marks (
+    id TINYINT NOT NULL PRIMARY KEY,
+    scanned_up_to BIGINT NOT NULL
+);
+
+-- 006 took a snapshot of every account up to its newest entry, later entries start new tails
+INSERT INTO snapshot_marks (id, scanned_up_to)
+SELECT 1, COALESCE(MAX(id), 0) FROM transactions;
@@ -0,0 +1,6 @@
+-- Imports are keyed by the SHA-256 of the file, a file that was imported completely is only imported again
+-- with --restart (TransactionImportTool). file_name is kept for reference only
+-- finish interrupted imports before running this, the checkpoints of earlier versions are taken as complete
+ALTER TABLE import_checkpoints ADD COLUMN file_name VARCHAR(255) NULL;
+ALTER TABLE import_checkpoints ADD COLUMN completed_at DATETIME NULL;
+UPDATE import_checkpoints SET completed_at = updated_at;
@@ -0,0 +1,4 @@
+-- The month's lines before a statement page (LedgerStatements) are passed over and summed in the index only,
+-- so it carries the amount. It replaces the index of 001, which is a prefix of it
+CREATE INDEX idx_transactions_user_date_amount ON transactions (user_id, transaction_date, id, transaction_amount);
+DROP INDEX idx_transactions_user_date_id ON transactions;
@@ -0,0 +1,127 @@
+package db_objs;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    Bounded cache of account balances keyed by user id.
+    Every balance change made through MyJDBC writes the committed balance and row version through to this
+    cache. An entry is only ever replaced by one with a higher (or equal) version, so a slow reader can't put
+    an older balance back. Hits don't touch the database. Other processes change the row without telling this
+    cache: the ChangeFeed drops the entries of the accounts it sees new transactions of, and entries expire after
+    ttlMillis, which bounds how stale a balance no window is watching can get. The cache is split into segments,
+    each one a least recently used map with its own lock.
+ */
+public class AccountCache {
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long ttlNanos;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public AccountCache(int maxSize, long ttlMillis) {
+        int segmentCapacity = Math.max(1, maxSize / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    }
+
+    // the cached balance, or null if the account isn't cached or its entry has expired
+    public Entry get(int userId) {
+        Segment segment = segment(userId);
+        Entry entry;
+        synchronized (segment) {
+            entry = segment.get(userId);
+            if (entry != null && System.nanoTime() - entry.loadedAt > ttlNanos) {
+                segment.remove(userId);
+                entry = null;
+            }
+        }
+        (entry != null ? hits : misses).incrementAndGet();
+        return entry;
+    }
+
+    // stores a committed balance unless the cache already holds a newer version
+    // returns the entry the cache holds afterwards
+    public Entry put(int userId, Money balance, long version) {
+        Entry entry = new Entry(balance, version, System.nanoTime());
+        Segment segment = segment(userId);
+        synchronized (segment) {
+            Entry current = segment.get(userId);
+            if (current != null && current.version > version) return current;
+            segment.put(userId, entry);
+            return entry;
+        }
+    }
+
+    // drops the account, the next read goes to the database
+    public void invalidate(int userId) {
+        Segment segment = segment(userId);
+        synchronized (segment) {
+            segment.remove(userId);
+        }
+    }
+
+    public CacheStats getStats() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return new CacheStats(hits.get(), misses.get(), evictions.get(), size);
+    }
+
+    private Segment segment(int userId) {
+        // spread the sequential ids over the segments
+        int hash = userId * 0x9E3779B9;
+        return segments[(hash >>> 28) & (SEGMENTS - 1)];
+    }
+
+    public static final class Entry {
+        private final Money balance;
+        private final long version;
+        private final long loadedAt;
+
+        Entry(Money balance, long version) {
+            this(balance, version, System.nanoTime());
+        }
+
+        private Entry(Money balance, long version, long loadedAt) {
+            this.balance = balance;
+            this.version = version;
+            this.loadedAt = loadedAt;
+        }
+
+        public Money getBalance() {
+            return balance;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+    }
+
+    private final class Segment extends LinkedHashMap<Integer, Entry> {
+        private final int capacity;
+
+        private Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+            if (size() > capacity) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package db_objs;
+
+/*
+    Event of the ChangeFeed: an account has new transactions, made by this or any other session
+ */
+public class AccountChange {
+    private final int userId;
+    private final Money balance;
+    private final long version;
+    private final long lastTransactionId;
+
+    public AccountChange(int userId, Money balance, long version, long lastTransactionId) {
+        this.userId = userId;
+        this.balance = balance;
+        this.version = version;
+        this.lastTransactionId = lastTransactionId;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    // the committed balance read after the transactions were seen
+    public Money getBalance() {
+        return balance;
+    }
+
+    // the row version that came with the balance, a user object holding a higher one is newer than this event
+    public long getVersion() {
+        return version;
+    }
+
+    // the highest id among the account's transactions seen so far
+    public long getLastTransactionId() {
+        return lastTransactionId;
+    }
+
+    // true if it tells something previous (the account's last event, may be null) didn't
+    boolean isNewerThan(AccountChange previous) {
+        return previous == null || lastTransactionId > previous.lastTransactionId || version != previous.version
+                || !balance.equals(previous.balance);
+    }
+}
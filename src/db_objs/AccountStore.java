@@ -0,0 +1,87 @@
+package db_objs;
+
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/*
+    Everything the GUIs need from the persistence layer.
+    MySqlAccountStore talks to the database through MyJDBC, InMemoryAccountStore keeps everything inside the
+    JVM. Use AccountStores.get() to obtain the engine selected in dbconfig.properties.
+    Every balance change is applied relative to the committed balance (a signed amount, refused if it would take
+    the balance below zero), nothing writes a balance a session computed, so concurrent sessions can't overwrite
+    each other's changes and no compare-and-set on the row version is needed.
+ */
+public interface AccountStore {
+    // if valid return an object with the user's information, null otherwise
+    User validateLogin(String username, String password);
+
+    // true - register success, false - register fails (e.g. username already taken)
+    boolean register(String username, String password);
+
+    // records a deposit or withdrawal and applies its signed amount to the user's balance in one step
+    // completes with true once stored, false if a withdrawal exceeds the balance
+    CompletableFuture<Boolean> postTransaction(Transaction transaction);
+
+    // reloads the user's committed balance into the user object and returns it, null if it couldn't be read
+    Money refreshBalance(User user);
+
+    // the user's balance including every transaction made before at, null if it couldn't be read
+    Money getBalanceAt(User user, Timestamp at);
+
+    // moves money from user to transferredUsername, on success the user object holds the new balance
+    // PENDING means the transfer has been recorded but not applied yet, it will be applied later
+    TransferResult transfer(User user, String transferredUsername, Money transferAmount);
+
+    // pays every line from the user's account in one go, the result has a status for each line
+    // lines with a bad amount or an unknown recipient are skipped, the others are applied together or not at all
+    BatchTransferResult transferBatch(User user, List<PaymentLine> lines);
+
+    // opens the store and gets the first login ready (e.g. prepares its queries and compiles the password
+    // hashing), so it costs no more than any later one. Blocks, call it in the background at startup
+    void warmUp();
+
+    // postings and transfers recorded but not yet applied, including the ones left over by a previous run
+    // (which are replayed once the store has been opened)
+    long getPendingPostingCount();
+
+    // postings a previous run logged that were found corrupt (torn by a crash) when the store was opened and
+    // couldn't be replayed
+    long getSkippedPostingCount();
+
+    // every transaction of the user, oldest first
+    List<Transaction> getPastTransaction(User user);
+
+    // one page of the user's transactions, newest first
+    TransactionPage getTransactionPage(User user, TransactionQuery query);
+
+    // the highest id of the user's transactions, 0 if there are none, -1 if it couldn't be read
+    long getLastTransactionId(User user);
+
+    // up to limit of the user's transactions with an id above afterId, in id order, null if they couldn't be read
+    List<Transaction> getTransactionsAfter(User user, long afterId, int limit);
+
+    // the highest id of all transactions, 0 if there are none, -1 if it couldn't be read
+    long getHighWaterMark();
+
+    // the highest transaction id of every user with transactions above afterId up to upToId (inclusive), by user
+    // id, null if they couldn't be read. Balances the store cached for these users are read again
+    Map<Integer, Long> getChangedAccounts(long afterId, long upToId);
+
+    // the statement of every month from first to last (inclusive) oldest first, null if they couldn't be read
+    List<MonthlyStatement> getMonthlyStatements(User user, YearMonth first, YearMonth last);
+
+    // the month's transactions oldest first with the balance after each one, null if they couldn't be read
+    List<StatementLine> getStatementLines(User user, YearMonth month);
+
+    // one page of the month of statement (as returned by getMonthlyStatements) in the query's order, each line
+    // with the balance after it, null if it couldn't be read
+    List<StatementLine> getStatementPage(User user, MonthlyStatement statement, StatementQuery query);
+
+    // writes the transactions of user (of every user when null) to a .csv or .jsonl file, gzip compressed when
+    // the name ends in .gz. Returns the number of rows written, -1 if the export failed
+    long exportTransactions(User user, Path file, ProgressListener progress);
+}
@@ -0,0 +1,30 @@
+package db_objs;
+
+/*
+    Picks the AccountStore engine from the store.engine setting of dbconfig.properties
+    mysql (default) - MySqlAccountStore, memory - InMemoryAccountStore
+ */
+public final class AccountStores {
+    private AccountStores() {
+    }
+
+    public static AccountStore get() {
+        return Holder.INSTANCE;
+    }
+
+    public static AccountStore create(String engine) {
+        switch (engine.trim().toLowerCase()) {
+            case "mysql":
+                return new MySqlAccountStore();
+            case "memory":
+                return new InMemoryAccountStore(DbConfig.getInt("store.memory.lockStripes", 64));
+            default:
+                throw new IllegalArgumentException("Unknown store.engine: " + engine);
+        }
+    }
+
+    // created on first use so the MySQL pool is never started when the in-memory engine is selected
+    private static final class Holder {
+        private static final AccountStore INSTANCE = create(DbConfig.getString("store.engine", "mysql"));
+    }
+}
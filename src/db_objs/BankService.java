@@ -0,0 +1,194 @@
+package db_objs;
+
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/*
+    The banking rules on top of an AccountStore: registration input checks, amount and balance checks before
+    money moves, and turning a deposit or withdrawal into a posting and waiting for it.
+    Has no Swing in it, the GUIs and the load generator drive the same code. Every method blocks, call it off
+    the event dispatch thread.
+ */
+public class BankService {
+    // outcome of a deposit or withdrawal
+    public enum PostingStatus {
+        SUCCESS,
+        INVALID_AMOUNT,
+        INSUFFICIENT_FUNDS,
+        // enough money by the balance the session showed, but another session spent it first
+        // nothing was withdrawn, the user object holds the balance as it is now
+        CONFLICT,
+        // saved, the database will apply it once it responds
+        PENDING,
+        FAILED
+    }
+
+    public static final int MIN_USERNAME_LENGTH = 6;
+
+    private final AccountStore store;
+    private final long applyWaitMillis;
+
+    // pushes balance changes to the open windows, polled for all of them together
+    private final ChangeFeed changeFeed;
+
+    // how often the balance a session showed was out of date by the time money moved
+    private final ContentionCounters staleBalances = Metrics.contention("balanceView");
+
+    // applyWaitMillis - how long a deposit or withdrawal waits for the store before it is reported as pending
+    public BankService(AccountStore store, long applyWaitMillis) {
+        this.store = store;
+        this.applyWaitMillis = applyWaitMillis;
+        this.changeFeed = ChangeFeed.fromConfig(store);
+    }
+
+    // the service on top of the engine selected in dbconfig.properties
+    public static BankService get() {
+        return Holder.INSTANCE;
+    }
+
+    public AccountStore getStore() {
+        return store;
+    }
+
+    // all fields filled in, a long enough username and matching passwords
+    public static boolean isValidRegistration(String username, String password, String rePassword) {
+        if (username.isEmpty() || password.isEmpty() || rePassword.isEmpty()) return false;
+        if (username.length() < MIN_USERNAME_LENGTH) return false;
+        return password.equals(rePassword);
+    }
+
+    // true - register success, false - invalid input or username already taken
+    public boolean register(String username, String password, String rePassword) {
+        return isValidRegistration(username, password, rePassword) && store.register(username, password);
+    }
+
+    // the user's information if the credentials are valid, null otherwise
+    public User login(String username, String password) {
+        User user = store.validateLogin(username, password);
+        if (user != null) StartupOrchestrator.get().loginSucceeded();
+        return user;
+    }
+
+    public PostingStatus deposit(User user, Money amount) {
+        if (amount.signum() <= 0 || !amount.isStorable()) return PostingStatus.INVALID_AMOUNT;
+        return post(user, "Deposit", amount);
+    }
+
+    public PostingStatus withdraw(User user, Money amount) {
+        if (amount.signum() <= 0 || !amount.isStorable()) return PostingStatus.INVALID_AMOUNT;
+
+        // checked against the balance we know first, the store checks the committed balance again
+        if (user.getCurrentBalance().compareTo(amount) < 0) return PostingStatus.INSUFFICIENT_FUNDS;
+
+        // stored with a negative sign, the ledger holds signed amounts
+        return post(user, "Withdraw", amount.negate());
+    }
+
+    public TransferResult transfer(User user, String recipientUsername, Money amount) {
+        if (amount.signum() <= 0 || !amount.isStorable()) {
+            return TransferResult.failure(TransferResult.Status.INVALID_AMOUNT);
+        }
+        if (user.getCurrentBalance().compareTo(amount) < 0) {
+            return TransferResult.failure(TransferResult.Status.INSUFFICIENT_FUNDS);
+        }
+
+        staleBalances.attempt();
+        TransferResult result = store.transfer(user, recipientUsername, amount);
+        if (result.getStatus() == TransferResult.Status.INSUFFICIENT_FUNDS) {
+            // the balance we checked against was out of date, show the one that was committed
+            staleBalances.conflict();
+            store.refreshBalance(user);
+            return TransferResult.failure(TransferResult.Status.CONFLICT);
+        }
+        return result;
+    }
+
+    public BatchTransferResult transferBatch(User user, List<PaymentLine> lines) {
+        return store.transferBatch(user, lines);
+    }
+
+    public Money refreshBalance(User user) {
+        return store.refreshBalance(user);
+    }
+
+    // calls listener (on a background thread) whenever the user's account gets new transactions, made by this
+    // or any other session, e.g. an incoming transfer. Close the subscription when the account isn't shown anymore
+    public ChangeFeed.Subscription subscribe(User user, Consumer<AccountChange> listener) {
+        return changeFeed.subscribe(user, listener);
+    }
+
+    public TransactionPage getTransactionPage(User user, TransactionQuery query) {
+        return store.getTransactionPage(user, query);
+    }
+
+    public long getLastTransactionId(User user) {
+        return store.getLastTransactionId(user);
+    }
+
+    public List<Transaction> getTransactionsAfter(User user, long afterId, int limit) {
+        return store.getTransactionsAfter(user, afterId, limit);
+    }
+
+    public List<MonthlyStatement> getMonthlyStatements(User user, YearMonth first, YearMonth last) {
+        return store.getMonthlyStatements(user, first, last);
+    }
+
+    public List<StatementLine> getStatementLines(User user, YearMonth month) {
+        return store.getStatementLines(user, month);
+    }
+
+    public List<StatementLine> getStatementPage(User user, MonthlyStatement statement, StatementQuery query) {
+        return store.getStatementPage(user, statement, query);
+    }
+
+    // the user's transactions, every user's when user is null, see AccountStore.exportTransactions
+    public long exportTransactions(User user, Path file, ProgressListener progress) {
+        return store.exportTransactions(user, file, progress);
+    }
+
+    private PostingStatus post(User user, String transactionType, Money amount) {
+        // the date is left null, the store uses the time the posting is applied
+        Transaction transaction = new Transaction(user.getId(), transactionType, amount, null);
+
+        if (amount.isNegative()) staleBalances.attempt();
+        boolean posted;
+        try {
+            posted = store.postTransaction(transaction).get(applyWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return PostingStatus.PENDING;
+        } catch (InterruptedException e) {
+            // the posting was handed to the store and will still be applied
+            Thread.currentThread().interrupt();
+            return PostingStatus.PENDING;
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+            return PostingStatus.FAILED;
+        }
+        if (!posted) {
+            if (!amount.isNegative()) return PostingStatus.FAILED;
+
+            // withdraw checked the balance we knew, the committed one had less in it by then
+            staleBalances.conflict();
+            store.refreshBalance(user);
+            return PostingStatus.CONFLICT;
+        }
+
+        // only touch the balance the user object holds once the store has accepted the change
+        // the committed balance also includes changes made by other sessions
+        if (store.refreshBalance(user) == null) {
+            user.addToBalance(amount);
+        }
+        return PostingStatus.SUCCESS;
+    }
+
+    // created on first use, like the store itself
+    private static final class Holder {
+        private static final BankService INSTANCE =
+                new BankService(AccountStores.get(), DbConfig.getLong("wal.applyWaitMillis", 3_000));
+    }
+}
@@ -0,0 +1,62 @@
+package db_objs;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/*
+    Outcome of a bulk payment, one status per payment line in the order the lines were given.
+    The lines that went through were committed together, the sender balance is the one after all of them.
+ */
+public class BatchTransferResult {
+    private final List<TransferResult.Status> statuses;
+    private final Money totalTransferred;
+    private final Money senderBalance;
+    private final long senderVersion;
+
+    public BatchTransferResult(TransferResult.Status[] statuses, Money totalTransferred, Money senderBalance,
+                               long senderVersion) {
+        this.statuses = Collections.unmodifiableList(Arrays.asList(statuses.clone()));
+        this.totalTransferred = totalTransferred;
+        this.senderBalance = senderBalance;
+        this.senderVersion = senderVersion;
+    }
+
+    // every line ends up with the same status, e.g. FAILED when the database couldn't be reached
+    public static BatchTransferResult failure(int lineCount, TransferResult.Status status) {
+        TransferResult.Status[] statuses = new TransferResult.Status[lineCount];
+        Arrays.fill(statuses, status);
+        return new BatchTransferResult(statuses, Money.ZERO, null, 0);
+    }
+
+    public List<TransferResult.Status> getStatuses() {
+        return statuses;
+    }
+
+    public TransferResult.Status getStatus(int line) {
+        return statuses.get(line);
+    }
+
+    public int getSucceededCount() {
+        int succeeded = 0;
+        for (TransferResult.Status status : statuses) {
+            if (status == TransferResult.Status.SUCCESS) succeeded++;
+        }
+        return succeeded;
+    }
+
+    // sum of the lines that went through
+    public Money getTotalTransferred() {
+        return totalTransferred;
+    }
+
+    // sender balance after the batch, null if nothing was committed
+    public Money getSenderBalance() {
+        return senderBalance;
+    }
+
+    // row version of the sender's balance after the batch
+    public long getSenderVersion() {
+        return senderVersion;
+    }
+}
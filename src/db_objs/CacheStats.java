@@ -0,0 +1,43 @@
+package db_objs;
+
+/*
+    Point-in-time snapshot of a cache's counters
+ */
+public class CacheStats {
+    private final long hits, misses, evictions;
+    private final int size;
+
+    public CacheStats(long hits, long misses, long evictions, int size) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.size = size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public double getHitRatio() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CacheStats[hits=%d, misses=%d, hitRatio=%.3f, evictions=%d, size=%d]",
+                hits, misses, getHitRatio(), evictions, size);
+    }
+}
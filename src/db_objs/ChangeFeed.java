@@ -0,0 +1,172 @@
+package db_objs;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/*
+    One poll of the transactions table for all the windows of the app, instead of one per window.
+    While anyone is subscribed it reads the highest transaction id (the end of the primary key) and, once that has
+    moved, which accounts have transactions in between. For each subscribed account among them the balance is read
+    once and handed to every subscriber of the account as an AccountChange. It polls every minIntervalMillis after
+    a change and backs off to maxIntervalMillis while nothing happens, so the database sees the same one indexed
+    read per interval however many windows are open, and a change shows up within maxIntervalMillis of its commit.
+    Like SnapshotCompactor every id range is read on two polls: an id is handed out when a row is inserted but
+    becomes visible when it commits, so a lower one can show up after a higher one was seen.
+    Listeners are called on the feed's thread, one at a time.
+ */
+public class ChangeFeed {
+    private final AccountStore store;
+    private final long minIntervalMillis;
+    private final long maxIntervalMillis;
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(VirtualThreads.daemonThreadFactory("change-feed"));
+
+    // subscribed accounts by user id, guarded by itself, as is polling
+    private final Map<Integer, Account> accounts = new HashMap<>();
+    private boolean polling;
+
+    // ids up to settled have been read twice, seen is the highest id of the last poll, -1 before the first one
+    // only used by the scheduler thread
+    private long settled = -1, seen = -1;
+    private long delayMillis;
+
+    public ChangeFeed(AccountStore store, long minIntervalMillis, long maxIntervalMillis) {
+        this.store = store;
+        this.minIntervalMillis = Math.max(1, minIntervalMillis);
+        this.maxIntervalMillis = Math.max(this.minIntervalMillis, maxIntervalMillis);
+    }
+
+    public static ChangeFeed fromConfig(AccountStore store) {
+        return new ChangeFeed(
+                store,
+                DbConfig.getLong("feed.minIntervalMillis", 200),
+                DbConfig.getLong("feed.maxIntervalMillis", 750)
+        );
+    }
+
+    // calls listener with every change of the user's account from now on, until the subscription is closed
+    public Subscription subscribe(User user, Consumer<AccountChange> listener) {
+        Subscription subscription = new Subscription(user.getId(), listener);
+        synchronized (accounts) {
+            accounts.computeIfAbsent(user.getId(), id -> new Account(user.getUsername())).subscriptions.add(subscription);
+            if (!polling) {
+                polling = true;
+                scheduler.execute(this::poll);
+            }
+        }
+        return subscription;
+    }
+
+    private void poll() {
+        long nextDelay = maxIntervalMillis;
+        try {
+            nextDelay = pollOnce();
+        } catch (RuntimeException e) {
+            // a listener failed, the others get the next change
+            e.printStackTrace();
+        }
+
+        synchronized (accounts) {
+            if (accounts.isEmpty()) {
+                // nobody is watching, the next subscriber starts from the mark as it is then
+                polling = false;
+                settled = seen = -1;
+                return;
+            }
+        }
+        scheduler.schedule(this::poll, nextDelay, TimeUnit.MILLISECONDS);
+    }
+
+    // one poll, returns the delay before the next one
+    private long pollOnce() {
+        long mark = store.getHighWaterMark();
+        if (mark < 0) return maxIntervalMillis;
+
+        if (seen < 0) {
+            // only what happens after subscribing is news
+            settled = seen = mark;
+            delayMillis = minIntervalMillis;
+            return delayMillis;
+        }
+
+        if (mark > settled) {
+            Map<Integer, Long> changed = store.getChangedAccounts(settled, mark);
+            if (changed == null) return maxIntervalMillis;
+            for (Map.Entry<Integer, Long> entry : changed.entrySet()) {
+                publish(entry.getKey(), entry.getValue());
+            }
+        }
+
+        delayMillis = mark > seen ? minIntervalMillis : Math.min(delayMillis * 2, maxIntervalMillis);
+        settled = seen;
+        seen = mark;
+        return delayMillis;
+    }
+
+    private void publish(int userId, long lastTransactionId) {
+        Account account;
+        synchronized (accounts) {
+            account = accounts.get(userId);
+        }
+        if (account == null) return;
+
+        // one read of the balance however many windows show the account
+        User reader = new User(userId, account.username, Money.ZERO);
+        Money balance = store.refreshBalance(reader);
+        if (balance == null) return;
+
+        AccountChange change;
+        List<Subscription> subscriptions;
+        synchronized (accounts) {
+            AccountChange previous = account.lastChange;
+            change = new AccountChange(userId, balance, reader.getVersion(),
+                    previous == null ? lastTransactionId : Math.max(lastTransactionId, previous.getLastTransactionId()));
+            if (!change.isNewerThan(previous)) return;
+            account.lastChange = change;
+            subscriptions = new ArrayList<>(account.subscriptions);
+        }
+        for (Subscription subscription : subscriptions) {
+            subscription.listener.accept(change);
+        }
+    }
+
+    // the subscribers of one account and the last change they were given
+    private static final class Account {
+        private final String username;
+        private final List<Subscription> subscriptions = new ArrayList<>();
+        private AccountChange lastChange;
+
+        private Account(String username) {
+            this.username = username;
+        }
+    }
+
+    /*
+        Close it when the window showing the account goes away
+     */
+    public final class Subscription implements AutoCloseable {
+        private final int userId;
+        private final Consumer<AccountChange> listener;
+
+        private Subscription(int userId, Consumer<AccountChange> listener) {
+            this.userId = userId;
+            this.listener = listener;
+        }
+
+        @Override
+        public void close() {
+            synchronized (accounts) {
+                Account account = accounts.get(userId);
+                if (account == null) return;
+                account.subscriptions.remove(this);
+                if (account.subscriptions.isEmpty()) accounts.remove(userId);
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package db_objs;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    Bounded cache of the statements of months that are over.
+    Postings are dated with the time they are applied, so once a month has ended (plus closeGraceMillis for
+    transactions that were still committing at midnight) its statement never changes again and can be kept
+    without expiry. Anything that writes back-dated transactions must invalidate the account.
+    Least recently used entries are evicted once maxSize statements are held.
+ */
+public class ClosedMonthCache {
+    private final long closeGraceMillis;
+    private final Map<Long, MonthlyStatement> statements;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ClosedMonthCache(int maxSize, long closeGraceMillis) {
+        this.closeGraceMillis = closeGraceMillis;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, MonthlyStatement> eldest) {
+                if (size() > maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // true once no transaction can be added to the month anymore
+    public boolean isClosed(YearMonth month) {
+        LocalDateTime end = month.plusMonths(1).atDay(1).atStartOfDay();
+        long endMillis = end.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        return System.currentTimeMillis() - endMillis > closeGraceMillis;
+    }
+
+    // the cached statement, or null if the month isn't cached
+    public MonthlyStatement get(int userId, YearMonth month) {
+        MonthlyStatement statement;
+        synchronized (statements) {
+            statement = statements.get(key(userId, month));
+        }
+        (statement != null ? hits : misses).incrementAndGet();
+        return statement;
+    }
+
+    // keeps the statement if its month is closed, statements of open months are ignored
+    public void put(int userId, MonthlyStatement statement) {
+        if (!isClosed(statement.getMonth())) return;
+        synchronized (statements) {
+            statements.put(key(userId, statement.getMonth()), statement);
+        }
+    }
+
+    // drops every month of the accounts, e.g. after back-dated transactions were added
+    public void invalidate(Set<Integer> userIds) {
+        if (userIds.isEmpty()) return;
+        synchronized (statements) {
+            statements.keySet().removeIf(key -> userIds.contains((int) (key >>> 32)));
+        }
+    }
+
+    public CacheStats getStats() {
+        int size;
+        synchronized (statements) {
+            size = statements.size();
+        }
+        return new CacheStats(hits.get(), misses.get(), evictions.get(), size);
+    }
+
+    private static long key(int userId, YearMonth month) {
+        return ((long) userId << 32) | (month.getYear() * 12L + month.getMonthValue() - 1);
+    }
+}
@@ -0,0 +1,402 @@
+package db_objs;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+    Bounded pool of physical JDBC connections.
+    Connections handed out by getConnection() are proxies, calling close() on them returns the physical
+    connection to the pool instead of closing it, so the existing try-with-resources code keeps working.
+ */
+public class ConnectionPool {
+    private final String url, username, password;
+    private final int minSize, maxSize;
+    private final long idleTimeoutMillis, acquireTimeoutMillis;
+    private final int validationTimeoutSeconds;
+    private final int statementCacheSize;
+
+    // idle connections, most recently returned first so the hot connections get reused
+    private final ArrayDeque<PooledEntry> idle = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition connectionReturned = lock.newCondition();
+
+    // number of physical connections that are open or being opened (idle + active)
+    private int totalConnections;
+    private boolean shutdown;
+
+    private final ScheduledExecutorService evictor;
+
+    // statistics
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong borrowNanos = new AtomicLong();
+    private final AtomicLong maxBorrowNanos = new AtomicLong();
+    private final AtomicLong waitCount = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong destroyed = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong statementCacheHits = new AtomicLong();
+    private final AtomicLong statementCacheMisses = new AtomicLong();
+    private final AtomicLong statementCacheEvictions = new AtomicLong();
+
+    public ConnectionPool(String url, String username, String password, int minSize, int maxSize,
+                          long idleTimeoutMillis, long acquireTimeoutMillis, int validationTimeoutSeconds,
+                          long evictionIntervalMillis, int statementCacheSize) {
+        if (maxSize < 1) throw new IllegalArgumentException("maxSize must be at least 1");
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.minSize = Math.max(0, Math.min(minSize, maxSize));
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.statementCacheSize = statementCacheSize;
+
+        evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "db-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        evictor.scheduleWithFixedDelay(this::evictIdle, evictionIntervalMillis, evictionIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    // creates a pool using the db.pool.* settings of dbconfig.properties
+    public static ConnectionPool fromConfig() {
+        String url = DbConfig.getString("db.url");
+        if (DbConfig.getBoolean("db.serverPrepStmts", true)) {
+            url = withServerPreparedStatements(url);
+        }
+        return new ConnectionPool(
+                url,
+                DbConfig.getString("db.username"),
+                DbConfig.getString("db.password"),
+                DbConfig.getInt("db.pool.minSize", 2),
+                DbConfig.getInt("db.pool.maxSize", 10),
+                DbConfig.getLong("db.pool.idleTimeoutMillis", 300_000),
+                DbConfig.getLong("db.pool.acquireTimeoutMillis", 5_000),
+                DbConfig.getInt("db.pool.validationTimeoutSeconds", 2),
+                DbConfig.getLong("db.pool.evictionIntervalMillis", 30_000),
+                DbConfig.getInt("db.pool.statementCacheSize", 64)
+        );
+    }
+
+    // asks MySQL Connector/J to prepare statements on the server and keep them prepared, so reusing a
+    // cached statement skips parsing and planning on the server as well
+    private static String withServerPreparedStatements(String url) {
+        if (url == null || !url.startsWith("jdbc:mysql:")) return url;
+
+        StringBuilder builder = new StringBuilder(url);
+        char separator = url.contains("?") ? '&' : '?';
+        String[] properties = {"useServerPrepStmts=true", "cachePrepStmts=true", "prepStmtCacheSize=250",
+                "prepStmtCacheSqlLimit=2048"};
+        for (String property : properties) {
+            String name = property.substring(0, property.indexOf('=') + 1);
+            if (url.contains(name)) continue;
+            builder.append(separator).append(property);
+            separator = '&';
+        }
+        return builder.toString();
+    }
+
+    // opens connections until the pool holds minSize of them
+    public void warmUp() {
+        while (true) {
+            lock.lock();
+            try {
+                if (shutdown || totalConnections >= minSize) return;
+                totalConnections++;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                release(new PooledEntry(openPhysical()));
+            } catch (SQLException e) {
+                lock.lock();
+                try {
+                    totalConnections--;
+                } finally {
+                    lock.unlock();
+                }
+                e.printStackTrace();
+                return;
+            }
+        }
+    }
+
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(acquireTimeoutMillis);
+        boolean waited = false;
+
+        while (true) {
+            PooledEntry entry = null;
+            boolean openNew = false;
+
+            lock.lock();
+            try {
+                while (true) {
+                    if (shutdown) throw new SQLException("Connection pool has been shut down");
+
+                    entry = idle.pollFirst();
+                    if (entry != null) break;
+
+                    if (totalConnections < maxSize) {
+                        totalConnections++;
+                        openNew = true;
+                        break;
+                    }
+
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        timeouts.incrementAndGet();
+                        throw new SQLException("Timed out after " + acquireTimeoutMillis
+                                + " ms waiting for a database connection");
+                    }
+                    waited = true;
+                    try {
+                        connectionReturned.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for a database connection", e);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (openNew) {
+                try {
+                    entry = new PooledEntry(openPhysical());
+                } catch (SQLException e) {
+                    discard(null);
+                    throw e;
+                }
+            } else if (!isValid(entry)) {
+                // stale connection (server restart, network drop, ...), throw it away and try again
+                validationFailures.incrementAndGet();
+                discard(entry);
+                continue;
+            }
+
+            long end = System.nanoTime();
+            if (waited) {
+                waitCount.incrementAndGet();
+                waitNanos.addAndGet(end - start);
+                updateMax(maxWaitNanos, end - start);
+            }
+            borrowCount.incrementAndGet();
+            borrowNanos.addAndGet(end - start);
+            updateMax(maxBorrowNanos, end - start);
+            return entry.lease();
+        }
+    }
+
+    public PoolStats getStats() {
+        int idleCount, total;
+        lock.lock();
+        try {
+            idleCount = idle.size();
+            total = totalConnections;
+        } finally {
+            lock.unlock();
+        }
+        return new PoolStats(total - idleCount, idleCount, maxSize, borrowCount.get(), borrowNanos.get(),
+                maxBorrowNanos.get(), waitCount.get(), waitNanos.get(), maxWaitNanos.get(), timeouts.get(),
+                created.get(), destroyed.get(), validationFailures.get(), statementCacheHits.get(),
+                statementCacheMisses.get(), statementCacheEvictions.get());
+    }
+
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            for (PooledEntry entry : idle) {
+                closePhysical(entry.physical);
+            }
+            totalConnections -= idle.size();
+            idle.clear();
+            connectionReturned.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        evictor.shutdownNow();
+    }
+
+    private Connection openPhysical() throws SQLException {
+        Connection connection = DriverManager.getConnection(url, username, password);
+        created.incrementAndGet();
+        return connection;
+    }
+
+    private boolean isValid(PooledEntry entry) {
+        try {
+            return entry.physical.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    // gives a connection back to the pool once the caller has closed its proxy
+    private void release(PooledEntry entry) {
+        try {
+            if (entry.physical.isClosed()) {
+                discard(entry);
+                return;
+            }
+            // never hand an open transaction to the next borrower
+            if (!entry.physical.getAutoCommit()) {
+                entry.physical.rollback();
+                entry.physical.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            discard(entry);
+            return;
+        }
+
+        lock.lock();
+        try {
+            if (shutdown) {
+                totalConnections--;
+                closePhysical(entry.physical);
+                return;
+            }
+            entry.lastReturned = System.currentTimeMillis();
+            idle.offerFirst(entry);
+            connectionReturned.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void discard(PooledEntry entry) {
+        if (entry != null) closePhysical(entry.physical);
+        lock.lock();
+        try {
+            totalConnections--;
+            connectionReturned.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void closePhysical(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            // already broken, nothing else to do
+        }
+        destroyed.incrementAndGet();
+    }
+
+    // closes connections that sat idle for too long, then tops the pool back up to minSize
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleTimeoutMillis;
+        lock.lock();
+        try {
+            // oldest connections are at the end of the deque
+            Iterator<PooledEntry> iterator = idle.descendingIterator();
+            while (iterator.hasNext() && totalConnections > minSize) {
+                PooledEntry entry = iterator.next();
+                if (entry.lastReturned > cutoff) break;
+                iterator.remove();
+                totalConnections--;
+                closePhysical(entry.physical);
+            }
+        } finally {
+            lock.unlock();
+        }
+        warmUp();
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) return;
+        }
+    }
+
+    /*
+        Physical connection owned by the pool, a new proxy is created for every lease so that a caller
+        holding on to a closed proxy can't use the connection after someone else has borrowed it
+     */
+    private final class PooledEntry {
+        private final Connection physical;
+        private final StatementCache statementCache;
+        private long lastReturned;
+
+        private PooledEntry(Connection physical) {
+            this.physical = physical;
+            this.statementCache = statementCacheSize > 0
+                    ? new StatementCache(physical, statementCacheSize, statementCacheHits, statementCacheMisses,
+                    statementCacheEvictions)
+                    : null;
+        }
+
+        private Connection lease() {
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    new LeaseHandler(this));
+        }
+    }
+
+    private final class LeaseHandler implements InvocationHandler {
+        private final PooledEntry entry;
+        private boolean closed;
+
+        private LeaseHandler(PooledEntry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        release(entry);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || entry.physical.isClosed();
+                case "prepareStatement":
+                    // only the plain prepareStatement(String) goes through the cache
+                    if (!closed && entry.statementCache != null && args.length == 1) {
+                        return entry.statementCache.prepare((String) args[0], (Connection) proxy);
+                    }
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + entry.physical;
+            }
+
+            if (closed) throw new SQLException("Connection has already been returned to the pool");
+            try {
+                return method.invoke(entry.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
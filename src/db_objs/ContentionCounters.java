@@ -0,0 +1,56 @@
+package db_objs;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+    How often operations of one kind find that a balance they read has changed before they act on it. A rising
+    conflict ratio means many sessions move money on the same accounts at once.
+ */
+public class ContentionCounters implements ContentionCountersMBean {
+    private final String name;
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+
+    ContentionCounters(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void attempt() {
+        attempts.increment();
+    }
+
+    public void conflict() {
+        conflicts.increment();
+    }
+
+    @Override
+    public long getAttempts() {
+        return attempts.sum();
+    }
+
+    @Override
+    public long getConflicts() {
+        return conflicts.sum();
+    }
+
+    @Override
+    public double getConflictRatio() {
+        long attempted = attempts.sum();
+        return attempted == 0 ? 0 : (double) conflicts.sum() / attempted;
+    }
+
+    @Override
+    public void reset() {
+        attempts.reset();
+        conflicts.reset();
+    }
+
+    @Override
+    public String toString() {
+        return name + " attempts=" + getAttempts() + " conflicts=" + getConflicts();
+    }
+}
@@ -0,0 +1,17 @@
+package db_objs;
+
+/*
+    JMX view of one ContentionCounters, published as bankapp:type=Contention,name=<name>
+ */
+public interface ContentionCountersMBean {
+    // attempts, e.g. withdrawals checked against the balance a session showed
+    long getAttempts();
+
+    // attempts that found the balance changed since it was read
+    long getConflicts();
+
+    // conflicts per attempt, 0 when nothing has been attempted yet
+    double getConflictRatio();
+
+    void reset();
+}
@@ -0,0 +1,198 @@
+package db_objs;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Runs password hashing and verification on a small dedicated pool of worker threads.
+    Hashing is deliberately slow, so the pool is bounded: at most queueCapacity requests wait for a worker and
+    anything beyond that, or anything that waited longer than maxQueueMillis, is rejected straight away with a
+    RejectedExecutionException instead of piling up. That keeps a burst of logins from starving the rest of the
+    application and keeps the latency of the logins that are accepted predictable.
+    Failed attempts are remembered for failureCacheMillis, repeating the same wrong password in that window is
+    answered without hashing again.
+ */
+public class CredentialService {
+    private final PasswordHasher hasher;
+    private final ThreadPoolExecutor workers;
+    private final long maxQueueNanos;
+    private final long failureCacheNanos;
+    private final FailureCache failures;
+    private final byte[] fingerprintKey = new byte[16];
+    private volatile String dummyHash;
+
+    public CredentialService(PasswordHasher hasher, int workerCount, int queueCapacity, long maxQueueMillis,
+                             long failureCacheMillis, int failureCacheSize) {
+        this.hasher = hasher;
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), VirtualThreads.daemonThreadFactory("credentials"),
+                (task, executor) -> {
+                    throw new RejectedExecutionException("Too many logins in progress, try again in a moment");
+                });
+        this.maxQueueNanos = TimeUnit.MILLISECONDS.toNanos(maxQueueMillis);
+        this.failureCacheNanos = TimeUnit.MILLISECONDS.toNanos(failureCacheMillis);
+        this.failures = new FailureCache(Math.max(1, failureCacheSize));
+        new SecureRandom().nextBytes(fingerprintKey);
+    }
+
+    // reads the auth.* settings of dbconfig.properties
+    public static CredentialService fromConfig() {
+        return new CredentialService(
+                new PasswordHasher(DbConfig.getInt("auth.hashIterations", 210_000)),
+                DbConfig.getInt("auth.workers", Math.max(1, Runtime.getRuntime().availableProcessors() / 2)),
+                DbConfig.getInt("auth.queueCapacity", 32),
+                DbConfig.getLong("auth.maxQueueMillis", 2_000),
+                DbConfig.getLong("auth.failureCacheMillis", 5_000),
+                DbConfig.getInt("auth.failureCacheSize", 10_000)
+        );
+    }
+
+    // hashes a new password, throws RejectedExecutionException if the workers are saturated
+    public String hash(String password) {
+        return await(() -> hasher.hash(password));
+    }
+
+    // checks password against the stored hash, stored is null when the username doesn't exist
+    // throws RejectedExecutionException if the workers are saturated
+    public boolean verify(String username, String password, String stored) {
+        byte[] fingerprint = fingerprint(password);
+        if (failures.contains(username, fingerprint, System.nanoTime())) return false;
+
+        boolean valid = await(() -> {
+            if (stored != null) return hasher.verify(password, stored);
+
+            // unknown username, spend the same time as a real check so usernames can't be probed by timing
+            hasher.verify(password, dummyHash());
+            return false;
+        });
+
+        if (valid) {
+            failures.remove(username);
+        } else {
+            failures.put(username, fingerprint, System.nanoTime() + failureCacheNanos);
+        }
+        return valid;
+    }
+
+    // true for legacy plaintext rows and hashes made with a different cost factor
+    public boolean needsRehash(String stored) {
+        return hasher.needsRehash(stored);
+    }
+
+    // hashes password in the background and hands the result to store, skipped if the workers are busy
+    public void rehash(String password, HashConsumer store) {
+        try {
+            workers.execute(() -> {
+                try {
+                    store.accept(hasher.hash(password));
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the next login will try again
+        }
+    }
+
+    // drops remembered failures, e.g. once the username has been registered
+    public void forgetFailures(String username) {
+        failures.remove(username);
+    }
+
+    private <T> T await(Callable<T> work) {
+        long queuedAt = System.nanoTime();
+        Future<T> future = workers.submit(() -> {
+            // shed requests that sat in the queue too long, the caller has most likely given up already
+            if (System.nanoTime() - queuedAt > maxQueueNanos) {
+                throw new RejectedExecutionException("Too many logins in progress, try again in a moment");
+            }
+            return work.call();
+        });
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for the password check", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private String dummyHash() {
+        if (dummyHash == null) dummyHash = hasher.hash("not-a-real-password");
+        return dummyHash;
+    }
+
+    // keyed digest of the password, so the failure cache never holds the password itself
+    private byte[] fingerprint(String password) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(fingerprintKey);
+            return digest.digest(password.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public interface HashConsumer {
+        void accept(String hash) throws Exception;
+    }
+
+    /*
+        Last failed password fingerprint per username, least recently used usernames are dropped first
+     */
+    private static final class FailureCache {
+        private final Map<String, Failure> entries;
+
+        private FailureCache(int capacity) {
+            entries = new LinkedHashMap<String, Failure>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Failure> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        private synchronized boolean contains(String username, byte[] fingerprint, long now) {
+            Failure failure = entries.get(username);
+            if (failure == null) return false;
+            if (now - failure.expiresAt > 0) {
+                entries.remove(username);
+                return false;
+            }
+            return MessageDigest.isEqual(failure.fingerprint, fingerprint);
+        }
+
+        private synchronized void put(String username, byte[] fingerprint, long expiresAt) {
+            entries.put(username, new Failure(fingerprint, expiresAt));
+        }
+
+        private synchronized void remove(String username) {
+            entries.remove(username);
+        }
+    }
+
+    private static final class Failure {
+        private final byte[] fingerprint;
+        private final long expiresAt;
+
+        private Failure(byte[] fingerprint, long expiresAt) {
+            this.fingerprint = fingerprint;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package db_objs;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/*
+    Loads dbconfig.properties once and gives typed access to its values so that every part of the
+    db layer (connection pool, MyJDBC, ...) reads its settings from the same place
+ */
+public final class DbConfig {
+    // Path to your configuration file
+    private static final String CONFIG_FILE = "dbconfig.properties";
+
+    private static final Properties PROPS = new Properties();
+
+    // Static block to load the properties once at class load time
+    static {
+        try (InputStream input = new FileInputStream(CONFIG_FILE)) {
+            PROPS.load(input);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private DbConfig() {
+    }
+
+    public static String getString(String key) {
+        return PROPS.getProperty(key);
+    }
+
+    public static String getString(String key, String defaultValue) {
+        return PROPS.getProperty(key, defaultValue);
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        String value = PROPS.getProperty(key);
+        if (value == null || value.isBlank()) return defaultValue;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value for " + key + ": " + value + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        String value = PROPS.getProperty(key);
+        if (value == null || value.isBlank()) return defaultValue;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value for " + key + ": " + value + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = PROPS.getProperty(key);
+        if (value == null || value.isBlank()) return defaultValue;
+        return Boolean.parseBoolean(value.trim());
+    }
+}
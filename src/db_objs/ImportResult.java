@@ -0,0 +1,37 @@
+package db_objs;
+
+/*
+    Outcome of a TransactionImporter run, the counts include the rows handled by earlier runs of the same import
+ */
+public class ImportResult {
+    private final long rowsImported;
+    private final long rowsRejected;
+    private final long linesResumedFrom;
+    private final boolean alreadyImported;
+
+    public ImportResult(long rowsImported, long rowsRejected, long linesResumedFrom, boolean alreadyImported) {
+        this.rowsImported = rowsImported;
+        this.rowsRejected = rowsRejected;
+        this.linesResumedFrom = linesResumedFrom;
+        this.alreadyImported = alreadyImported;
+    }
+
+    public long getRowsImported() {
+        return rowsImported;
+    }
+
+    // rows written to the rejects file
+    public long getRowsRejected() {
+        return rowsRejected;
+    }
+
+    // lines of the file that an earlier, interrupted run had already imported, 0 for a fresh import
+    public long getLinesResumedFrom() {
+        return linesResumedFrom;
+    }
+
+    // true if nothing was done because a run of the same file had finished before, the counts are that run's
+    public boolean isAlreadyImported() {
+        return alreadyImported;
+    }
+}
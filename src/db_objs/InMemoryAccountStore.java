@@ -0,0 +1,731 @@
+package db_objs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+    AccountStore that keeps everything inside the JVM, used as a local stand-in for MySQL and as a baseline
+    for performance comparisons. Nothing survives a restart.
+    Accounts get dense ids starting at 1 (like AUTO_INCREMENT) and live in segmented primitive arrays
+    indexed by id, balances are long cents. Balance and ledger updates of an account are guarded by one of
+    a fixed number of striped locks.
+ */
+public class InMemoryAccountStore implements AccountStore {
+    private static final int SEGMENT_BITS = 12;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    // canonical transaction type names, the ledger stores the index into this list
+    private static final List<String> TRANSACTION_TYPES = new ArrayList<>(Arrays.asList("Deposit", "Withdraw", "Transfer"));
+
+    private final ConcurrentHashMap<String, Integer> idsByUsername = new ConcurrentHashMap<>();
+    private final Object registerLock = new Object();
+    private volatile Segment[] segments = new Segment[16];
+    private int nextUserId = 1;
+
+    private final ReentrantLock[] stripes;
+    private final int stripeMask;
+    private final AtomicLong nextLedgerId = new AtomicLong(1);
+    private final CredentialService credentials;
+
+    public InMemoryAccountStore(int lockStripes) {
+        this(lockStripes, CredentialService.fromConfig());
+    }
+
+    public InMemoryAccountStore(int lockStripes, CredentialService credentials) {
+        this.credentials = credentials;
+
+        // round up to a power of two so the stripe can be picked with a mask
+        int stripeCount = Integer.highestOneBit(Math.max(1, lockStripes - 1)) << 1;
+        stripes = new ReentrantLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        stripeMask = stripeCount - 1;
+    }
+
+    @Override
+    public User validateLogin(String username, String password) {
+        Integer id = idsByUsername.get(username);
+        String storedPassword = id == null ? null : segment(id).passwords[id & SEGMENT_MASK];
+        if (!credentials.verify(username, password, storedPassword)) return null;
+
+        Segment segment = segment(id);
+        int slot = id & SEGMENT_MASK;
+        ReentrantLock lock = stripe(id);
+        lock.lock();
+        try {
+            return new User(id, username, Money.ofCents(segment.balanceCents[slot]));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean register(String username, String password) {
+        if (idsByUsername.containsKey(username)) return false;
+
+        // hash outside the lock, registrations shouldn't queue up behind each other's hashing
+        String passwordHash = credentials.hash(password);
+        synchronized (registerLock) {
+            if (idsByUsername.containsKey(username)) return false;
+
+            int id = nextUserId++;
+            int segmentIndex = id >>> SEGMENT_BITS;
+            Segment[] current = segments;
+            if (segmentIndex >= current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            if (current[segmentIndex] == null) {
+                current[segmentIndex] = new Segment();
+            }
+
+            int slot = id & SEGMENT_MASK;
+            current[segmentIndex].usernames[slot] = username;
+            current[segmentIndex].passwords[slot] = passwordHash;
+            current[segmentIndex].ledgers[slot] = new Ledger();
+
+            // the volatile write (and the map entry) make the filled slot visible to other threads
+            segments = current;
+            idsByUsername.put(username, id);
+            credentials.forgetFailures(username);
+            return true;
+        }
+    }
+
+    @Override
+    public CompletableFuture<Boolean> postTransaction(Transaction transaction) {
+        int id = transaction.getUserId();
+        if (!exists(id)) return CompletableFuture.completedFuture(false);
+
+        long amountCents = transaction.getTransactionAmount().getCents();
+        byte type = typeCode(transaction.getTransactionType());
+        Segment segment = segment(id);
+        int slot = id & SEGMENT_MASK;
+
+        ReentrantLock lock = stripe(id);
+        lock.lock();
+        try {
+            long newBalance = Math.addExact(segment.balanceCents[slot], amountCents);
+            if (newBalance < 0) return CompletableFuture.completedFuture(false);
+
+            segment.balanceCents[slot] = newBalance;
+            segment.ledgers[slot].append(nextLedgerId.getAndIncrement(), type, amountCents, System.currentTimeMillis());
+        } finally {
+            lock.unlock();
+        }
+        return CompletableFuture.completedFuture(true);
+    }
+
+    @Override
+    public Money refreshBalance(User user) {
+        int id = user.getId();
+        if (!exists(id)) return null;
+
+        ReentrantLock lock = stripe(id);
+        lock.lock();
+        try {
+            user.setCurrentBalance(Money.ofCents(segment(id).balanceCents[id & SEGMENT_MASK]));
+        } finally {
+            lock.unlock();
+        }
+        return user.getCurrentBalance();
+    }
+
+    @Override
+    public TransferResult transfer(User user, String transferredUsername, Money transferAmount) {
+        long amountCents = transferAmount.getCents();
+        if (amountCents <= 0) return TransferResult.failure(TransferResult.Status.INVALID_AMOUNT);
+
+        Integer recipientId = idsByUsername.get(transferredUsername);
+        if (recipientId == null) return TransferResult.failure(TransferResult.Status.RECIPIENT_NOT_FOUND);
+        int senderId = user.getId();
+        if (recipientId == senderId) return TransferResult.failure(TransferResult.Status.SAME_ACCOUNT);
+        if (!exists(senderId)) return TransferResult.failure(TransferResult.Status.FAILED);
+
+        // lock the stripes in stripe index order so concurrent transfers can't deadlock
+        int senderStripe = senderId & stripeMask, recipientStripe = recipientId & stripeMask;
+        ReentrantLock first = stripes[Math.min(senderStripe, recipientStripe)];
+        ReentrantLock second = stripes[Math.max(senderStripe, recipientStripe)];
+        first.lock();
+        if (second != first) second.lock();
+        try {
+            Segment senderSegment = segment(senderId), recipientSegment = segment(recipientId);
+            int senderSlot = senderId & SEGMENT_MASK, recipientSlot = recipientId & SEGMENT_MASK;
+
+            long senderBalance = senderSegment.balanceCents[senderSlot];
+            if (senderBalance < amountCents) return TransferResult.failure(TransferResult.Status.INSUFFICIENT_FUNDS);
+
+            long recipientBalance = Math.addExact(recipientSegment.balanceCents[recipientSlot], amountCents);
+            senderBalance -= amountCents;
+            senderSegment.balanceCents[senderSlot] = senderBalance;
+            recipientSegment.balanceCents[recipientSlot] = recipientBalance;
+
+            long now = System.currentTimeMillis();
+            byte type = typeCode("Transfer");
+            senderSegment.ledgers[senderSlot].append(nextLedgerId.getAndIncrement(), type, -amountCents, now);
+            recipientSegment.ledgers[recipientSlot].append(nextLedgerId.getAndIncrement(), type, amountCents, now);
+
+            user.setCurrentBalance(Money.ofCents(senderBalance));
+            return TransferResult.success(recipientId, Money.ofCents(senderBalance), 0, Money.ofCents(recipientBalance), 0);
+        } finally {
+            if (second != first) second.unlock();
+            first.unlock();
+        }
+    }
+
+    @Override
+    public BatchTransferResult transferBatch(User user, List<PaymentLine> lines) {
+        int senderId = user.getId();
+        if (!exists(senderId)) return BatchTransferResult.failure(lines.size(), TransferResult.Status.FAILED);
+
+        TransferResult.Status[] statuses = new TransferResult.Status[lines.size()];
+        int[] recipientIds = new int[lines.size()];
+        boolean[] lockedStripes = new boolean[stripes.length];
+        lockedStripes[senderId & stripeMask] = true;
+        long totalCents = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            PaymentLine line = lines.get(i);
+            Integer recipientId = idsByUsername.get(line.getRecipientUsername());
+            if (line.getAmount().signum() <= 0 || !line.getAmount().isStorable()) {
+                statuses[i] = TransferResult.Status.INVALID_AMOUNT;
+            } else if (recipientId == null) {
+                statuses[i] = TransferResult.Status.RECIPIENT_NOT_FOUND;
+            } else if (recipientId == senderId) {
+                statuses[i] = TransferResult.Status.SAME_ACCOUNT;
+            } else {
+                recipientIds[i] = recipientId;
+                lockedStripes[recipientId & stripeMask] = true;
+                totalCents = Math.addExact(totalCents, line.getAmount().getCents());
+            }
+        }
+
+        // lock the stripes in stripe index order like transfer does
+        for (int i = 0; i < stripes.length; i++) {
+            if (lockedStripes[i]) stripes[i].lock();
+        }
+        try {
+            Segment senderSegment = segment(senderId);
+            int senderSlot = senderId & SEGMENT_MASK;
+            long senderBalance = senderSegment.balanceCents[senderSlot];
+            TransferResult.Status outcome = senderBalance >= totalCents
+                    ? TransferResult.Status.SUCCESS : TransferResult.Status.INSUFFICIENT_FUNDS;
+
+            long now = System.currentTimeMillis();
+            byte type = typeCode("Transfer");
+            for (int i = 0; i < statuses.length; i++) {
+                if (statuses[i] != null) continue;
+                statuses[i] = outcome;
+                if (outcome != TransferResult.Status.SUCCESS) continue;
+
+                int recipientId = recipientIds[i];
+                long amountCents = lines.get(i).getAmount().getCents();
+                Segment recipientSegment = segment(recipientId);
+                int recipientSlot = recipientId & SEGMENT_MASK;
+                recipientSegment.balanceCents[recipientSlot] =
+                        Math.addExact(recipientSegment.balanceCents[recipientSlot], amountCents);
+                senderSegment.ledgers[senderSlot].append(nextLedgerId.getAndIncrement(), type, -amountCents, now);
+                recipientSegment.ledgers[recipientSlot].append(nextLedgerId.getAndIncrement(), type, amountCents, now);
+            }
+            if (outcome != TransferResult.Status.SUCCESS) {
+                return new BatchTransferResult(statuses, Money.ZERO, null, 0);
+            }
+
+            senderBalance -= totalCents;
+            senderSegment.balanceCents[senderSlot] = senderBalance;
+            user.setCurrentBalance(Money.ofCents(senderBalance));
+            return new BatchTransferResult(statuses, Money.ofCents(totalCents), Money.ofCents(senderBalance), 0);
+        } finally {
+            for (int i = stripes.length - 1; i >= 0; i--) {
+                if (lockedStripes[i]) stripes[i].unlock();
+            }
+        }
+    }
+
+    @Override
+    public Money getBalanceAt(User user, Timestamp at) {
+        int id = user.getId();
+        if (!exists(id)) return null;
+
+        Ledger ledger = segment(id).ledgers[id & SEGMENT_MASK];
+        long atMillis = at.getTime();
+        long cents = 0;
+        ReentrantLock lock = stripe(id);
+        lock.lock();
+        try {
+            for (int i = 0; i < ledger.size; i++) {
+                if (ledger.timestamps[i] < atMillis) cents += ledger.amountCents[i];
+            }
+        } finally {
+            lock.unlock();
+        }
+        return Money.ofCents(cents);
+    }
+
+    @Override
+    public void warmUp() {
+        // nothing to connect to, only the password hashing has to be compiled
+        credentials.hash("warm-up");
+    }
+
+    @Override
+    public long getPendingPostingCount() {
+        // everything is applied synchronously
+        return 0;
+    }
+
+    @Override
+    public long getSkippedPostingCount() {
+        // nothing is logged
+        return 0;
+    }
+
+    @Override
+    public List<Transaction> getPastTransaction(User user) {
+        int id = user.getId();
+        ArrayList<Transaction> pastTransactions = new ArrayList<>();
+        if (!exists(id)) return pastTransactions;
+
+        Ledger ledger = segment(id).ledgers[id & SEGMENT_MASK];
+        ReentrantLock lock = stripe(id);
+        lock.lock();
+        try {
+            pastTransactions.ensureCapacity(ledger.size);
+            for (int i = 0; i < ledger.size; i++) {
+                pastTransactions.add(ledger.toTransaction(i, id));
+            }
+        } finally {
+            lock.unlock();
+        }
+        return pastTransactions;
+    }
+
+    @Override
+    public TransactionPage getTransactionPage(User user, TransactionQuery query) {
+        int id = user.getId();
+        ArrayList<Transaction> transactions = new ArrayList<>(query.getPageSize());
+        if (!exists(id)) return new TransactionPage(transactions, null);
+
+        // ledger ids are handed out in time order, so the id alone is enough to continue from the cursor
+        long cursorId = query.getCursor() == null ? Long.MAX_VALUE : TransactionPage.decodeCursor(query.getCursor())[2];
+        int type = query.getTransactionType() == null ? -1 : typeCode(query.getTransactionType());
+        long fromMillis = query.getFromDate() == null ? Long.MIN_VALUE : query.getFromDate().getTime();
+        long toMillis = query.getToDate() == null ? Long.MAX_VALUE : query.getToDate().getTime();
+        long minCents = query.getMinAmount() == null ? Long.MIN_VALUE : query.getMinAmount().getCents();
+        long maxCents = query.getMaxAmount() == null ? Long.MAX_VALUE : query.getMaxAmount().getCents();
+
+        Ledger ledger = segment(id).ledgers[id & SEGMENT_MASK];
+        String nextCursor = null;
+        ReentrantLock lock = stripe(id);
+        lock.lock();
+        try {
+            // newest first, starting right before the cursor
+            int i = Arrays.binarySearch(ledger.ids, 0, ledger.size, cursorId);
+            i = (i >= 0 ? i : -i - 1) - 1;
+            for (; i >= 0; i--) {
+                if (type >= 0 && ledger.types[i] != type) continue;
+                if (ledger.timestamps[i] < fromMillis || ledger.timestamps[i] >= toMillis) continue;
+                if (ledger.amountCents[i] < minCents || ledger.amountCents[i] > maxCents) continue;
+
+                if (transactions.size() == query.getPageSize()) {
+                    // there is at least one more row
+                    Transaction last = transactions.get(transactions.size() - 1);
+                    nextCursor = TransactionPage.encodeCursor(new Timestamp(last.getTransactionDate().getTime()), last.getId());
+                    break;
+                }
+                transactions.add(ledger.toTransaction(i, id));
+            }
+        } finally {
+            lock.unlock();
+        }
+        return new TransactionPage(transactions, nextCursor);
+    }
+
+    @Override
+    public long getLastTransactionId(User user) {
+        int id = user.getId();
+        if (!exists(id)) return 0;
+
+        Ledger ledger = segment(id).ledgers[id & SEGMENT_MASK];
+        ReentrantLock lock = stripe(id);
+        lock.lock();
+        try {
+            return ledger.size == 0 ? 0 : ledger.ids[ledger.size - 1];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Transaction> getTransactionsAfter(User user, long afterId, int limit) {
+        int id = user.getId();
+        List<Transaction> transactions = new ArrayList<>();
+        if (!exists(id)) return transactions;
+
+        Ledger ledger = segment(id).ledgers[id & SEGMENT_MASK];
+        ReentrantLock lock = stripe(id);
+        lock.lock();
+        try {
+            // ledger ids are ascending, start right after afterId
+            int i = Arrays.binarySearch(ledger.ids, 0, ledger.size, afterId);
+            i = i >= 0 ? i + 1 : -i - 1;
+            for (; i < ledger.size && transactions.size() < limit; i++) {
+                transactions.add(ledger.toTransaction(i, id));
+            }
+        } finally {
+            lock.unlock();
+        }
+        return transactions;
+    }
+
+    @Override
+    public long getHighWaterMark() {
+        return nextLedgerId.get() - 1;
+    }
+
+    @Override
+    public Map<Integer, Long> getChangedAccounts(long afterId, long upToId) {
+        int lastUserId;
+        synchronized (registerLock) {
+            lastUserId = nextUserId - 1;
+        }
+
+        // there is no index by ledger id across accounts, every account is looked at
+        Map<Integer, Long> changed = new HashMap<>();
+        for (int id = 1; id <= lastUserId; id++) {
+            if (!exists(id)) continue;
+            Ledger ledger = segment(id).ledgers[id & SEGMENT_MASK];
+            ReentrantLock lock = stripe(id);
+            lock.lock();
+            try {
+                // the last ledger id up to upToId
+                int i = Arrays.binarySearch(ledger.ids, 0, ledger.size, upToId);
+                i = i >= 0 ? i : -i - 2;
+                if (i >= 0 && ledger.ids[i] > afterId) changed.put(id, ledger.ids[i]);
+            } finally {
+                lock.unlock();
+            }
+        }
+        return changed;
+    }
+
+    @Override
+    public List<MonthlyStatement> getMonthlyStatements(User user, YearMonth first, YearMonth last) {
+        int id = user.getId();
+        List<MonthlyStatement> statements = new ArrayList<>();
+        if (!exists(id)) return statements;
+
+        byte deposit = typeCode("Deposit"), withdraw = typeCode("Withdraw"), transfer = typeCode("Transfer");
+        Ledger ledger = segment(id).ledgers[id & SEGMENT_MASK];
+        ReentrantLock lock = stripe(id);
+        lock.lock();
+        try {
+            // entries are appended in time order, walk them once and close a month whenever its end is passed
+            long startMillis = LedgerStatements.startOf(first).getTime();
+            long balanceCents = 0;
+            int i = 0;
+            for (; i < ledger.size && ledger.timestamps[i] < startMillis; i++) {
+                balanceCents += ledger.amountCents[i];
+            }
+            for (YearMonth month = first; !month.isAfter(last); month = month.plusMonths(1)) {
+                long endMillis = LedgerStatements.startOf(month.plusMonths(1)).getTime();
+                long deposits = 0, withdrawals = 0, transfersIn = 0, transfersOut = 0, adjustments = 0;
+                int count = 0;
+                for (; i < ledger.size && ledger.timestamps[i] < endMillis; i++, count++) {
+                    long cents = ledger.amountCents[i];
+                    byte type = ledger.types[i];
+                    if (type == deposit) {
+                        deposits += cents;
+                    } else if (type == withdraw) {
+                        withdrawals -= cents;
+                    } else if (type == transfer) {
+                        if (cents > 0) transfersIn += cents;
+                        else transfersOut -= cents;
+                    } else {
+                        adjustments += cents;
+                    }
+                }
+                MonthlyStatement statement = new MonthlyStatement(month, Money.ofCents(balanceCents),
+                        Money.ofCents(deposits), Money.ofCents(withdrawals), Money.ofCents(transfersIn),
+                        Money.ofCents(transfersOut), Money.ofCents(adjustments), count);
+                statements.add(statement);
+                balanceCents = statement.getClosingBalance().getCents();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return statements;
+    }
+
+    @Override
+    public List<StatementLine> getStatementLines(User user, YearMonth month) {
+        int id = user.getId();
+        List<StatementLine> lines = new ArrayList<>();
+        if (!exists(id)) return lines;
+
+        long startMillis = LedgerStatements.startOf(month).getTime();
+        long endMillis = LedgerStatements.startOf(month.plusMonths(1)).getTime();
+        Ledger ledger = segment(id).ledgers[id & SEGMENT_MASK];
+        ReentrantLock lock = stripe(id);
+        lock.lock();
+        try {
+            long balanceCents = 0;
+            for (int i = 0; i < ledger.size && ledger.timestamps[i] < endMillis; i++) {
+                balanceCents += ledger.amountCents[i];
+                if (ledger.timestamps[i] >= startMillis) {
+                    lines.add(new StatementLine(ledger.toTransaction(i, id), Money.ofCents(balanceCents)));
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return lines;
+    }
+
+    @Override
+    public List<StatementLine> getStatementPage(User user, MonthlyStatement statement, StatementQuery query) {
+        int id = user.getId();
+        List<StatementLine> lines = new ArrayList<>(query.getPageSize());
+        if (!exists(id)) return lines;
+
+        StatementQuery.Order order = query.getOrder();
+        Ledger ledger = segment(id).ledgers[id & SEGMENT_MASK];
+        ReentrantLock lock = stripe(id);
+        lock.lock();
+        try {
+            // the month is a run of entries (they are appended in time order and id order), found by binary
+            // search, and every entry carries the balance after it, so a page costs the same at any position
+            int first = ledger.indexOfTime(LedgerStatements.startOf(statement.getMonth()).getTime());
+            int end = ledger.indexOfTime(LedgerStatements.startOf(statement.getMonth().plusMonths(1)).getTime());
+            int count = end - first;
+            int[] byAmount = order.isByDate() ? null : ledger.sortedByAmount(first, end);
+
+            // position in the query's order of the page's first line, right after query.getAfter() if given
+            int from = query.getOffset();
+            StatementLine after = query.getAfter();
+            if (after != null) {
+                if (order.isByDate()) {
+                    // the entries just after and just before the line in ledger order, it may be gone by now
+                    int index = Arrays.binarySearch(ledger.ids, first, end, after.getTransaction().getId());
+                    int next = index >= 0 ? index + 1 : -index - 1;
+                    int previous = next - (index >= 0 ? 2 : 1);
+                    from = order == StatementQuery.Order.OLDEST_FIRST ? next - first : end - 1 - previous;
+                } else {
+                    long cents = after.getTransaction().getTransactionAmount().getCents();
+                    long afterId = after.getTransaction().getId();
+                    from = order == StatementQuery.Order.SMALLEST_FIRST
+                            ? ledger.countByAmount(byAmount, cents, afterId, true)
+                            : count - ledger.countByAmount(byAmount, cents, afterId, false);
+                }
+            }
+
+            for (int position = Math.max(0, from); position < Math.min(count, from + query.getPageSize()); position++) {
+                int index;
+                switch (order) {
+                    case OLDEST_FIRST:
+                        index = first + position;
+                        break;
+                    case NEWEST_FIRST:
+                        index = end - 1 - position;
+                        break;
+                    case SMALLEST_FIRST:
+                        index = byAmount[position];
+                        break;
+                    default:
+                        index = byAmount[count - 1 - position];
+                        break;
+                }
+                lines.add(new StatementLine(ledger.toTransaction(index, id), Money.ofCents(ledger.balanceCents[index])));
+            }
+        } finally {
+            lock.unlock();
+        }
+        return lines;
+    }
+
+    @Override
+    public long exportTransactions(User user, Path file, ProgressListener progress) {
+        try (TransactionExportWriter writer = TransactionExportWriter.open(file)) {
+            // one account at a time, in id order
+            int id = user == null ? 1 : user.getId();
+            for (; exists(id); id++) {
+                exportLedger(writer, id, progress);
+                if (user != null) break;
+            }
+            progress.progress(writer.getRowsWritten(), writer.getRowsWritten());
+            return writer.getRowsWritten();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return -1;
+    }
+
+    private void exportLedger(TransactionExportWriter writer, int id, ProgressListener progress) throws IOException {
+        Segment segment = segment(id);
+        int slot = id & SEGMENT_MASK;
+        Ledger ledger = segment.ledgers[slot];
+
+        // copy the entries out so the account isn't locked while the file is written
+        long[] ids, amountCents, timestamps;
+        byte[] types;
+        ReentrantLock lock = stripe(id);
+        lock.lock();
+        try {
+            ids = Arrays.copyOf(ledger.ids, ledger.size);
+            amountCents = Arrays.copyOf(ledger.amountCents, ledger.size);
+            timestamps = Arrays.copyOf(ledger.timestamps, ledger.size);
+            types = Arrays.copyOf(ledger.types, ledger.size);
+        } finally {
+            lock.unlock();
+        }
+
+        for (int i = 0; i < ids.length; i++) {
+            writer.write(ids[i], id, segment.usernames[slot], typeName(types[i]), Money.ofCents(amountCents[i]),
+                    new Timestamp(timestamps[i]));
+            if (writer.getRowsWritten() % 10_000 == 0) progress.progress(writer.getRowsWritten(), -1);
+        }
+    }
+
+    private boolean exists(int id) {
+        if (id <= 0) return false;
+        Segment[] current = segments;
+        int segmentIndex = id >>> SEGMENT_BITS;
+        return segmentIndex < current.length && current[segmentIndex] != null
+                && current[segmentIndex].ledgers[id & SEGMENT_MASK] != null;
+    }
+
+    private Segment segment(int id) {
+        return segments[id >>> SEGMENT_BITS];
+    }
+
+    private ReentrantLock stripe(int id) {
+        return stripes[id & stripeMask];
+    }
+
+    private static byte typeCode(String transactionType) {
+        synchronized (TRANSACTION_TYPES) {
+            for (int i = 0; i < TRANSACTION_TYPES.size(); i++) {
+                if (TRANSACTION_TYPES.get(i).equalsIgnoreCase(transactionType)) return (byte) i;
+            }
+            if (TRANSACTION_TYPES.size() == Byte.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many transaction types");
+            }
+            TRANSACTION_TYPES.add(transactionType);
+            return (byte) (TRANSACTION_TYPES.size() - 1);
+        }
+    }
+
+    private static String typeName(byte code) {
+        synchronized (TRANSACTION_TYPES) {
+            return TRANSACTION_TYPES.get(code);
+        }
+    }
+
+    private static final class Segment {
+        private final long[] balanceCents = new long[SEGMENT_SIZE];
+        private final String[] usernames = new String[SEGMENT_SIZE];
+        private final String[] passwords = new String[SEGMENT_SIZE];
+        private final Ledger[] ledgers = new Ledger[SEGMENT_SIZE];
+    }
+
+    // transaction history of one account as parallel primitive arrays, guarded by the account's stripe
+    private static final class Ledger {
+        private long[] ids = new long[8];
+        private long[] amountCents = new long[8];
+        private long[] timestamps = new long[8];
+        private byte[] types = new byte[8];
+        // the balance right after each entry
+        private long[] balanceCents = new long[8];
+        private int size;
+
+        // entries first..end (exclusive) by amount then id, kept for the month last paged by amount
+        private int sortedFirst = -1, sortedEnd = -1;
+        private int[] sortedByAmount;
+
+        private void append(long id, byte type, long cents, long timestamp) {
+            if (size == ids.length) {
+                int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                amountCents = Arrays.copyOf(amountCents, capacity);
+                timestamps = Arrays.copyOf(timestamps, capacity);
+                types = Arrays.copyOf(types, capacity);
+                balanceCents = Arrays.copyOf(balanceCents, capacity);
+            }
+            ids[size] = id;
+            amountCents[size] = cents;
+            timestamps[size] = timestamp;
+            types[size] = type;
+            balanceCents[size] = size == 0 ? cents : balanceCents[size - 1] + cents;
+            size++;
+        }
+
+        // index of the first entry at or after millis, size if there is none
+        private int indexOfTime(long millis) {
+            int low = 0, high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (timestamps[middle] < millis) low = middle + 1;
+                else high = middle;
+            }
+            return low;
+        }
+
+        // indexes of the entries first..end (exclusive) sorted by amount then id, sorted again only when the
+        // range has changed since the last call
+        private int[] sortedByAmount(int first, int end) {
+            if (first != sortedFirst || end != sortedEnd) {
+                Integer[] indexes = new Integer[end - first];
+                for (int i = 0; i < indexes.length; i++) {
+                    indexes[i] = first + i;
+                }
+                Arrays.sort(indexes, Comparator.<Integer>comparingLong(index -> amountCents[index])
+                        .thenComparingLong(index -> ids[index]));
+                sortedByAmount = new int[indexes.length];
+                for (int i = 0; i < indexes.length; i++) {
+                    sortedByAmount[i] = indexes[i];
+                }
+                sortedFirst = first;
+                sortedEnd = end;
+            }
+            return sortedByAmount;
+        }
+
+        // how many of the sorted entries come before (amount, id), or up to and including it when inclusive
+        private int countByAmount(int[] sorted, long cents, long id, boolean inclusive) {
+            int low = 0, high = sorted.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                int index = sorted[middle];
+                int compared = amountCents[index] != cents ? Long.compare(amountCents[index], cents) : Long.compare(ids[index], id);
+                if (compared < 0 || (inclusive && compared == 0)) low = middle + 1;
+                else high = middle;
+            }
+            return low;
+        }
+
+        private Transaction toTransaction(int index, int userId) {
+            return new Transaction((int) ids[index], userId, typeName(types[index]),
+                    Money.ofCents(amountCents[index]), new Date(timestamps[index]));
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package db_objs;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Group-commit writer for deposits and withdrawals.
+    Postings are queued and a single background thread flushes them together: one batch of relative balance
+    updates plus one multi-row ledger insert, committed once. A batch is flushed when it reaches maxBatchSize
+    or when the oldest queued posting has waited maxLingerMillis, whichever comes first.
+    Postings replayed from the PostingLog carry the log id and sequence of their record. Those keys are stored
+    in applied_postings in the same commit, a posting whose key is already there is not applied a second time
+    and completes with the outcome recorded the first time.
+ */
+public class JournalWriter {
+    // outcomes stored in applied_postings
+    static final String ACCEPTED = "SUCCESS";
+    static final String REJECTED = "INSUFFICIENT_FUNDS";
+    // refused by the database for good, see PostingDrainer
+    static final String FAILED = "FAILED";
+
+    // rows per statement at most: IN lists are padded and ledger inserts split into powers of two up to this
+    // size, so whatever the batch size only a handful of distinct statements end up in the statement cache
+    private static final int CHUNK_SIZE = 512;
+
+    private final ConnectionPool pool;
+    private final AccountCache accountCache;
+    private final int maxBatchSize;
+    private final long maxLingerNanos;
+    private final BlockingQueue<Posting> queue = new LinkedBlockingQueue<>();
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    public JournalWriter(ConnectionPool pool, AccountCache accountCache, int maxBatchSize, long maxLingerMillis) {
+        if (maxBatchSize < 1) throw new IllegalArgumentException("maxBatchSize must be at least 1");
+        this.pool = pool;
+        this.accountCache = accountCache;
+        this.maxBatchSize = maxBatchSize;
+        this.maxLingerNanos = TimeUnit.MILLISECONDS.toNanos(maxLingerMillis);
+
+        flusher = new Thread(this::run, "journal-writer");
+        flusher.setDaemon(true);
+        flusher.start();
+
+        // flush whatever is still queued when the app exits
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "journal-writer-shutdown"));
+    }
+
+    // queues a deposit or withdrawal, the signed transaction amount is applied to the user's balance
+    // the future completes with true once the posting is committed, false if a withdrawal would have made
+    // the balance negative, or exceptionally if the database write failed
+    public CompletableFuture<Boolean> submit(Transaction transaction) {
+        return submit(transaction, 0, 0);
+    }
+
+    // same as submit(transaction), applied at most once for the given log record
+    public CompletableFuture<Boolean> submit(Transaction transaction, long logId, long logSequence) {
+        Posting posting = new Posting(transaction, logId, logSequence);
+        if (!running) {
+            posting.future.completeExceptionally(new IllegalStateException("Journal writer has been shut down"));
+            return posting.future;
+        }
+        queue.add(posting);
+        return posting.future;
+    }
+
+    public void shutdown() {
+        running = false;
+        flusher.interrupt();
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // anything that raced with the shutdown
+        List<Posting> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) flush(remaining);
+    }
+
+    private void run() {
+        List<Posting> batch = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                // wait for the first posting, then linger a little to let others join the batch
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxLingerNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Posting next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // shutting down, flush what we already took off the queue
+            }
+
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch = new ArrayList<>(maxBatchSize);
+            }
+        }
+    }
+
+    private void flush(List<Posting> batch) {
+        if (batch.size() > 1) {
+            // touch the rows in ascending user id order like transfers do, so the two can't deadlock
+            // the sort is stable, postings of the same user keep their order
+            batch.sort(Comparator.comparingInt(posting -> posting.transaction.getUserId()));
+        }
+        try {
+            String[] outcomes = commit(batch);
+            for (int i = 0; i < batch.size(); i++) {
+                if (FAILED.equals(outcomes[i])) {
+                    batch.get(i).future.completeExceptionally(new SQLDataException(
+                            "Posting " + batch.get(i).logSequence + " was refused by the database before"));
+                } else {
+                    batch.get(i).future.complete(ACCEPTED.equals(outcomes[i]));
+                }
+            }
+        } catch (SQLException e) {
+            if (batch.size() == 1) {
+                e.printStackTrace();
+                batch.get(0).future.completeExceptionally(e);
+                return;
+            }
+
+            // one bad posting shouldn't fail everybody else, retry them on their own
+            for (Posting posting : batch) {
+                flush(Collections.singletonList(posting));
+            }
+        }
+    }
+
+    // applies the whole batch in one transaction, returns the outcome of each posting
+    private String[] commit(List<Posting> batch) throws SQLException {
+        String[] results = new String[batch.size()];
+        boolean[] accepted = new boolean[batch.size()];
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                // postings a previous attempt already committed keep their recorded outcome
+                boolean[] applied = new boolean[batch.size()];
+                Map<Long, String> outcomes = readOutcomes(connection, batch);
+                int toApply = 0;
+                for (int i = 0; i < batch.size(); i++) {
+                    String outcome = batch.get(i).isLogged() ? outcomes.get(batch.get(i).logSequence) : null;
+                    if (outcome != null) {
+                        applied[i] = true;
+                        accepted[i] = ACCEPTED.equals(outcome);
+                        results[i] = outcome;
+                    } else {
+                        toApply++;
+                    }
+                }
+                if (toApply == 0) {
+                    connection.rollback();
+                    return results;
+                }
+
+                // balance deltas, a withdrawal is only applied if the balance stays non-negative
+                try (PreparedStatement updateBalance = connection.prepareStatement(
+                        "UPDATE users SET current_balance = current_balance + ?, version = version + 1 " +
+                                "WHERE id = ? AND current_balance + ? >= 0")) {
+                    for (int i = 0; i < batch.size(); i++) {
+                        if (applied[i]) continue;
+                        Transaction transaction = batch.get(i).transaction;
+                        Money.bind(updateBalance, 1, transaction.getTransactionAmount());
+                        updateBalance.setInt(2, transaction.getUserId());
+                        Money.bind(updateBalance, 3, transaction.getTransactionAmount());
+                        updateBalance.addBatch();
+                    }
+                    int[] counts = updateBalance.executeBatch();
+                    for (int i = 0, count = 0; i < batch.size(); i++) {
+                        if (applied[i]) continue;
+                        accepted[i] = counts[count++] != 0;
+                        results[i] = accepted[i] ? ACCEPTED : REJECTED;
+                    }
+                }
+
+                recordOutcomes(connection, batch, applied, accepted);
+
+                // multi-row inserts for the ledger rows of the accepted postings, 13 rows go in as 8 + 4 + 1
+                List<Transaction> ledgerRows = new ArrayList<>();
+                for (int i = 0; i < batch.size(); i++) {
+                    if (accepted[i] && !applied[i]) ledgerRows.add(batch.get(i).transaction);
+                }
+                int acceptedCount = ledgerRows.size();
+                for (int from = 0; from < acceptedCount; ) {
+                    int rows = Math.min(CHUNK_SIZE, Integer.highestOneBit(acceptedCount - from));
+                    insertLedgerRows(connection, ledgerRows.subList(from, from + rows));
+                    from += rows;
+                }
+
+                // the updated rows are locked by this transaction, so these are the balances being committed
+                Map<Integer, AccountCache.Entry> balances = acceptedCount > 0
+                        ? readBalances(connection, batch, accepted, applied) : Collections.emptyMap();
+
+                connection.commit();
+
+                // write the committed balances through to the cache
+                for (Map.Entry<Integer, AccountCache.Entry> balance : balances.entrySet()) {
+                    accountCache.put(balance.getKey(), balance.getValue().getBalance(), balance.getValue().getVersion());
+                }
+                return results;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private static void insertLedgerRows(Connection connection, List<Transaction> rows) throws SQLException {
+        StringBuilder sql = new StringBuilder(
+                "INSERT INTO transactions(user_id, transaction_type, transaction_amount, transaction_date) VALUES");
+        for (int i = 0; i < rows.size(); i++) {
+            sql.append(i == 0 ? " " : ", ").append("(?, ?, ?, NOW())");
+        }
+        try (PreparedStatement insertTransactions = connection.prepareStatement(sql.toString())) {
+            int index = 1;
+            for (Transaction transaction : rows) {
+                insertTransactions.setInt(index++, transaction.getUserId());
+                insertTransactions.setString(index++, transaction.getTransactionType());
+                Money.bind(insertTransactions, index++, transaction.getTransactionAmount());
+            }
+            insertTransactions.executeUpdate();
+        }
+    }
+
+    // log sequence -> recorded outcome of the batch's logged postings that were already applied
+    private Map<Long, String> readOutcomes(Connection connection, List<Posting> batch) throws SQLException {
+        List<Posting> logged = new ArrayList<>();
+        for (Posting posting : batch) {
+            if (posting.isLogged()) logged.add(posting);
+        }
+        if (logged.isEmpty()) return Collections.emptyMap();
+
+        Map<Long, String> outcomes = new HashMap<>();
+        for (int from = 0; from < logged.size(); from += CHUNK_SIZE) {
+            List<Posting> chunk = logged.subList(from, Math.min(logged.size(), from + CHUNK_SIZE));
+            int placeholders = placeholders(chunk.size());
+            StringBuilder sql = new StringBuilder(
+                    "SELECT log_id, log_sequence, outcome FROM applied_postings WHERE (log_id, log_sequence) IN (");
+            for (int i = 0; i < placeholders; i++) {
+                sql.append(i == 0 ? "(?, ?)" : ", (?, ?)");
+            }
+            sql.append(')');
+
+            try (PreparedStatement queryOutcomes = connection.prepareStatement(sql.toString())) {
+                // pad with the last key, repeating a value in the IN list doesn't change the result
+                int index = 1;
+                for (int i = 0; i < placeholders; i++) {
+                    Posting posting = chunk.get(Math.min(i, chunk.size() - 1));
+                    queryOutcomes.setLong(index++, posting.logId);
+                    queryOutcomes.setLong(index++, posting.logSequence);
+                }
+                try (ResultSet resultSet = queryOutcomes.executeQuery()) {
+                    while (resultSet.next()) {
+                        // every posting of this process comes from the same log, the id check is for safety only
+                        if (resultSet.getLong(1) == logged.get(0).logId) outcomes.put(resultSet.getLong(2), resultSet.getString(3));
+                    }
+                }
+            }
+        }
+        return outcomes;
+    }
+
+    private void recordOutcomes(Connection connection, List<Posting> batch, boolean[] applied,
+                                boolean[] accepted) throws SQLException {
+        try (PreparedStatement insertOutcome = connection.prepareStatement(
+                "INSERT INTO applied_postings(log_id, log_sequence, outcome) VALUES(?, ?, ?)")) {
+            boolean any = false;
+            for (int i = 0; i < batch.size(); i++) {
+                Posting posting = batch.get(i);
+                if (applied[i] || !posting.isLogged()) continue;
+                insertOutcome.setLong(1, posting.logId);
+                insertOutcome.setLong(2, posting.logSequence);
+                insertOutcome.setString(3, accepted[i] ? ACCEPTED : REJECTED);
+                insertOutcome.addBatch();
+                any = true;
+            }
+            if (any) insertOutcome.executeBatch();
+        }
+    }
+
+    private Map<Integer, AccountCache.Entry> readBalances(Connection connection, List<Posting> batch,
+                                                          boolean[] accepted, boolean[] applied) throws SQLException {
+        Set<Integer> userIds = new LinkedHashSet<>();
+        for (int i = 0; i < batch.size(); i++) {
+            if (accepted[i] && !applied[i]) userIds.add(batch.get(i).transaction.getUserId());
+        }
+
+        List<Integer> ids = new ArrayList<>(userIds);
+        Map<Integer, AccountCache.Entry> balances = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += CHUNK_SIZE) {
+            List<Integer> chunk = ids.subList(from, Math.min(ids.size(), from + CHUNK_SIZE));
+            int placeholders = placeholders(chunk.size());
+            StringBuilder sql = new StringBuilder("SELECT id, current_balance, version FROM users WHERE id IN (");
+            for (int i = 0; i < placeholders; i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(')');
+
+            try (PreparedStatement queryBalances = connection.prepareStatement(sql.toString())) {
+                // pad with the last id, repeating a value in the IN list doesn't change the result
+                for (int i = 0; i < placeholders; i++) {
+                    queryBalances.setInt(i + 1, chunk.get(Math.min(i, chunk.size() - 1)));
+                }
+                try (ResultSet resultSet = queryBalances.executeQuery()) {
+                    while (resultSet.next()) {
+                        balances.put(resultSet.getInt(1), new AccountCache.Entry(Money.read(resultSet, 2), resultSet.getLong(3)));
+                    }
+                }
+            }
+        }
+        return balances;
+    }
+
+    // size of an IN list for count values, the next power of two and at least 8
+    private static int placeholders(int count) {
+        return Math.max(8, Integer.highestOneBit(Math.max(1, count - 1)) << 1);
+    }
+
+    private static final class Posting {
+        private final Transaction transaction;
+        private final long logId, logSequence;
+        private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        private Posting(Transaction transaction, long logId, long logSequence) {
+            this.transaction = transaction;
+            this.logId = logId;
+            this.logSequence = logSequence;
+        }
+
+        private boolean isLogged() {
+            return logSequence > 0;
+        }
+    }
+}
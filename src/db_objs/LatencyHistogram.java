@@ -0,0 +1,98 @@
+package db_objs;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+    Lock-free histogram of latencies in nanoseconds, safe to record into from any number of threads.
+    Values below 128ns get a bucket each, above that every power of two is split into 64 buckets, so a
+    reported percentile is within 1/64 (about 1.6%) of the true value while the whole range up to Long.MAX_VALUE
+    fits in a few thousand counters.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_BUCKETS = SUB_BUCKETS * 2;
+    private static final int BUCKETS = LINEAR_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public void record(long nanos) {
+        counts.incrementAndGet(bucket(Math.max(0, nanos)));
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    // the latency at or below which the given fraction (e.g. 0.99) of the recorded values fall, 0 if empty
+    public long percentileNanos(double fraction) {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) return highestValue(i);
+        }
+        return highestValue(BUCKETS - 1);
+    }
+
+    public long maxNanos() {
+        for (int i = BUCKETS - 1; i >= 0; i--) {
+            if (counts.get(i) != 0) return highestValue(i);
+        }
+        return 0;
+    }
+
+    // adds the counts of other to this histogram
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = other.counts.get(i);
+            if (count != 0) counts.addAndGet(i, count);
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    // "p50=1.200ms p99=8.400ms p999=20.100ms max=31.000ms"
+    public String summary() {
+        return "p50=" + millis(percentileNanos(0.50)) + " p99=" + millis(percentileNanos(0.99))
+                + " p999=" + millis(percentileNanos(0.999)) + " max=" + millis(maxNanos());
+    }
+
+    static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3fms", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    private static int bucket(long value) {
+        if (value < LINEAR_BUCKETS) return (int) value;
+
+        // shift so the top SUB_BUCKET_BITS + 1 bits remain, their value is in [SUB_BUCKETS, 2 * SUB_BUCKETS)
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    private static long highestValue(int bucket) {
+        if (bucket < LINEAR_BUCKETS) return bucket;
+
+        int shift = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+        long lowest = (long) ((bucket - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
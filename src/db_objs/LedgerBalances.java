@@ -0,0 +1,51 @@
+package db_objs;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/*
+    Past balances derived from the transactions ledger, for balance-at-date queries and statement openings.
+    The balance before a date is the newest row in balance_snapshots taken before it (the balance up to and
+    including last_transaction_id) plus the sum of the ledger entries after that id, so a read only sums the
+    short tail written since that snapshot. Accounts without a snapshot sum their whole ledger. SnapshotCompactor
+    adds the snapshots in the background. The current balance is users.current_balance, every posting updates it
+    in the same commit as its ledger entry.
+ */
+public final class LedgerBalances {
+    private LedgerBalances() {
+    }
+
+    // the balance of the account including every ledger entry made before at (exclusive)
+    public static Money balanceAt(Connection connection, int userId, Timestamp at) throws SQLException {
+        // newest snapshot that only covers entries from before at
+        Money balance = Money.ZERO;
+        long lastTransactionId = 0;
+        try (PreparedStatement querySnapshot = connection.prepareStatement(
+                "SELECT balance, last_transaction_id FROM balance_snapshots " +
+                        "WHERE user_id = ? AND last_transaction_date < ? ORDER BY last_transaction_id DESC LIMIT 1")) {
+            querySnapshot.setInt(1, userId);
+            querySnapshot.setTimestamp(2, at);
+            try (ResultSet resultSet = querySnapshot.executeQuery()) {
+                if (resultSet.next()) {
+                    balance = Money.read(resultSet, 1);
+                    lastTransactionId = resultSet.getLong(2);
+                }
+            }
+        }
+
+        try (PreparedStatement sumTail = connection.prepareStatement(
+                "SELECT COALESCE(SUM(transaction_amount), 0) FROM transactions " +
+                        "WHERE user_id = ? AND id > ? AND transaction_date < ?")) {
+            sumTail.setInt(1, userId);
+            sumTail.setLong(2, lastTransactionId);
+            sumTail.setTimestamp(3, at);
+            try (ResultSet resultSet = sumTail.executeQuery()) {
+                resultSet.next();
+                return balance.plus(Money.read(resultSet, 1));
+            }
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package db_objs;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+    Monthly statements and running balances computed by the database from the transactions ledger.
+    Both queries are range scans of the (user_id, transaction_date, id) index: the monthly totals are one
+    GROUP BY over the months asked for, the running balance of every line is a window SUM over the month's rows
+    (window functions need MySQL 8.0). Pages of a month in date order are read off the same index after the
+    last line of the page before, a page further in (the scroll bar was dragged) from whichever end of the month
+    is nearer, passing over the lines before it in the index only (sql/010 puts the amount in it). Pages by
+    amount continue after the last line of the page before too, but the balance column needs the month's
+    running total, so each costs one pass over the month's index entries. Opening balances come from
+    LedgerBalances, so only the ledger tail after the newest snapshot before the month is summed.
+ */
+public final class LedgerStatements {
+    private static final String MONTHLY_TOTALS =
+            "SELECT YEAR(transaction_date), MONTH(transaction_date), COUNT(*), " +
+                    "COALESCE(SUM(CASE WHEN transaction_type = 'Deposit' THEN transaction_amount END), 0), " +
+                    "COALESCE(SUM(CASE WHEN transaction_type = 'Withdraw' THEN -transaction_amount END), 0), " +
+                    "COALESCE(SUM(CASE WHEN transaction_type = 'Transfer' AND transaction_amount > 0 " +
+                    "THEN transaction_amount END), 0), " +
+                    "COALESCE(SUM(CASE WHEN transaction_type = 'Transfer' AND transaction_amount < 0 " +
+                    "THEN -transaction_amount END), 0), " +
+                    "COALESCE(SUM(CASE WHEN transaction_type NOT IN ('Deposit', 'Withdraw', 'Transfer') " +
+                    "THEN transaction_amount END), 0) " +
+            "FROM transactions WHERE user_id = ? AND transaction_date >= ? AND transaction_date < ? " +
+            "GROUP BY YEAR(transaction_date), MONTH(transaction_date)";
+
+    private static final String LINES_WITH_RUNNING_TOTAL =
+            "SELECT " + RowMappers.TRANSACTION_COLUMNS + ", " +
+                    "SUM(transaction_amount) OVER (ORDER BY transaction_date, id ROWS UNBOUNDED PRECEDING) " +
+            "FROM transactions WHERE user_id = ? AND transaction_date >= ? AND transaction_date < ? " +
+            "ORDER BY transaction_date, id";
+
+    // a page in any order, the running balance still follows the ledger (date) order
+    private static final String PAGE_WITH_RUNNING_TOTAL =
+            "SELECT * FROM (SELECT " + RowMappers.TRANSACTION_COLUMNS + ", " +
+                    "SUM(transaction_amount) OVER (ORDER BY transaction_date, id ROWS UNBOUNDED PRECEDING) AS running_total " +
+            "FROM transactions WHERE user_id = ? AND transaction_date >= ? AND transaction_date < ?) month_lines ";
+
+    // the lines limit - skip to limit of the month counted from its oldest (ASC) or newest (DESC) end, with the
+    // running total from that end. Only the index is read for the lines passed over
+    private static final String EDGE_PAGE =
+            "SELECT t.id, t.user_id, t.transaction_type, t.transaction_amount, t.transaction_date, edge.running_total " +
+            "FROM (SELECT id, position, running_total FROM (SELECT id, " +
+                    "ROW_NUMBER() OVER (ORDER BY transaction_date %1$s, id %1$s) AS position, " +
+                    "SUM(transaction_amount) OVER (ORDER BY transaction_date %1$s, id %1$s ROWS UNBOUNDED PRECEDING) " +
+                    "AS running_total " +
+                    "FROM (SELECT id, transaction_date, transaction_amount FROM transactions " +
+                    "WHERE user_id = ? AND transaction_date >= ? AND transaction_date < ? " +
+                    "ORDER BY transaction_date %1$s, id %1$s LIMIT ?) edge_lines) numbered " +
+                    "WHERE position > ?) edge " +
+            "JOIN transactions t ON t.id = edge.id ORDER BY edge.position";
+    private static final String OLDEST_EDGE_PAGE = String.format(EDGE_PAGE, "ASC");
+    private static final String NEWEST_EDGE_PAGE = String.format(EDGE_PAGE, "DESC");
+
+    private LedgerStatements() {
+    }
+
+    // the statement of every month from first to last (inclusive) in order, months without transactions included
+    // openingBalance is the balance at the start of first
+    public static List<MonthlyStatement> monthlyStatements(Connection connection, int userId, Money openingBalance,
+                                                           YearMonth first, YearMonth last) throws SQLException {
+        int months = monthsBetween(first, last) + 1;
+        if (months <= 0) return new ArrayList<>();
+        MonthlyStatement[] totals = new MonthlyStatement[months];
+
+        try (PreparedStatement queryTotals = connection.prepareStatement(MONTHLY_TOTALS)) {
+            queryTotals.setInt(1, userId);
+            queryTotals.setTimestamp(2, startOf(first));
+            queryTotals.setTimestamp(3, startOf(last.plusMonths(1)));
+            try (ResultSet resultSet = queryTotals.executeQuery()) {
+                while (resultSet.next()) {
+                    YearMonth month = YearMonth.of(resultSet.getInt(1), resultSet.getInt(2));
+                    // the opening balance is filled in below, once every month is known
+                    totals[monthsBetween(first, month)] = new MonthlyStatement(month, Money.ZERO,
+                            Money.read(resultSet, 4), Money.read(resultSet, 5), Money.read(resultSet, 6), Money.read(resultSet, 7),
+                            Money.read(resultSet, 8), resultSet.getInt(3));
+                }
+            }
+        }
+
+        // chain the months, each one opens with the closing balance of the one before
+        List<MonthlyStatement> statements = new ArrayList<>(months);
+        Money balance = openingBalance;
+        for (int i = 0; i < months; i++) {
+            MonthlyStatement total = totals[i];
+            MonthlyStatement statement = total == null
+                    ? MonthlyStatement.empty(first.plusMonths(i), balance)
+                    : new MonthlyStatement(total.getMonth(), balance, total.getDeposits(), total.getWithdrawals(),
+                    total.getTransfersIn(), total.getTransfersOut(), total.getAdjustments(),
+                    total.getTransactionCount());
+            statements.add(statement);
+            balance = statement.getClosingBalance();
+        }
+        return statements;
+    }
+
+    // every transaction of the month oldest first, each with the balance right after it
+    // openingBalance is the balance at the start of the month
+    public static List<StatementLine> statementLines(Connection connection, int userId, Money openingBalance,
+                                                     YearMonth month) throws SQLException {
+        List<StatementLine> lines = new ArrayList<>();
+        try (PreparedStatement queryLines = connection.prepareStatement(LINES_WITH_RUNNING_TOTAL)) {
+            queryLines.setInt(1, userId);
+            queryLines.setTimestamp(2, startOf(month));
+            queryLines.setTimestamp(3, startOf(month.plusMonths(1)));
+            try (ResultSet resultSet = queryLines.executeQuery()) {
+                while (resultSet.next()) {
+                    lines.add(new StatementLine(RowMappers.TRANSACTION.map(resultSet),
+                            openingBalance.plus(Money.read(resultSet, 6))));
+                }
+            }
+        }
+        return lines;
+    }
+
+    // one page of the statement's month in the query's order, each line with the balance right after it
+    // pages in date order continuing after a known line only read the page's rows off the index, the balance is
+    // carried over from that line. Pages in date order at an offset are read from the nearer end of the month.
+    // Pages by amount are cut from the month with its running total, after the known line or at the offset
+    public static List<StatementLine> statementPage(Connection connection, int userId, MonthlyStatement statement,
+                                                    StatementQuery query) throws SQLException {
+        StatementQuery.Order order = query.getOrder();
+        if (order.isByDate()) {
+            return query.getAfter() != null || query.getOffset() == 0
+                    ? continuePage(connection, userId, statement, query)
+                    : edgePage(connection, userId, statement, query);
+        }
+
+        // keyset condition in the amount order, continue right after the last line of the previous page
+        StatementLine after = query.getAfter();
+        String sql = PAGE_WITH_RUNNING_TOTAL;
+        if (after != null) {
+            sql += order == StatementQuery.Order.LARGEST_FIRST
+                    ? "WHERE transaction_amount < ? OR (transaction_amount = ? AND id < ?) "
+                    : "WHERE transaction_amount > ? OR (transaction_amount = ? AND id > ?) ";
+        }
+        sql += "ORDER BY " + orderBy(order) + " LIMIT ? OFFSET ?";
+
+        List<StatementLine> lines = new ArrayList<>(query.getPageSize());
+        try (PreparedStatement queryPage = connection.prepareStatement(sql)) {
+            int index = 1;
+            queryPage.setInt(index++, userId);
+            queryPage.setTimestamp(index++, startOf(statement.getMonth()));
+            queryPage.setTimestamp(index++, startOf(statement.getMonth().plusMonths(1)));
+            if (after != null) {
+                Money.bind(queryPage, index++, after.getTransaction().getTransactionAmount());
+                Money.bind(queryPage, index++, after.getTransaction().getTransactionAmount());
+                queryPage.setInt(index++, after.getTransaction().getId());
+            }
+            queryPage.setInt(index++, query.getPageSize());
+            queryPage.setInt(index, after != null ? 0 : query.getOffset());
+            try (ResultSet resultSet = queryPage.executeQuery()) {
+                while (resultSet.next()) {
+                    lines.add(new StatementLine(RowMappers.TRANSACTION.map(resultSet),
+                            statement.getOpeningBalance().plus(Money.read(resultSet, 6)), resultSet.getTimestamp(5)));
+                }
+            }
+        }
+        return lines;
+    }
+
+    // a page in date order at an offset into the month (the statement's count of lines), without the line before
+    // it. It is read from the nearer end of the month, so at most half of it is passed over
+    private static List<StatementLine> edgePage(Connection connection, int userId, MonthlyStatement statement,
+                                                StatementQuery query) throws SQLException {
+        boolean newestFirst = query.getOrder() == StatementQuery.Order.NEWEST_FIRST;
+        int count = statement.getTransactionCount();
+
+        // the page is the lines start..end (exclusive) of the month oldest first
+        long start = newestFirst ? (long) count - query.getOffset() - query.getPageSize() : query.getOffset();
+        long end = Math.min(count, start + query.getPageSize());
+        start = Math.max(0, start);
+        if (end <= start) return new ArrayList<>();
+
+        boolean fromOldest = start <= count - end;
+        int skip = (int) (fromOldest ? start : count - end);
+        int limit = (int) (skip + end - start);
+
+        List<StatementLine> lines = new ArrayList<>((int) (end - start));
+        try (PreparedStatement queryPage = connection.prepareStatement(fromOldest ? OLDEST_EDGE_PAGE : NEWEST_EDGE_PAGE)) {
+            queryPage.setInt(1, userId);
+            queryPage.setTimestamp(2, startOf(statement.getMonth()));
+            queryPage.setTimestamp(3, startOf(statement.getMonth().plusMonths(1)));
+            queryPage.setInt(4, limit);
+            queryPage.setInt(5, skip);
+            try (ResultSet resultSet = queryPage.executeQuery()) {
+                while (resultSet.next()) {
+                    Transaction transaction = RowMappers.TRANSACTION.map(resultSet);
+                    Money runningTotal = Money.read(resultSet, 6);
+                    // counted from the newest end the running total includes the line and everything after it
+                    Money balance = fromOldest
+                            ? statement.getOpeningBalance().plus(runningTotal)
+                            : statement.getClosingBalance().minus(runningTotal).plus(transaction.getTransactionAmount());
+                    lines.add(new StatementLine(transaction, balance, resultSet.getTimestamp(5)));
+                }
+            }
+        }
+
+        // read in the order of the end it started from
+        if (fromOldest == newestFirst) Collections.reverse(lines);
+        return lines;
+    }
+
+    private static List<StatementLine> continuePage(Connection connection, int userId, MonthlyStatement statement,
+                                                    StatementQuery query) throws SQLException {
+        boolean newestFirst = query.getOrder() == StatementQuery.Order.NEWEST_FIRST;
+        StatementLine after = query.getAfter();
+
+        // keyset condition, continue right after the last line of the previous page
+        String sql = "SELECT " + RowMappers.TRANSACTION_COLUMNS + " FROM transactions " +
+                "WHERE user_id = ? AND transaction_date >= ? AND transaction_date < ?";
+        if (after != null) {
+            sql += newestFirst
+                    ? " AND (transaction_date < ? OR (transaction_date = ? AND id < ?))"
+                    : " AND (transaction_date > ? OR (transaction_date = ? AND id > ?))";
+        }
+        sql += " ORDER BY " + orderBy(query.getOrder()) + " LIMIT ?";
+
+        // the balance before the first line of the page, going backwards from the closing balance when newest first
+        Money balance;
+        if (after != null) {
+            balance = newestFirst
+                    ? after.getBalanceAfter().minus(after.getTransaction().getTransactionAmount())
+                    : after.getBalanceAfter();
+        } else {
+            balance = newestFirst ? statement.getClosingBalance() : statement.getOpeningBalance();
+        }
+
+        List<StatementLine> lines = new ArrayList<>(query.getPageSize());
+        try (PreparedStatement queryPage = connection.prepareStatement(sql)) {
+            int index = 1;
+            queryPage.setInt(index++, userId);
+            queryPage.setTimestamp(index++, startOf(statement.getMonth()));
+            queryPage.setTimestamp(index++, startOf(statement.getMonth().plusMonths(1)));
+            if (after != null) {
+                Timestamp afterDate = after.getStoredDate();
+                queryPage.setTimestamp(index++, afterDate);
+                queryPage.setTimestamp(index++, afterDate);
+                queryPage.setInt(index++, after.getTransaction().getId());
+            }
+            queryPage.setInt(index, query.getPageSize());
+            try (ResultSet resultSet = queryPage.executeQuery()) {
+                while (resultSet.next()) {
+                    Transaction transaction = RowMappers.TRANSACTION.map(resultSet);
+                    Timestamp storedDate = resultSet.getTimestamp(5);
+                    if (newestFirst) {
+                        lines.add(new StatementLine(transaction, balance, storedDate));
+                        balance = balance.minus(transaction.getTransactionAmount());
+                    } else {
+                        balance = balance.plus(transaction.getTransactionAmount());
+                        lines.add(new StatementLine(transaction, balance, storedDate));
+                    }
+                }
+            }
+        }
+        return lines;
+    }
+
+    private static String orderBy(StatementQuery.Order order) {
+        switch (order) {
+            case OLDEST_FIRST:
+                return "transaction_date, id";
+            case LARGEST_FIRST:
+                return "transaction_amount DESC, id DESC";
+            case SMALLEST_FIRST:
+                return "transaction_amount, id";
+            default:
+                return "transaction_date DESC, id DESC";
+        }
+    }
+
+    // midnight on the first day of the month, in the time zone transaction dates are written in
+    public static Timestamp startOf(YearMonth month) {
+        return Timestamp.valueOf(month.atDay(1).atStartOfDay());
+    }
+
+    private static int monthsBetween(YearMonth from, YearMonth to) {
+        return (to.getYear() - from.getYear()) * 12 + to.getMonthValue() - from.getMonthValue();
+    }
+}
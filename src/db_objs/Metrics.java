@@ -0,0 +1,80 @@
+package db_objs;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/*
+    Registry of the OperationMetrics and ContentionCounters of the app.
+    Each operation is published as the JMX MBean bankapp:type=Operation,name=<operation> (visible in jconsole
+    or any JMX client) unless metrics.jmx=false, contention counters as bankapp:type=Contention,name=<name>
+    and the startup times as bankapp:type=Startup. When metrics.file is set the interval numbers of every
+    operation are also appended to that file every metrics.fileIntervalMillis, see MetricsFile.
+ */
+public final class Metrics {
+    private static final ConcurrentSkipListMap<String, OperationMetrics> OPERATIONS = new ConcurrentSkipListMap<>();
+    private static final ConcurrentSkipListMap<String, ContentionCounters> CONTENTION = new ConcurrentSkipListMap<>();
+    private static final boolean JMX = DbConfig.getBoolean("metrics.jmx", true);
+
+    static {
+        String file = DbConfig.getString("metrics.file");
+        if (file != null && !file.isBlank()) {
+            new MetricsFile(
+                    Paths.get(file),
+                    DbConfig.getLong("metrics.fileIntervalMillis", 60_000),
+                    DbConfig.getLong("metrics.fileMaxBytes", 10 * 1024 * 1024),
+                    DbConfig.getInt("metrics.fileKeep", 5)
+            ).start();
+        }
+    }
+
+    private Metrics() {
+    }
+
+    // the metrics of the named operation, created and published on first use
+    public static OperationMetrics operation(String name) {
+        return OPERATIONS.computeIfAbsent(name, Metrics::register);
+    }
+
+    // every operation, sorted by name
+    public static Collection<OperationMetrics> operations() {
+        return OPERATIONS.values();
+    }
+
+    // the contention counters of the named kind of update, created and published on first use
+    public static ContentionCounters contention(String name) {
+        return CONTENTION.computeIfAbsent(name, key -> {
+            ContentionCounters counters = new ContentionCounters(key);
+            publish(counters, "bankapp:type=Contention,name=" + key);
+            return counters;
+        });
+    }
+
+    // every set of contention counters, sorted by name
+    public static Collection<ContentionCounters> contention() {
+        return CONTENTION.values();
+    }
+
+    private static OperationMetrics register(String name) {
+        OperationMetrics metrics = new OperationMetrics(name);
+        publish(metrics, "bankapp:type=Operation,name=" + name);
+        return metrics;
+    }
+
+    // registers mbean under name unless metrics.jmx=false
+    static void publish(Object mbean, String name) {
+        if (!JMX) return;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(name);
+            if (!server.isRegistered(objectName)) server.registerMBean(mbean, objectName);
+        } catch (JMException e) {
+            // still counted, just not visible over JMX
+            e.printStackTrace();
+        }
+    }
+}
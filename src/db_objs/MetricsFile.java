@@ -0,0 +1,74 @@
+package db_objs;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Appends one line per operation that had calls since the previous write to a local file, on a background
+    thread. Once the file reaches maxBytes it is rolled: file -> file.1 -> file.2 ..., keeping at most keep
+    old files.
+
+    2024-05-01T10:15:00Z validateLogin calls=120 errors=0 p50=95.420ms p99=180.355ms p999=190.841ms max=190.841ms
+ */
+class MetricsFile {
+    private final Path path;
+    private final long intervalMillis;
+    private final long maxBytes;
+    private final int keep;
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(VirtualThreads.daemonThreadFactory("metrics-file"));
+
+    MetricsFile(Path path, long intervalMillis, long maxBytes, int keep) {
+        this.path = path;
+        this.intervalMillis = intervalMillis;
+        this.maxBytes = maxBytes;
+        this.keep = Math.max(1, keep);
+    }
+
+    void start() {
+        scheduler.scheduleWithFixedDelay(this::write, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void write() {
+        String timestamp = Instant.now().toString();
+        StringBuilder lines = new StringBuilder();
+        for (OperationMetrics operation : Metrics.operations()) {
+            String interval = operation.drainInterval();
+            if (interval == null) continue;
+            lines.append(timestamp).append(' ').append(operation.getName()).append(' ').append(interval).append('\n');
+        }
+        if (lines.length() == 0) return;
+
+        try {
+            if (Files.exists(path) && Files.size(path) >= maxBytes) roll();
+            try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                writer.write(lines.toString());
+            }
+        } catch (IOException e) {
+            // try again on the next interval
+            e.printStackTrace();
+        }
+    }
+
+    private void roll() throws IOException {
+        Files.deleteIfExists(rolled(keep));
+        for (int i = keep - 1; i >= 1; i--) {
+            if (Files.exists(rolled(i))) Files.move(rolled(i), rolled(i + 1), StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.move(path, rolled(1), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Path rolled(int index) {
+        return path.resolveSibling(path.getFileName() + "." + index);
+    }
+}
@@ -0,0 +1,154 @@
+package db_objs;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/*
+    Immutable amount of money stored as a long number of cents.
+    Parsing from text is exact (no float in between) and arithmetic throws ArithmeticException on overflow
+    instead of wrapping around. bind/read are the only places where amounts cross into JDBC.
+ */
+public final class Money implements Comparable<Money> {
+    public static final Money ZERO = new Money(0);
+
+    // the largest amount the DECIMAL(15,2) amount and balance columns hold, in cents
+    public static final long MAX_STORABLE_CENTS = 999_999_999_999_999L;
+
+    private final long cents;
+
+    private Money(long cents) {
+        this.cents = cents;
+    }
+
+    public static Money ofCents(long cents) {
+        return cents == 0 ? ZERO : new Money(cents);
+    }
+
+    // accepts an optional sign and $, digits, and at most two decimals, e.g. "12", "-0.5", "$1000.25"
+    public static Money parse(String text) {
+        if (text == null) throw new NumberFormatException("Amount is missing");
+        String value = text.trim();
+        int length = value.length();
+        int index = 0;
+
+        boolean negative = false;
+        if (index < length && (value.charAt(index) == '-' || value.charAt(index) == '+')) {
+            negative = value.charAt(index) == '-';
+            index++;
+        }
+        if (index < length && value.charAt(index) == '$') index++;
+
+        long units = 0;
+        int unitDigits = 0;
+        while (index < length && Character.isDigit(value.charAt(index))) {
+            units = multiplyAdd(units, value.charAt(index) - '0', text);
+            unitDigits++;
+            index++;
+        }
+
+        long fraction = 0;
+        int fractionDigits = 0;
+        if (index < length && value.charAt(index) == '.') {
+            index++;
+            while (index < length && Character.isDigit(value.charAt(index))) {
+                if (++fractionDigits > 2) throw new NumberFormatException("More than two decimals: " + text);
+                fraction = fraction * 10 + (value.charAt(index) - '0');
+                index++;
+            }
+        }
+        if (index != length || unitDigits + fractionDigits == 0) {
+            throw new NumberFormatException("Not an amount: " + text);
+        }
+        if (fractionDigits == 1) fraction *= 10;
+
+        try {
+            long cents = Math.addExact(Math.multiplyExact(units, 100), fraction);
+            return ofCents(negative ? -cents : cents);
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Amount too large: " + text);
+        }
+    }
+
+    // converts a decimal, rounding half up to whole cents
+    public static Money of(BigDecimal amount) {
+        return ofCents(amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact());
+    }
+
+    // the single place where amounts are bound to a statement parameter
+    public static void bind(PreparedStatement statement, int parameterIndex, Money amount) throws SQLException {
+        statement.setBigDecimal(parameterIndex, BigDecimal.valueOf(amount.cents, 2));
+    }
+
+    // the single place where amounts are read from a result set, null stays null
+    public static Money read(ResultSet resultSet, int columnIndex) throws SQLException {
+        BigDecimal amount = resultSet.getBigDecimal(columnIndex);
+        return amount == null ? null : of(amount);
+    }
+
+    public long getCents() {
+        return cents;
+    }
+
+    public Money plus(Money other) {
+        return ofCents(Math.addExact(cents, other.cents));
+    }
+
+    public Money minus(Money other) {
+        return ofCents(Math.subtractExact(cents, other.cents));
+    }
+
+    public Money negate() {
+        return ofCents(Math.negateExact(cents));
+    }
+
+    public int signum() {
+        return Long.signum(cents);
+    }
+
+    // true if the database can store the amount, see MAX_STORABLE_CENTS
+    public boolean isStorable() {
+        return Math.abs(cents) <= MAX_STORABLE_CENTS;
+    }
+
+    public boolean isNegative() {
+        return cents < 0;
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(cents, other.cents);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Money && ((Money) other).cents == cents;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(cents);
+    }
+
+    // always two decimals, e.g. 12.30 or -0.05
+    @Override
+    public String toString() {
+        long absolute = Math.abs(cents);
+        long fraction = absolute % 100;
+        return (cents < 0 ? "-" : "") + absolute / 100 + (fraction < 10 ? ".0" : ".") + fraction;
+    }
+
+    private static long multiplyAdd(long value, int digit, String text) {
+        try {
+            return Math.addExact(Math.multiplyExact(value, 10), digit);
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Amount too large: " + text);
+        }
+    }
+}
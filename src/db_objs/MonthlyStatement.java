@@ -0,0 +1,108 @@
+package db_objs;
+
+import java.time.YearMonth;
+
+/*
+    Summary of one calendar month of an account's ledger.
+    Withdrawals and outgoing transfers are reported as positive amounts, adjustments (corrections, e.g.
+    imported ones) keep their sign. The closing balance is the opening balance plus deposits,
+    incoming transfers and adjustments minus withdrawals and outgoing transfers.
+ */
+public class MonthlyStatement {
+    private final YearMonth month;
+    private final Money openingBalance;
+    private final Money deposits, withdrawals, transfersIn, transfersOut, adjustments;
+    private final int transactionCount;
+
+    public MonthlyStatement(YearMonth month, Money openingBalance, Money deposits, Money withdrawals,
+                            Money transfersIn, Money transfersOut, Money adjustments, int transactionCount) {
+        this.month = month;
+        this.openingBalance = openingBalance;
+        this.deposits = deposits;
+        this.withdrawals = withdrawals;
+        this.transfersIn = transfersIn;
+        this.transfersOut = transfersOut;
+        this.adjustments = adjustments;
+        this.transactionCount = transactionCount;
+    }
+
+    // a month without any transactions
+    static MonthlyStatement empty(YearMonth month, Money openingBalance) {
+        return new MonthlyStatement(month, openingBalance, Money.ZERO, Money.ZERO, Money.ZERO, Money.ZERO,
+                Money.ZERO, 0);
+    }
+
+    // the same month with the transaction added to its totals
+    MonthlyStatement plus(Transaction transaction) {
+        Money amount = transaction.getTransactionAmount();
+        Money deposits = this.deposits, withdrawals = this.withdrawals, transfersIn = this.transfersIn,
+                transfersOut = this.transfersOut, adjustments = this.adjustments;
+        switch (transaction.getTransactionType()) {
+            case "Deposit":
+                deposits = deposits.plus(amount);
+                break;
+            case "Withdraw":
+                withdrawals = withdrawals.minus(amount);
+                break;
+            case "Transfer":
+                if (amount.isNegative()) {
+                    transfersOut = transfersOut.minus(amount);
+                } else {
+                    transfersIn = transfersIn.plus(amount);
+                }
+                break;
+            default:
+                adjustments = adjustments.plus(amount);
+                break;
+        }
+        return new MonthlyStatement(month, openingBalance, deposits, withdrawals, transfersIn, transfersOut,
+                adjustments, transactionCount + 1);
+    }
+
+    // the same month opening with a different balance
+    MonthlyStatement withOpeningBalance(Money openingBalance) {
+        return new MonthlyStatement(month, openingBalance, deposits, withdrawals, transfersIn, transfersOut,
+                adjustments, transactionCount);
+    }
+
+    public YearMonth getMonth() {
+        return month;
+    }
+
+    public Money getOpeningBalance() {
+        return openingBalance;
+    }
+
+    public Money getDeposits() {
+        return deposits;
+    }
+
+    public Money getWithdrawals() {
+        return withdrawals;
+    }
+
+    public Money getTransfersIn() {
+        return transfersIn;
+    }
+
+    public Money getTransfersOut() {
+        return transfersOut;
+    }
+
+    public Money getAdjustments() {
+        return adjustments;
+    }
+
+    public int getTransactionCount() {
+        return transactionCount;
+    }
+
+    // everything that came in and went out during the month, signed
+    public Money getNetChange() {
+        return deposits.minus(withdrawals).plus(transfersIn).minus(transfersOut).plus(adjustments);
+    }
+
+    public Money getClosingBalance() {
+        return openingBalance.plus(getNetChange());
+    }
+}
@@ -2,212 +2,1193 @@ package db_objs;
 
 
 
-import com.mysql.cj.x.protobuf.MysqlxPrepare;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.math.BigDecimal;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.*;
+import java.time.YearMonth;
 import java.util.ArrayList;
-import java.util.Properties;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class MyJDBC {
 
-    // Path to your configuration file
-    private static final String CONFIG_FILE = "dbconfig.properties";
+    // Pool of pre-warmed connections, configured from dbconfig.properties
+    private static final ConnectionPool POOL = ConnectionPool.fromConfig();
 
-    // Database configuration loaded from the properties file
-    private static String DB_URL;
-    private static String DB_USERNAME;
-    private static String DB_PASSWORD;
+    // Static block to open the minimum number of connections once at class load time
+    static {
+        POOL.warmUp();
+    }
+
+    // Committed balances of recently used accounts, written through on every balance change
+    private static final AccountCache ACCOUNT_CACHE = new AccountCache(
+            DbConfig.getInt("cache.accounts.maxSize", 10_000),
+            DbConfig.getLong("cache.accounts.ttlMillis", 1_000)
+    );
+
+    // Coalesces concurrent deposits and withdrawals into group commits
+    private static final JournalWriter JOURNAL = new JournalWriter(
+            POOL,
+            ACCOUNT_CACHE,
+            DbConfig.getInt("journal.maxBatchSize", 100),
+            DbConfig.getLong("journal.maxLingerMillis", 5)
+    );
+
+    // Password hashing on its own bounded worker pool
+    private static final CredentialService CREDENTIALS = CredentialService.fromConfig();
+
+    // username -> id of every account, answers availability checks and recipient lookups in memory
+    private static final UsernameIndex USERNAMES = new UsernameIndex(
+            POOL,
+            DbConfig.getInt("index.usernames.expectedSize", 100_000),
+            0.01,
+            DbConfig.getLong("index.usernames.refreshMillis", 1_000)
+    );
+
+    static {
+        USERNAMES.load();
+    }
+
+    // Keeps the ledger tails short by writing balance snapshots in the background
+    private static final SnapshotCompactor SNAPSHOTS = new SnapshotCompactor(
+            POOL,
+            DbConfig.getLong("ledger.snapshot.intervalMillis", 60_000),
+            DbConfig.getInt("ledger.snapshot.minTail", 100)
+    );
 
-    // Static block to load the properties once at class load time
     static {
-        Properties props = new Properties();
-        try (InputStream input = new FileInputStream(CONFIG_FILE)) {
-            props.load(input);
-            DB_URL = props.getProperty("db.url");
-            DB_USERNAME = props.getProperty("db.username");
-            DB_PASSWORD = props.getProperty("db.password");
+        SNAPSHOTS.start();
+    }
+
+    // Local write-ahead log, every posting and transfer is appended here before it goes to the database
+    private static final PostingLog POSTING_LOG = openPostingLog();
+
+    // Applies the logged postings in order, starting with whatever a previous run left behind
+    private static final PostingDrainer DRAINER = new PostingDrainer(
+            POOL,
+            POSTING_LOG,
+            JOURNAL,
+            MyJDBC::applyLoggedTransfer,
+            DbConfig.getInt("journal.maxBatchSize", 100)
+    );
+
+    // Statements of months that are over, they never change again
+    private static final ClosedMonthCache CLOSED_MONTHS = new ClosedMonthCache(
+            DbConfig.getInt("statements.cacheSize", 10_000),
+            DbConfig.getLong("statements.closeGraceMillis", 60_000)
+    );
+
+    // Bulk imports of transactions, committed and checkpointed chunkSize rows at a time
+    private static final TransactionImporter IMPORTER = new TransactionImporter(
+            POOL,
+            ACCOUNT_CACHE,
+            CLOSED_MONTHS,
+            DbConfig.getInt("import.chunkSize", 5_000)
+    );
+
+    // how long transfer waits for the database before reporting the transfer as pending
+    private static final long APPLY_WAIT_MILLIS = DbConfig.getLong("wal.applyWaitMillis", 3_000);
+
+    // rows locked and batched per statement by transferBatch, the IN lists are padded to a power of two up to
+    // this size so only a handful of distinct statements end up in the statement cache
+    private static final int BATCH_CHUNK_SIZE = 512;
+
+    // rows the driver fetches per round trip during an export, Integer.MIN_VALUE makes Connector/J stream the
+    // result one row at a time instead of reading all of it into memory
+    private static final int EXPORT_FETCH_SIZE = DbConfig.getInt("export.fetchSize", Integer.MIN_VALUE);
+
+    // rows written between two progress reports of an export
+    private static final int EXPORT_PROGRESS_ROWS = 10_000;
+
+    // the queries of a login and of opening the main window, prepared ahead of the first login by warmUp
+    private static final String LOGIN_QUERY =
+            "SELECT " + RowMappers.USER_COLUMNS + ", password FROM users WHERE username = ?";
+    private static final String BALANCE_QUERY =
+            "SELECT current_balance, version FROM users WHERE id = ?";
+    private static final String LAST_TRANSACTION_ID_QUERY =
+            "SELECT COALESCE(MAX(id), 0) FROM transactions WHERE user_id = ?";
+
+    // polled by the ChangeFeed, both read the primary key only
+    private static final String HIGH_WATER_MARK_QUERY = "SELECT COALESCE(MAX(id), 0) FROM transactions";
+    private static final String CHANGED_ACCOUNTS_QUERY =
+            "SELECT user_id, MAX(id) FROM transactions WHERE id > ? AND id <= ? GROUP BY user_id";
+
+    // latency, calls, errors and rows of each operation, published over JMX (see Metrics)
+    private static final OperationMetrics VALIDATE_LOGIN = Metrics.operation("validateLogin");
+    private static final OperationMetrics REGISTER = Metrics.operation("register");
+    private static final OperationMetrics IS_USERNAME_AVAILABLE = Metrics.operation("isUsernameAvailable");
+    private static final OperationMetrics ADD_TRANSACTION = Metrics.operation("addTransactionToDatabase");
+    private static final OperationMetrics POST_TRANSACTION = Metrics.operation("postTransaction");
+    private static final OperationMetrics GET_BALANCE_AT = Metrics.operation("getBalanceAt");
+    private static final OperationMetrics TRANSFER = Metrics.operation("transfer");
+    private static final OperationMetrics APPLY_TRANSFER = Metrics.operation("applyLoggedTransfer");
+    private static final OperationMetrics TRANSFER_BATCH = Metrics.operation("transferBatch");
+    private static final OperationMetrics REFRESH_BALANCE = Metrics.operation("refreshBalance");
+    private static final OperationMetrics GET_PAST_TRANSACTION = Metrics.operation("getPastTransaction");
+    private static final OperationMetrics GET_TRANSACTION_PAGE = Metrics.operation("getTransactionPage");
+    private static final OperationMetrics GET_LAST_TRANSACTION_ID = Metrics.operation("getLastTransactionId");
+    private static final OperationMetrics GET_TRANSACTIONS_AFTER = Metrics.operation("getTransactionsAfter");
+    private static final OperationMetrics GET_HIGH_WATER_MARK = Metrics.operation("getHighWaterMark");
+    private static final OperationMetrics GET_CHANGED_ACCOUNTS = Metrics.operation("getChangedAccounts");
+    private static final OperationMetrics GET_MONTHLY_STATEMENTS = Metrics.operation("getMonthlyStatements");
+    private static final OperationMetrics GET_STATEMENT_LINES = Metrics.operation("getStatementLines");
+    private static final OperationMetrics GET_STATEMENT_PAGE = Metrics.operation("getStatementPage");
+    private static final OperationMetrics EXPORT_TRANSACTIONS = Metrics.operation("exportTransactions");
+    private static final OperationMetrics IMPORT_TRANSACTIONS = Metrics.operation("importTransactions");
+
+    private static PostingLog openPostingLog() {
+        try {
+            return new PostingLog(
+                    Paths.get(DbConfig.getString("wal.path", "bankapp-postings.wal")),
+                    DbConfig.getInt("wal.capacity", 65_536),
+                    DbConfig.getBoolean("wal.forceOnAppend", true)
+            );
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new UncheckedIOException(e);
         }
     }
 
-    // Helper method to get a database connection
+    // Helper method to borrow a database connection from the pool
+    // closing the returned connection gives it back to the pool
     private static Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(DB_URL, DB_USERNAME, DB_PASSWORD);
+        return POOL.getConnection();
     }
 
-    // if valid return an object with the user's information
-    public static User validateLogin(String username, String password) {
-        try (Connection connection = getConnection();
-             PreparedStatement preparedStatement = connection.prepareStatement(
-                     "SELECT * FROM users WHERE username = ? AND password = ?")) {
+    // same, the time spent waiting for the connection is added to the sample's acquire time
+    private static Connection getConnection(OperationMetrics.Sample sample) throws SQLException {
+        long started = System.nanoTime();
+        try {
+            return POOL.getConnection();
+        } finally {
+            sample.addAcquireNanos(System.nanoTime() - started);
+        }
+    }
 
-            preparedStatement.setString(1, username);
-            preparedStatement.setString(2, password);
+    // active/idle counts, wait time and borrow latency of the connection pool
+    public static PoolStats getPoolStats() {
+        return POOL.getStats();
+    }
 
-            try (ResultSet resultSet = preparedStatement.executeQuery()) {
-                if (resultSet.next()) {
-                    int userId = resultSet.getInt("id");
-                    BigDecimal currentBalance = resultSet.getBigDecimal("current_balance");
-                    return new User(userId, username, password, currentBalance);
+    // postings logged locally that the database hasn't confirmed yet, including the ones a previous run left
+    public static long getPendingPostingCount() {
+        return POSTING_LOG.getPendingCount();
+    }
+
+    // records of the posting log a previous run left corrupt, skipped when it was opened
+    public static long getSkippedPostingCount() {
+        return POSTING_LOG.getSkippedRecordCount();
+    }
+
+    // gets the first login ready: every idle pooled connection prepares the queries of a login and of the main
+    // window (with db.serverPrepStmts the server parses them now) and keeps them in its statement cache, and one
+    // password is hashed so the hashing code is compiled before a user waits for it
+    public static void warmUp() {
+        List<Connection> connections = new ArrayList<>();
+        try {
+            // borrowed together, one at a time the pool would hand out the same connection again
+            for (int idle = POOL.getStats().getIdleConnections(); idle > 0; idle--) {
+                connections.add(getConnection());
+            }
+            for (Connection connection : connections) {
+                for (String query : new String[]{LOGIN_QUERY, BALANCE_QUERY, LAST_TRANSACTION_ID_QUERY}) {
+                    connection.prepareStatement(query).close();
                 }
             }
         } catch (SQLException e) {
             e.printStackTrace();
+        } finally {
+            for (Connection connection : connections) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
         }
-        return null;
+        CREDENTIALS.hash("warm-up");
     }
 
-    // registers new user to the database
-    // true - register success, false - register fails
-    public static boolean register(String username, String password) {
-        try {
-            if (!checkUser(username)) {
-                try (Connection connection = getConnection();
-                     PreparedStatement preparedStatement = connection.prepareStatement(
-                             "INSERT INTO users(username, password, current_balance) VALUES(?, ?, ?)")) {
+    // hit ratio and eviction counts of the account balance cache
+    public static CacheStats getAccountCacheStats() {
+        return ACCOUNT_CACHE.getStats();
+    }
 
-                    preparedStatement.setString(1, username);
-                    preparedStatement.setString(2, password);
-                    preparedStatement.setBigDecimal(3, BigDecimal.ZERO);
-                    preparedStatement.executeUpdate();
-                    return true;
+    // hits, misses and size of the closed month statement cache
+    public static CacheStats getStatementCacheStats() {
+        return CLOSED_MONTHS.getStats();
+    }
+
+    // if valid return an object with the user's information
+    // throws RejectedExecutionException when too many logins are already waiting for a password check
+    public static User validateLogin(String username, String password) {
+        return VALIDATE_LOGIN.time(sample -> validateLogin(username, password, sample));
+    }
+
+    private static User validateLogin(String username, String password, OperationMetrics.Sample sample) {
+        User user = null;
+        String storedPassword = null;
+        try (Connection connection = getConnection(sample);
+             PreparedStatement preparedStatement = connection.prepareStatement(LOGIN_QUERY)) {
+
+            preparedStatement.setString(1, username);
+
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                if (resultSet.next()) {
+                    user = RowMappers.USER.map(resultSet);
+                    storedPassword = resultSet.getString(5);
+                    sample.rows(1);
                 }
             }
         } catch (SQLException e) {
+            sample.failed(e);
             e.printStackTrace();
+            return null;
         }
-        return false;
+
+        // the connection is back in the pool before the slow hash runs
+        if (!CREDENTIALS.verify(username, password, storedPassword)) return null;
+
+        // replace plaintext and outdated hashes, guarded so a concurrent change isn't overwritten
+        if (CREDENTIALS.needsRehash(storedPassword)) {
+            int userId = user.getId();
+            String oldPassword = storedPassword;
+            CREDENTIALS.rehash(password, newHash -> updatePasswordHash(userId, oldPassword, newHash));
+        }
+
+        ACCOUNT_CACHE.put(user.getId(), user.getCurrentBalance(), user.getVersion());
+        return user;
     }
 
-    // check if username already exists in the db
-    // true - user exists, false - user doesn't exist
-    private static boolean checkUser(String username) {
+    private static void updatePasswordHash(int userId, String oldPassword, String newHash) throws SQLException {
         try (Connection connection = getConnection();
+             PreparedStatement updatePassword = connection.prepareStatement(
+                     "UPDATE users SET password = ? WHERE id = ? AND password = ?")) {
+
+            updatePassword.setString(1, newHash);
+            updatePassword.setInt(2, userId);
+            updatePassword.setString(3, oldPassword);
+            updatePassword.executeUpdate();
+        }
+    }
+
+    // registers new user to the database, only the salted hash of the password is stored
+    // true - register success, false - register fails
+    public static boolean register(String username, String password) {
+        return REGISTER.time(sample -> register(username, password, sample));
+    }
+
+    private static boolean register(String username, String password, OperationMetrics.Sample sample) {
+        // known to be taken, no need to hash or go to the database
+        if (!isUsernameAvailable(username)) return false;
+
+        String passwordHash = CREDENTIALS.hash(password);
+        try (Connection connection = getConnection(sample);
              PreparedStatement preparedStatement = connection.prepareStatement(
-                     "SELECT * FROM users WHERE username = ?")) {
+                     "INSERT INTO users(username, password, current_balance) VALUES(?, ?, ?)",
+                     Statement.RETURN_GENERATED_KEYS)) {
 
             preparedStatement.setString(1, username);
-            try (ResultSet resultSet = preparedStatement.executeQuery()) {
-                return resultSet.next();
+            preparedStatement.setString(2, passwordHash);
+            Money.bind(preparedStatement, 3, Money.ZERO);
+            sample.rows(preparedStatement.executeUpdate());
+
+            try (ResultSet generatedKeys = preparedStatement.getGeneratedKeys()) {
+                if (generatedKeys.next()) USERNAMES.add(username, generatedKeys.getInt(1));
             }
+            CREDENTIALS.forgetFailures(username);
+            return true;
+        } catch (SQLIntegrityConstraintViolationException e) {
+            // taken by a registration the index hadn't seen yet, the unique key on username rejected it
+            return false;
         } catch (SQLException e) {
+            sample.failed(e);
             e.printStackTrace();
         }
-        return true;
+        return false;
+    }
+
+    // true if no account is known to use the username, answered from memory
+    // a registration can still lose a race for the name, register then returns false
+    private static boolean isUsernameAvailable(String username) {
+        return IS_USERNAME_AVAILABLE.time(sample -> !USERNAMES.contains(username));
     }
 
     // true - update to db was a success, false - update fails
     public static boolean addTransactionToDatabase(Transaction transaction) {
-        try (Connection connection = getConnection();
+        return ADD_TRANSACTION.time(sample -> addTransactionToDatabase(transaction, sample));
+    }
+
+    private static boolean addTransactionToDatabase(Transaction transaction, OperationMetrics.Sample sample) {
+        try (Connection connection = getConnection(sample);
              PreparedStatement insertTransaction = connection.prepareStatement(
                      "INSERT INTO transactions(user_id, transaction_type, transaction_amount, transaction_date) " +
                              "VALUES(?, ?, ?, NOW())")) {
 
             insertTransaction.setInt(1, transaction.getUserId());
             insertTransaction.setString(2, transaction.getTransactionType());
-            insertTransaction.setBigDecimal(3, transaction.getTransactionAmount());
-            insertTransaction.executeUpdate();
+            Money.bind(insertTransaction, 3, transaction.getTransactionAmount());
+            sample.rows(insertTransaction.executeUpdate());
             return true;
         } catch (SQLException e) {
+            sample.failed(e);
             e.printStackTrace();
         }
         return false;
     }
 
-    // true - update balance successful, false - update fails
-    public static boolean updateCurrentBalance(User user) {
-        try (Connection connection = getConnection();
-             PreparedStatement updateBalance = connection.prepareStatement(
-                     "UPDATE users SET current_balance = ? WHERE id = ?")) {
+    // logs a deposit or withdrawal locally and queues it for the database, the transaction amount is added to
+    // the user's balance and the transaction is recorded in the same commit
+    // the posting is durable once this returns, the future completes with true once committed, false if a
+    // withdrawal exceeds the balance, or exceptionally if the posting couldn't be logged
+    // only the local append is timed here, applying it shows up in the journal's commits
+    public static CompletableFuture<Boolean> postTransaction(Transaction transaction) {
+        OperationMetrics.Sample sample = POST_TRANSACTION.start();
+        try {
+            // an amount the column can't hold would never apply, it isn't logged
+            if (!transaction.getTransactionAmount().isStorable()) {
+                throw new IOException("Amount out of range: " + transaction.getTransactionAmount());
+            }
+            return DRAINER.post(PostingDrainer.kind(transaction.getTransactionType()),
+                    transaction.getUserId(), transaction.getTransactionAmount().getCents());
+        } catch (IOException e) {
+            sample.failed(e);
+            e.printStackTrace();
+            CompletableFuture<Boolean> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        } finally {
+            sample.finish();
+        }
+    }
 
-            updateBalance.setBigDecimal(1, user.getCurrentBalance());
-            updateBalance.setInt(2, user.getId());
-            updateBalance.executeUpdate();
-            return true;
+    // the user's balance including every transaction made before at, read from the ledger and its snapshots
+    // null if it couldn't be read
+    public static Money getBalanceAt(User user, Timestamp at) {
+        return GET_BALANCE_AT.time(sample -> getBalanceAt(user, at, sample));
+    }
+
+    private static Money getBalanceAt(User user, Timestamp at, OperationMetrics.Sample sample) {
+        try (Connection connection = getConnection(sample)) {
+            return LedgerBalances.balanceAt(connection, user.getId(), at);
         } catch (SQLException e) {
+            sample.failed(e);
             e.printStackTrace();
         }
-        return false;
+        return null;
     }
 
-    // true - transfer was a success, false - transfer fails
-    public static boolean transfer(User user, String transferredUsername, float transferAmount) {
-        try (Connection connection = getConnection();
-             PreparedStatement queryUser = connection.prepareStatement(
-                     "SELECT * FROM users WHERE username = ?")) {
+    // moves money from user to transferredUsername inside a single database transaction
+    // the transfer is logged locally first, if the database doesn't apply it within wal.applyWaitMillis the
+    // result is PENDING and it is applied in the background
+    // on success the in-memory user is updated with the committed balance
+    public static TransferResult transfer(User user, String transferredUsername, Money amount) {
+        return TRANSFER.time(sample -> transfer(user, transferredUsername, amount, sample));
+    }
 
-            queryUser.setString(1, transferredUsername);
-            try (ResultSet resultSet = queryUser.executeQuery()) {
-                while (resultSet.next()) {
-                    User transferredUser = new User(
-                            resultSet.getInt("id"),
-                            transferredUsername,
-                            resultSet.getString("password"),
-                            resultSet.getBigDecimal("current_balance")
-                    );
+    private static TransferResult transfer(User user, String transferredUsername, Money amount,
+                                           OperationMetrics.Sample sample) {
+        if (amount.signum() <= 0 || !amount.isStorable()) {
+            return TransferResult.failure(TransferResult.Status.INVALID_AMOUNT);
+        }
+
+        // resolve the recipient before borrowing a connection
+        Integer recipientId = USERNAMES.find(transferredUsername);
+        if (recipientId == null) {
+            return TransferResult.failure(TransferResult.Status.RECIPIENT_NOT_FOUND);
+        }
+        if (recipientId == user.getId()) {
+            return TransferResult.failure(TransferResult.Status.SAME_ACCOUNT);
+        }
+
+        try {
+            TransferResult result = DRAINER.transfer(user.getId(), recipientId, amount.getCents())
+                    .get(APPLY_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            if (result.isSuccess()) {
+                user.updateBalance(result.getSenderBalance(), result.getSenderVersion());
+            }
+            return result;
+        } catch (TimeoutException e) {
+            return TransferResult.failure(TransferResult.Status.PENDING);
+        } catch (InterruptedException e) {
+            // the transfer is logged and will still be applied
+            Thread.currentThread().interrupt();
+            return TransferResult.failure(TransferResult.Status.PENDING);
+        } catch (IOException | ExecutionException e) {
+            sample.failed(e);
+            e.printStackTrace();
+        }
+        return TransferResult.failure(TransferResult.Status.FAILED);
+    }
+
+    // applies a transfer from the posting log, called by the drainer in log order
+    // a record that was already committed (before a failure or a restart) is not applied again
+    private static TransferResult applyLoggedTransfer(PostingLog.Record record) throws SQLException {
+        OperationMetrics.Sample sample = APPLY_TRANSFER.start();
+        try {
+            return applyLoggedTransfer(record, sample);
+        } catch (SQLException e) {
+            // retried by the drainer, each failed attempt counts
+            sample.failed(e);
+            throw e;
+        } finally {
+            sample.finish();
+        }
+    }
+
+    private static TransferResult applyLoggedTransfer(PostingLog.Record record,
+                                                      OperationMetrics.Sample sample) throws SQLException {
+        int senderId = record.getUserId(), recipientId = record.getRecipientId();
+        try (Connection connection = getConnection(sample)) {
+            connection.setAutoCommit(false);
+            try {
+                String outcome = readOutcome(connection, record);
+                if (outcome != null) {
+                    TransferResult.Status status = TransferResult.Status.valueOf(outcome);
+                    TransferResult result = status == TransferResult.Status.SUCCESS
+                            ? readTransferBalances(connection, senderId, recipientId)
+                            : TransferResult.failure(status);
+                    connection.rollback();
+                    return result;
+                }
+
+                TransferResult result = transfer(connection, senderId, recipientId, Money.ofCents(record.getAmountCents()));
+                if (!result.isSuccess()) {
+                    // undo a credit that may have gone through before the failed debit, keep only the outcome
+                    connection.rollback();
+                }
+                recordOutcome(connection, record, result.getStatus());
+                connection.commit();
 
-                    Transaction transferTransaction = new Transaction(
-                            user.getId(),
-                            "Transfer",
-                            new BigDecimal(-transferAmount),
-                            null
-                    );
+                if (result.isSuccess()) {
+                    ACCOUNT_CACHE.put(senderId, result.getSenderBalance(), result.getSenderVersion());
+                    ACCOUNT_CACHE.put(recipientId, result.getRecipientBalance(), result.getRecipientVersion());
+                }
+                return result;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
 
-                    Transaction receivedTransaction = new Transaction(
-                            transferredUser.getId(),
-                            "Transfer",
-                            new BigDecimal(transferAmount),
-                            null
-                    );
+    private static String readOutcome(Connection connection, PostingLog.Record record) throws SQLException {
+        try (PreparedStatement queryOutcome = connection.prepareStatement(
+                "SELECT outcome FROM applied_postings WHERE log_id = ? AND log_sequence = ?")) {
+            queryOutcome.setLong(1, POSTING_LOG.getLogId());
+            queryOutcome.setLong(2, record.getSequence());
+            try (ResultSet resultSet = queryOutcome.executeQuery()) {
+                return resultSet.next() ? resultSet.getString(1) : null;
+            }
+        }
+    }
 
-                    transferredUser.setCurrentBalance(
-                            transferredUser.getCurrentBalance().add(BigDecimal.valueOf(transferAmount))
-                    );
-                    updateCurrentBalance(transferredUser);
+    private static void recordOutcome(Connection connection, PostingLog.Record record,
+                                      TransferResult.Status status) throws SQLException {
+        try (PreparedStatement insertOutcome = connection.prepareStatement(
+                "INSERT INTO applied_postings(log_id, log_sequence, outcome) VALUES(?, ?, ?)")) {
+            insertOutcome.setLong(1, POSTING_LOG.getLogId());
+            insertOutcome.setLong(2, record.getSequence());
+            insertOutcome.setString(3, status.name());
+            insertOutcome.executeUpdate();
+        }
+    }
 
-                    user.setCurrentBalance(
-                            user.getCurrentBalance().subtract(BigDecimal.valueOf(transferAmount))
-                    );
-                    updateCurrentBalance(user);
+    // performs the transfer on a connection that already has auto-commit turned off
+    private static TransferResult transfer(Connection connection, int senderId, int recipientId,
+                                           Money amount) throws SQLException {
+        // update both rows in ascending id order, two opposing transfers then always lock the rows in the
+        // same order and can't deadlock each other
+        try (PreparedStatement debit = connection.prepareStatement(
+                "UPDATE users SET current_balance = current_balance - ?, version = version + 1 " +
+                        "WHERE id = ? AND current_balance >= ?");
+             PreparedStatement credit = connection.prepareStatement(
+                     "UPDATE users SET current_balance = current_balance + ?, version = version + 1 WHERE id = ?")) {
 
-                    addTransactionToDatabase(transferTransaction);
-                    addTransactionToDatabase(receivedTransaction);
+            Money.bind(debit, 1, amount);
+            debit.setInt(2, senderId);
+            Money.bind(debit, 3, amount);
+            Money.bind(credit, 1, amount);
+            credit.setInt(2, recipientId);
 
-                    return true;
+            // the recipient id came from the username index, a missing row means it no longer exists
+            if (senderId < recipientId) {
+                if (debit.executeUpdate() == 0) {
+                    return TransferResult.failure(TransferResult.Status.INSUFFICIENT_FUNDS);
+                }
+                if (credit.executeUpdate() == 0) {
+                    return TransferResult.failure(TransferResult.Status.RECIPIENT_NOT_FOUND);
+                }
+            } else {
+                if (credit.executeUpdate() == 0) {
+                    return TransferResult.failure(TransferResult.Status.RECIPIENT_NOT_FOUND);
+                }
+                if (debit.executeUpdate() == 0) {
+                    return TransferResult.failure(TransferResult.Status.INSUFFICIENT_FUNDS);
                 }
             }
+        }
+
+        // both ledger rows in one batch
+        try (PreparedStatement insertTransaction = connection.prepareStatement(
+                "INSERT INTO transactions(user_id, transaction_type, transaction_amount, transaction_date) " +
+                        "VALUES(?, ?, ?, NOW())")) {
+
+            insertTransaction.setInt(1, senderId);
+            insertTransaction.setString(2, "Transfer");
+            Money.bind(insertTransaction, 3, amount.negate());
+            insertTransaction.addBatch();
+
+            insertTransaction.setInt(1, recipientId);
+            insertTransaction.setString(2, "Transfer");
+            Money.bind(insertTransaction, 3, amount);
+            insertTransaction.addBatch();
+
+            insertTransaction.executeBatch();
+        }
+
+        // both rows are locked by this transaction, so these are exactly the balances that will be committed
+        return readTransferBalances(connection, senderId, recipientId);
+    }
+
+    private static TransferResult readTransferBalances(Connection connection, int senderId,
+                                                       int recipientId) throws SQLException {
+        Money senderBalance = null, recipientBalance = null;
+        long senderVersion = 0, recipientVersion = 0;
+        try (PreparedStatement queryBalances = connection.prepareStatement(
+                "SELECT id, current_balance, version FROM users WHERE id IN (?, ?)")) {
+            queryBalances.setInt(1, senderId);
+            queryBalances.setInt(2, recipientId);
+            try (ResultSet resultSet = queryBalances.executeQuery()) {
+                while (resultSet.next()) {
+                    if (resultSet.getInt(1) == senderId) {
+                        senderBalance = Money.read(resultSet, 2);
+                        senderVersion = resultSet.getLong(3);
+                    } else {
+                        recipientBalance = Money.read(resultSet, 2);
+                        recipientVersion = resultSet.getLong(3);
+                    }
+                }
+            }
+        }
+        return TransferResult.success(recipientId, senderBalance, senderVersion, recipientBalance, recipientVersion);
+    }
+
+    // pays every line from the user's account, the lines that can go through are committed in one database
+    // transaction: the accounts are locked with one IN query per chunk, the sender is debited the total once and
+    // the credits go out as a JDBC batch and the ledger rows as multi-row inserts
+    // a line with a bad amount or an unknown recipient is skipped, if the sender can't cover the total of the
+    // remaining lines none of them is applied
+    // unlike transfer the batch doesn't go through the posting log, it is applied right away or not at all
+    // on success the in-memory user is updated with the committed balance
+    public static BatchTransferResult transferBatch(User user, List<PaymentLine> lines) {
+        return TRANSFER_BATCH.time(sample -> transferBatch(user, lines, sample));
+    }
+
+    private static BatchTransferResult transferBatch(User user, List<PaymentLine> lines,
+                                                     OperationMetrics.Sample sample) {
+        int senderId = user.getId();
+        TransferResult.Status[] statuses = new TransferResult.Status[lines.size()];
+        int[] recipientIds = new int[lines.size()];
+
+        // resolve the recipients before borrowing a connection, a line without a status is still good to go
+        for (int i = 0; i < lines.size(); i++) {
+            PaymentLine line = lines.get(i);
+            if (line.getAmount().signum() <= 0 || !line.getAmount().isStorable()) {
+                statuses[i] = TransferResult.Status.INVALID_AMOUNT;
+                continue;
+            }
+            Integer recipientId = USERNAMES.find(line.getRecipientUsername());
+            if (recipientId == null) {
+                statuses[i] = TransferResult.Status.RECIPIENT_NOT_FOUND;
+            } else if (recipientId == senderId) {
+                statuses[i] = TransferResult.Status.SAME_ACCOUNT;
+            } else {
+                recipientIds[i] = recipientId;
+            }
+        }
+
+        AccountCache.Entry sender = null;
+        try (Connection connection = getConnection(sample)) {
+            connection.setAutoCommit(false);
+            try {
+                sender = transferBatch(connection, senderId, lines, statuses, recipientIds);
+                if (sender != null) {
+                    connection.commit();
+                } else {
+                    connection.rollback();
+                }
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
         } catch (SQLException e) {
+            sample.failed(e);
             e.printStackTrace();
+            sender = null;
         }
-        return false;
+
+        // lines still without a status were either all committed or all rolled back
+        TransferResult.Status outcome = sender != null ? TransferResult.Status.SUCCESS : TransferResult.Status.FAILED;
+        Money total = Money.ZERO;
+        Set<Integer> recipients = new HashSet<>();
+        for (int i = 0; i < statuses.length; i++) {
+            if (statuses[i] != null) continue;
+            statuses[i] = outcome;
+            total = total.plus(lines.get(i).getAmount());
+            recipients.add(recipientIds[i]);
+        }
+        if (sender == null) return new BatchTransferResult(statuses, Money.ZERO, null, 0);
+        sample.rows(recipients.size() + 1);
+
+        ACCOUNT_CACHE.put(senderId, sender.getBalance(), sender.getVersion());
+        for (int recipientId : recipients) {
+            ACCOUNT_CACHE.invalidate(recipientId);
+        }
+        user.updateBalance(sender.getBalance(), sender.getVersion());
+        return new BatchTransferResult(statuses, total, sender.getBalance(), sender.getVersion());
+    }
+
+    // applies the lines without a status on a connection that already has auto-commit turned off
+    // returns the sender's new balance, or null after giving every remaining line its failure status
+    private static AccountCache.Entry transferBatch(Connection connection, int senderId, List<PaymentLine> lines,
+                                                    TransferResult.Status[] statuses,
+                                                    int[] recipientIds) throws SQLException {
+        SortedSet<Integer> accountIds = new TreeSet<>();
+        accountIds.add(senderId);
+        for (int i = 0; i < statuses.length; i++) {
+            if (statuses[i] == null) accountIds.add(recipientIds[i]);
+        }
+        Set<Integer> existing = lockAccounts(connection, accountIds);
+
+        // the amount each recipient gets, recipients removed since the username index saw them are skipped
+        Map<Integer, Money> credits = new TreeMap<>();
+        Money total = Money.ZERO;
+        for (int i = 0; i < statuses.length; i++) {
+            if (statuses[i] != null) continue;
+            if (!existing.contains(recipientIds[i])) {
+                statuses[i] = TransferResult.Status.RECIPIENT_NOT_FOUND;
+                continue;
+            }
+            credits.merge(recipientIds[i], lines.get(i).getAmount(), Money::plus);
+            total = total.plus(lines.get(i).getAmount());
+        }
+        if (credits.isEmpty()) return null;
+
+        // the funds are checked once, against the total
+        try (PreparedStatement debit = connection.prepareStatement(
+                "UPDATE users SET current_balance = current_balance - ?, version = version + 1 " +
+                        "WHERE id = ? AND current_balance >= ?")) {
+            Money.bind(debit, 1, total);
+            debit.setInt(2, senderId);
+            Money.bind(debit, 3, total);
+            if (debit.executeUpdate() == 0) {
+                TransferResult.Status status = existing.contains(senderId)
+                        ? TransferResult.Status.INSUFFICIENT_FUNDS : TransferResult.Status.FAILED;
+                for (int i = 0; i < statuses.length; i++) {
+                    if (statuses[i] == null) statuses[i] = status;
+                }
+                return null;
+            }
+        }
+
+        try (PreparedStatement credit = connection.prepareStatement(
+                "UPDATE users SET current_balance = current_balance + ?, version = version + 1 WHERE id = ?")) {
+            int batched = 0;
+            for (Map.Entry<Integer, Money> entry : credits.entrySet()) {
+                Money.bind(credit, 1, entry.getValue());
+                credit.setInt(2, entry.getKey());
+                credit.addBatch();
+                if (++batched % BATCH_CHUNK_SIZE == 0) credit.executeBatch();
+            }
+            if (batched % BATCH_CHUNK_SIZE != 0) credit.executeBatch();
+        }
+
+        // one ledger row per line on each side, so both histories show every payment
+        // sent as multi-row inserts of up to BATCH_CHUNK_SIZE rows
+        List<Integer> ledgerLines = new ArrayList<>();
+        for (int i = 0; i < statuses.length; i++) {
+            if (statuses[i] == null) ledgerLines.add(i);
+        }
+        int linesPerInsert = BATCH_CHUNK_SIZE / 2;
+        for (int from = 0; from < ledgerLines.size(); from += linesPerInsert) {
+            List<Integer> chunk = ledgerLines.subList(from, Math.min(from + linesPerInsert, ledgerLines.size()));
+            StringBuilder sql = new StringBuilder(
+                    "INSERT INTO transactions(user_id, transaction_type, transaction_amount, transaction_date) VALUES");
+            for (int i = 0; i < chunk.size() * 2; i++) {
+                sql.append(i == 0 ? " " : ", ").append("(?, ?, ?, NOW())");
+            }
+            try (PreparedStatement insertTransactions = connection.prepareStatement(sql.toString())) {
+                int index = 1;
+                for (int line : chunk) {
+                    Money amount = lines.get(line).getAmount();
+                    insertTransactions.setInt(index++, senderId);
+                    insertTransactions.setString(index++, "Transfer");
+                    Money.bind(insertTransactions, index++, amount.negate());
+                    insertTransactions.setInt(index++, recipientIds[line]);
+                    insertTransactions.setString(index++, "Transfer");
+                    Money.bind(insertTransactions, index++, amount);
+                }
+                insertTransactions.executeUpdate();
+            }
+        }
+
+        // the sender row is locked by this transaction, this is exactly the balance that will be committed
+        try (PreparedStatement queryBalance = connection.prepareStatement(
+                "SELECT current_balance, version FROM users WHERE id = ?")) {
+            queryBalance.setInt(1, senderId);
+            try (ResultSet resultSet = queryBalance.executeQuery()) {
+                resultSet.next();
+                return new AccountCache.Entry(Money.read(resultSet, 1), resultSet.getLong(2));
+            }
+        }
+    }
+
+    // locks the rows of accountIds in ascending id order (the order transfer locks its two rows in, so the
+    // two can't deadlock each other) and returns the ids that exist
+    private static Set<Integer> lockAccounts(Connection connection, SortedSet<Integer> accountIds) throws SQLException {
+        Set<Integer> existing = new HashSet<>();
+        Iterator<Integer> ids = accountIds.iterator();
+        List<Integer> chunk = new ArrayList<>(BATCH_CHUNK_SIZE);
+        while (ids.hasNext()) {
+            chunk.clear();
+            while (ids.hasNext() && chunk.size() < BATCH_CHUNK_SIZE) {
+                chunk.add(ids.next());
+            }
+
+            int placeholders = Math.max(8, Integer.highestOneBit(Math.max(1, chunk.size() - 1)) << 1);
+            StringBuilder sql = new StringBuilder("SELECT id FROM users WHERE id IN (");
+            for (int i = 0; i < placeholders; i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(") ORDER BY id FOR UPDATE");
+
+            try (PreparedStatement lockRows = connection.prepareStatement(sql.toString())) {
+                // pad with the last id, repeating a value in the IN list doesn't change the result
+                for (int i = 0; i < placeholders; i++) {
+                    lockRows.setInt(i + 1, chunk.get(Math.min(i, chunk.size() - 1)));
+                }
+                try (ResultSet resultSet = lockRows.executeQuery()) {
+                    while (resultSet.next()) {
+                        existing.add(resultSet.getInt(1));
+                    }
+                }
+            }
+        }
+        return existing;
+    }
+
+    // reloads the user's committed balance, served from the account cache when it holds a fresh entry
+    // (changes made by other app instances drop the entry when the ChangeFeed sees them, or it expires)
+    // returns null (and leaves the user untouched) if the balance couldn't be read
+    public static Money refreshBalance(User user) {
+        return REFRESH_BALANCE.time(sample -> refreshBalance(user, sample));
+    }
+
+    private static Money refreshBalance(User user, OperationMetrics.Sample sample) {
+        AccountCache.Entry cached = ACCOUNT_CACHE.get(user.getId());
+        if (cached == null) {
+            try (Connection connection = getConnection(sample);
+                 PreparedStatement queryBalance = connection.prepareStatement(BALANCE_QUERY)) {
+
+                queryBalance.setInt(1, user.getId());
+                try (ResultSet resultSet = queryBalance.executeQuery()) {
+                    if (!resultSet.next()) return null;
+                    cached = ACCOUNT_CACHE.put(user.getId(), Money.read(resultSet, 1), resultSet.getLong(2));
+                }
+            } catch (SQLException e) {
+                sample.failed(e);
+                e.printStackTrace();
+                return null;
+            }
+        }
+
+        // never move the user back to an older balance than the one it already holds
+        user.updateBalance(cached.getBalance(), cached.getVersion());
+        return user.getCurrentBalance();
     }
 
     // get all transactions (used for past transactions)
     public static ArrayList<Transaction> getPastTransaction(User user) {
+        return GET_PAST_TRANSACTION.time(sample -> getPastTransaction(user, sample));
+    }
+
+    private static ArrayList<Transaction> getPastTransaction(User user, OperationMetrics.Sample sample) {
         ArrayList<Transaction> pastTransactions = new ArrayList<>();
-        try (Connection connection = getConnection();
+        try (Connection connection = getConnection(sample);
              PreparedStatement selectAllTransaction = connection.prepareStatement(
-                     "SELECT * FROM transactions WHERE user_id = ?")) {
+                     "SELECT " + RowMappers.TRANSACTION_COLUMNS + " FROM transactions WHERE user_id = ? " +
+                             "ORDER BY transaction_date, id")) {
 
             selectAllTransaction.setInt(1, user.getId());
             try (ResultSet resultSet = selectAllTransaction.executeQuery()) {
                 while (resultSet.next()) {
-                    Transaction transaction = new Transaction(
-                            user.getId(),
-                            resultSet.getString("transaction_type"),
-                            resultSet.getBigDecimal("transaction_amount"),
-                            resultSet.getDate("transaction_date")
-                    );
-                    pastTransactions.add(transaction);
+                    pastTransactions.add(RowMappers.TRANSACTION.map(resultSet));
                 }
             }
         } catch (SQLException e) {
+            sample.failed(e);
             e.printStackTrace();
         }
+        sample.rows(pastTransactions.size());
         return pastTransactions;
     }
+
+    // get one page of a user's transactions, newest first
+    // relies on the (user_id, transaction_date, id) index from sql/001_transactions_history_index.sql
+    public static TransactionPage getTransactionPage(User user, TransactionQuery query) {
+        return GET_TRANSACTION_PAGE.time(sample -> getTransactionPage(user, query, sample));
+    }
+
+    private static TransactionPage getTransactionPage(User user, TransactionQuery query,
+                                                      OperationMetrics.Sample sample) {
+        StringBuilder sql = new StringBuilder(
+                "SELECT " + RowMappers.TRANSACTION_COLUMNS + " FROM transactions WHERE user_id = ?");
+        if (query.getTransactionType() != null) sql.append(" AND transaction_type = ?");
+        if (query.getFromDate() != null) sql.append(" AND transaction_date >= ?");
+        if (query.getToDate() != null) sql.append(" AND transaction_date < ?");
+        if (query.getMinAmount() != null) sql.append(" AND transaction_amount >= ?");
+        if (query.getMaxAmount() != null) sql.append(" AND transaction_amount <= ?");
+
+        // keyset condition, continue right after the last row of the previous page
+        long[] cursor = null;
+        if (query.getCursor() != null) {
+            cursor = TransactionPage.decodeCursor(query.getCursor());
+            sql.append(" AND (transaction_date < ? OR (transaction_date = ? AND id < ?))");
+        }
+
+        // fetch one extra row to find out if there is a next page
+        sql.append(" ORDER BY transaction_date DESC, id DESC LIMIT ?");
+
+        ArrayList<Transaction> transactions = new ArrayList<>(query.getPageSize());
+        String nextCursor = null;
+        try (Connection connection = getConnection(sample);
+             PreparedStatement selectPage = connection.prepareStatement(sql.toString())) {
+
+            int index = 1;
+            selectPage.setInt(index++, user.getId());
+            if (query.getTransactionType() != null) selectPage.setString(index++, query.getTransactionType());
+            if (query.getFromDate() != null) selectPage.setTimestamp(index++, query.getFromDate());
+            if (query.getToDate() != null) selectPage.setTimestamp(index++, query.getToDate());
+            if (query.getMinAmount() != null) Money.bind(selectPage, index++, query.getMinAmount());
+            if (query.getMaxAmount() != null) Money.bind(selectPage, index++, query.getMaxAmount());
+            if (cursor != null) {
+                Timestamp cursorDate = new Timestamp(cursor[0]);
+                cursorDate.setNanos((int) cursor[1]);
+                selectPage.setTimestamp(index++, cursorDate);
+                selectPage.setTimestamp(index++, cursorDate);
+                selectPage.setLong(index++, cursor[2]);
+            }
+            selectPage.setInt(index, query.getPageSize() + 1);
+
+            try (ResultSet resultSet = selectPage.executeQuery()) {
+                Timestamp lastDate = null;
+                int lastId = 0;
+                while (resultSet.next()) {
+                    if (transactions.size() == query.getPageSize()) {
+                        // there is at least one more row
+                        nextCursor = TransactionPage.encodeCursor(lastDate, lastId);
+                        break;
+                    }
+                    lastId = resultSet.getInt(1);
+                    lastDate = resultSet.getTimestamp(5);
+                    transactions.add(RowMappers.TRANSACTION.map(resultSet));
+                }
+            }
+        } catch (SQLException e) {
+            sample.failed(e);
+            e.printStackTrace();
+        }
+        sample.rows(transactions.size());
+        return new TransactionPage(transactions, nextCursor);
+    }
+
+    // the highest id of the user's transactions, 0 if there are none, -1 if it couldn't be read
+    // read off the end of the (user_id, id) index
+    public static long getLastTransactionId(User user) {
+        return GET_LAST_TRANSACTION_ID.time(sample -> getLastTransactionId(user, sample));
+    }
+
+    private static long getLastTransactionId(User user, OperationMetrics.Sample sample) {
+        try (Connection connection = getConnection(sample);
+             PreparedStatement queryLastId = connection.prepareStatement(LAST_TRANSACTION_ID_QUERY)) {
+            queryLastId.setInt(1, user.getId());
+            try (ResultSet resultSet = queryLastId.executeQuery()) {
+                resultSet.next();
+                return resultSet.getLong(1);
+            }
+        } catch (SQLException e) {
+            sample.failed(e);
+            e.printStackTrace();
+        }
+        return -1;
+    }
+
+    // the highest id of all transactions, 0 if there are none, -1 if it couldn't be read
+    // read off the end of the primary key
+    public static long getHighWaterMark() {
+        return GET_HIGH_WATER_MARK.time(MyJDBC::getHighWaterMark);
+    }
+
+    private static long getHighWaterMark(OperationMetrics.Sample sample) {
+        try (Connection connection = getConnection(sample);
+             PreparedStatement queryMark = connection.prepareStatement(HIGH_WATER_MARK_QUERY);
+             ResultSet resultSet = queryMark.executeQuery()) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        } catch (SQLException e) {
+            sample.failed(e);
+            e.printStackTrace();
+        }
+        return -1;
+    }
+
+    // the highest transaction id of every user with transactions in (afterId, upToId], a range read of the
+    // primary key. null if they couldn't be read
+    // their cached balances are dropped, the transactions may come from another app instance
+    public static Map<Integer, Long> getChangedAccounts(long afterId, long upToId) {
+        return GET_CHANGED_ACCOUNTS.time(sample -> getChangedAccounts(afterId, upToId, sample));
+    }
+
+    private static Map<Integer, Long> getChangedAccounts(long afterId, long upToId, OperationMetrics.Sample sample) {
+        Map<Integer, Long> changed = new HashMap<>();
+        try (Connection connection = getConnection(sample);
+             PreparedStatement queryChanged = connection.prepareStatement(CHANGED_ACCOUNTS_QUERY)) {
+            queryChanged.setLong(1, afterId);
+            queryChanged.setLong(2, upToId);
+            try (ResultSet resultSet = queryChanged.executeQuery()) {
+                while (resultSet.next()) {
+                    changed.put(resultSet.getInt(1), resultSet.getLong(2));
+                }
+            }
+        } catch (SQLException e) {
+            sample.failed(e);
+            e.printStackTrace();
+            return null;
+        }
+
+        sample.rows(changed.size());
+        for (int userId : changed.keySet()) {
+            ACCOUNT_CACHE.invalidate(userId);
+        }
+        return changed;
+    }
+
+    // up to limit of the user's transactions with an id above afterId, in id order, a range read of the
+    // (user_id, id) index. null if they couldn't be read
+    public static List<Transaction> getTransactionsAfter(User user, long afterId, int limit) {
+        return GET_TRANSACTIONS_AFTER.time(sample -> getTransactionsAfter(user, afterId, limit, sample));
+    }
+
+    private static List<Transaction> getTransactionsAfter(User user, long afterId, int limit,
+                                                          OperationMetrics.Sample sample) {
+        try (Connection connection = getConnection(sample);
+             PreparedStatement selectNewer = connection.prepareStatement(
+                     "SELECT " + RowMappers.TRANSACTION_COLUMNS + " FROM transactions " +
+                             "WHERE user_id = ? AND id > ? ORDER BY id LIMIT ?")) {
+            selectNewer.setInt(1, user.getId());
+            selectNewer.setLong(2, afterId);
+            selectNewer.setInt(3, limit);
+            List<Transaction> transactions = new ArrayList<>();
+            try (ResultSet resultSet = selectNewer.executeQuery()) {
+                while (resultSet.next()) {
+                    transactions.add(RowMappers.TRANSACTION.map(resultSet));
+                }
+            }
+            sample.rows(transactions.size());
+            return transactions;
+        } catch (SQLException e) {
+            sample.failed(e);
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    // the statement of every month from first to last (inclusive), oldest first
+    // months that are over come from the closed month cache, the rest is aggregated by the database in one query
+    // null if they couldn't be read
+    public static List<MonthlyStatement> getMonthlyStatements(User user, YearMonth first, YearMonth last) {
+        return GET_MONTHLY_STATEMENTS.time(sample -> getMonthlyStatements(user, first, last, sample));
+    }
+
+    private static List<MonthlyStatement> getMonthlyStatements(User user, YearMonth first, YearMonth last,
+                                                               OperationMetrics.Sample sample) {
+        List<MonthlyStatement> statements = new ArrayList<>();
+
+        // leading months that are cached need no query, later ones are aggregated together
+        YearMonth month = first;
+        while (!month.isAfter(last)) {
+            MonthlyStatement cached = CLOSED_MONTHS.get(user.getId(), month);
+            if (cached == null) break;
+            statements.add(cached);
+            month = month.plusMonths(1);
+        }
+        if (month.isAfter(last)) return statements;
+
+        try (Connection connection = getConnection(sample)) {
+            Money openingBalance = statements.isEmpty()
+                    ? openingBalance(connection, user.getId(), month)
+                    : statements.get(statements.size() - 1).getClosingBalance();
+            for (MonthlyStatement statement
+                    : LedgerStatements.monthlyStatements(connection, user.getId(), openingBalance, month, last)) {
+                CLOSED_MONTHS.put(user.getId(), statement);
+                statements.add(statement);
+                sample.rows(statement.getTransactionCount());
+            }
+        } catch (SQLException e) {
+            sample.failed(e);
+            e.printStackTrace();
+            return null;
+        }
+        return statements;
+    }
+
+    // every transaction of the month oldest first, each with the balance right after it
+    // null if they couldn't be read
+    public static List<StatementLine> getStatementLines(User user, YearMonth month) {
+        return GET_STATEMENT_LINES.time(sample -> getStatementLines(user, month, sample));
+    }
+
+    private static List<StatementLine> getStatementLines(User user, YearMonth month, OperationMetrics.Sample sample) {
+        try (Connection connection = getConnection(sample)) {
+            List<StatementLine> lines = LedgerStatements.statementLines(connection, user.getId(),
+                    openingBalance(connection, user.getId(), month), month);
+            sample.rows(lines.size());
+            return lines;
+        } catch (SQLException e) {
+            sample.failed(e);
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    // one page of the statement's month with the balance after each line, see LedgerStatements.statementPage
+    // null if it couldn't be read
+    public static List<StatementLine> getStatementPage(User user, MonthlyStatement statement, StatementQuery query) {
+        return GET_STATEMENT_PAGE.time(sample -> getStatementPage(user, statement, query, sample));
+    }
+
+    private static List<StatementLine> getStatementPage(User user, MonthlyStatement statement, StatementQuery query,
+                                                        OperationMetrics.Sample sample) {
+        try (Connection connection = getConnection(sample)) {
+            List<StatementLine> lines = LedgerStatements.statementPage(connection, user.getId(), statement, query);
+            sample.rows(lines.size());
+            return lines;
+        } catch (SQLException e) {
+            sample.failed(e);
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    // the closing balance of the month before when it is cached, otherwise read from the ledger
+    private static Money openingBalance(Connection connection, int userId, YearMonth month) throws SQLException {
+        MonthlyStatement previous = CLOSED_MONTHS.get(userId, month.minusMonths(1));
+        if (previous != null) return previous.getClosingBalance();
+        return LedgerBalances.balanceAt(connection, userId, LedgerStatements.startOf(month));
+    }
+
+    // writes the transactions of user (of every user when null) to file, CSV or JSON Lines depending on the file
+    // name (see TransactionExportWriter), oldest first for one user and in id order for everyone
+    // the rows are streamed from a forward-only result set straight into the file, so memory use doesn't grow
+    // with the number of rows. Returns the number of rows written, -1 if the export failed (the partial file
+    // is deleted)
+    public static long exportTransactions(User user, Path file, ProgressListener progress) {
+        return EXPORT_TRANSACTIONS.time(sample -> exportTransactions(user, file, progress, sample));
+    }
+
+    private static long exportTransactions(User user, Path file, ProgressListener progress,
+                                           OperationMetrics.Sample sample) {
+        String filter = user == null ? "" : " WHERE t.user_id = ?";
+        try (Connection connection = getConnection(sample)) {
+            // counted first so the progress can be shown as a fraction, rows added meanwhile are exported too
+            long total;
+            try (PreparedStatement countRows = connection.prepareStatement(
+                    "SELECT COUNT(*) FROM transactions t" + filter)) {
+                if (user != null) countRows.setInt(1, user.getId());
+                try (ResultSet resultSet = countRows.executeQuery()) {
+                    resultSet.next();
+                    total = resultSet.getLong(1);
+                }
+            }
+            progress.progress(0, total);
+
+            // not the plain prepareStatement(String), a streaming statement mustn't end up in the statement cache
+            try (PreparedStatement selectRows = connection.prepareStatement(
+                    "SELECT t.id, t.user_id, u.username, t.transaction_type, t.transaction_amount, t.transaction_date " +
+                            "FROM transactions t JOIN users u ON u.id = t.user_id" + filter +
+                            (user == null ? " ORDER BY t.id" : " ORDER BY t.transaction_date, t.id"),
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                 TransactionExportWriter writer = TransactionExportWriter.open(file)) {
+
+                selectRows.setFetchSize(EXPORT_FETCH_SIZE);
+                if (user != null) selectRows.setInt(1, user.getId());
+                try (ResultSet resultSet = selectRows.executeQuery()) {
+                    while (resultSet.next()) {
+                        writer.write(resultSet.getLong(1), resultSet.getInt(2), resultSet.getString(3),
+                                resultSet.getString(4), Money.read(resultSet, 5), resultSet.getTimestamp(6));
+
+                        long written = writer.getRowsWritten();
+                        if (written % EXPORT_PROGRESS_ROWS == 0) {
+                            // cancelled from the gui
+                            if (Thread.currentThread().isInterrupted()) {
+                                throw new InterruptedIOException("Export cancelled");
+                            }
+                            progress.progress(written, Math.max(total, written));
+                        }
+                    }
+                }
+                long written = writer.getRowsWritten();
+                sample.rows(written);
+                progress.progress(written, Math.max(total, written));
+                return written;
+            }
+        } catch (SQLException | IOException e) {
+            sample.failed(e);
+            e.printStackTrace();
+        }
+
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return -1;
+    }
+
+    // imports the transactions in a CSV file, resuming an earlier run of the same file where it stopped
+    // a file imported completely before is only imported again with restart (see TransactionImporter)
+    // rows that can't be imported are written to rejectsFile
+    // null if the import failed, run it again to continue after the last committed chunk
+    public static ImportResult importTransactions(Path file, Path rejectsFile, boolean restart,
+                                                  ProgressListener progress) {
+        return IMPORT_TRANSACTIONS.time(sample -> importTransactions(file, rejectsFile, restart, progress, sample));
+    }
+
+    private static ImportResult importTransactions(Path file, Path rejectsFile, boolean restart,
+                                                   ProgressListener progress, OperationMetrics.Sample sample) {
+        try {
+            ImportResult result = IMPORTER.importFile(file, rejectsFile, restart, progress);
+            sample.rows(result.getRowsImported());
+            return result;
+        } catch (SQLException | IOException e) {
+            sample.failed(e);
+            e.printStackTrace();
+        }
+        return null;
+    }
 }
@@ -0,0 +1,113 @@
+package db_objs;
+
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/*
+    AccountStore backed by the MySQL database configured in dbconfig.properties
+ */
+public class MySqlAccountStore implements AccountStore {
+    @Override
+    public User validateLogin(String username, String password) {
+        return MyJDBC.validateLogin(username, password);
+    }
+
+    @Override
+    public boolean register(String username, String password) {
+        return MyJDBC.register(username, password);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> postTransaction(Transaction transaction) {
+        return MyJDBC.postTransaction(transaction);
+    }
+
+    @Override
+    public Money refreshBalance(User user) {
+        return MyJDBC.refreshBalance(user);
+    }
+
+    @Override
+    public Money getBalanceAt(User user, Timestamp at) {
+        return MyJDBC.getBalanceAt(user, at);
+    }
+
+    @Override
+    public TransferResult transfer(User user, String transferredUsername, Money transferAmount) {
+        return MyJDBC.transfer(user, transferredUsername, transferAmount);
+    }
+
+    @Override
+    public BatchTransferResult transferBatch(User user, List<PaymentLine> lines) {
+        return MyJDBC.transferBatch(user, lines);
+    }
+
+    @Override
+    public void warmUp() {
+        MyJDBC.warmUp();
+    }
+
+    @Override
+    public long getPendingPostingCount() {
+        return MyJDBC.getPendingPostingCount();
+    }
+
+    @Override
+    public long getSkippedPostingCount() {
+        return MyJDBC.getSkippedPostingCount();
+    }
+
+    @Override
+    public List<Transaction> getPastTransaction(User user) {
+        return MyJDBC.getPastTransaction(user);
+    }
+
+    @Override
+    public TransactionPage getTransactionPage(User user, TransactionQuery query) {
+        return MyJDBC.getTransactionPage(user, query);
+    }
+
+    @Override
+    public long getLastTransactionId(User user) {
+        return MyJDBC.getLastTransactionId(user);
+    }
+
+    @Override
+    public List<Transaction> getTransactionsAfter(User user, long afterId, int limit) {
+        return MyJDBC.getTransactionsAfter(user, afterId, limit);
+    }
+
+    @Override
+    public long getHighWaterMark() {
+        return MyJDBC.getHighWaterMark();
+    }
+
+    @Override
+    public Map<Integer, Long> getChangedAccounts(long afterId, long upToId) {
+        return MyJDBC.getChangedAccounts(afterId, upToId);
+    }
+
+    @Override
+    public List<MonthlyStatement> getMonthlyStatements(User user, YearMonth first, YearMonth last) {
+        return MyJDBC.getMonthlyStatements(user, first, last);
+    }
+
+    @Override
+    public List<StatementLine> getStatementLines(User user, YearMonth month) {
+        return MyJDBC.getStatementLines(user, month);
+    }
+
+    @Override
+    public List<StatementLine> getStatementPage(User user, MonthlyStatement statement, StatementQuery query) {
+        return MyJDBC.getStatementPage(user, statement, query);
+    }
+
+    @Override
+    public long exportTransactions(User user, Path file, ProgressListener progress) {
+        return MyJDBC.exportTransactions(user, file, progress);
+    }
+}
@@ -0,0 +1,178 @@
+package db_objs;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/*
+    Call count, errors, rows and latency of one database operation.
+    A call is timed with a Sample: start() when the operation begins, acquire time added for every connection
+    borrowed, finish() when it returns. Recording is a handful of uncontended atomic increments, cheap enough
+    to leave on all the time. Besides the totals (read through JMX) every latency also goes into an interval
+    histogram that MetricsFile drains each time it writes a line.
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+    private final String name;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder totalAcquireNanos = new LongAdder();
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LatencyHistogram acquireLatencies = new LatencyHistogram();
+    private final LatencyHistogram intervalLatencies = new LatencyHistogram();
+    private final LongAdder intervalCalls = new LongAdder();
+    private final LongAdder intervalErrors = new LongAdder();
+    private volatile String lastError;
+
+    OperationMetrics(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Sample start() {
+        return new Sample();
+    }
+
+    // runs operation with a new sample, an exception it throws counts as an error
+    public <T> T time(Function<Sample, T> operation) {
+        Sample sample = start();
+        try {
+            return operation.apply(sample);
+        } catch (RuntimeException | Error e) {
+            sample.failed(e);
+            throw e;
+        } finally {
+            sample.finish();
+        }
+    }
+
+    @Override
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getRows() {
+        return rows.sum();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        long count = calls.sum();
+        return count == 0 ? 0 : toMillis(totalNanos.sum()) / count;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return toMillis(latencies.percentileNanos(0.50));
+    }
+
+    @Override
+    public double getP99Millis() {
+        return toMillis(latencies.percentileNanos(0.99));
+    }
+
+    @Override
+    public double getP999Millis() {
+        return toMillis(latencies.percentileNanos(0.999));
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return toMillis(latencies.maxNanos());
+    }
+
+    @Override
+    public double getMeanAcquireMillis() {
+        long count = calls.sum();
+        return count == 0 ? 0 : toMillis(totalAcquireNanos.sum()) / count;
+    }
+
+    @Override
+    public double getP99AcquireMillis() {
+        return toMillis(acquireLatencies.percentileNanos(0.99));
+    }
+
+    @Override
+    public String getLastError() {
+        return lastError;
+    }
+
+    @Override
+    public void reset() {
+        calls.reset();
+        errors.reset();
+        rows.reset();
+        totalNanos.reset();
+        totalAcquireNanos.reset();
+        latencies.reset();
+        acquireLatencies.reset();
+        lastError = null;
+    }
+
+    // "calls=120 errors=0 p50=1.200ms p99=..." for the calls since the previous call, null if there were none
+    // starts a new interval
+    String drainInterval() {
+        long count = intervalCalls.sumThenReset();
+        long errorCount = intervalErrors.sumThenReset();
+        String line = count == 0 ? null : "calls=" + count + " errors=" + errorCount + " " + intervalLatencies.summary();
+        intervalLatencies.reset();
+        return line;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    // timing of one call, used by a single thread
+    public final class Sample {
+        private final long started = System.nanoTime();
+        private long acquireNanos;
+        private long rowCount;
+        private boolean failed;
+
+        private Sample() {
+        }
+
+        void addAcquireNanos(long nanos) {
+            acquireNanos += nanos;
+        }
+
+        public void rows(long count) {
+            rowCount += count;
+        }
+
+        public void failed(Throwable error) {
+            failed = true;
+            lastError = error.getClass().getSimpleName() + ": " + error.getMessage();
+        }
+
+        // records the call, call once when the operation returns
+        public void finish() {
+            long elapsed = System.nanoTime() - started;
+            calls.increment();
+            intervalCalls.increment();
+            totalNanos.add(elapsed);
+            latencies.record(elapsed);
+            intervalLatencies.record(elapsed);
+            if (acquireNanos > 0) {
+                totalAcquireNanos.add(acquireNanos);
+                acquireLatencies.record(acquireNanos);
+            }
+            if (rowCount > 0) rows.add(rowCount);
+            if (failed) {
+                errors.increment();
+                intervalErrors.increment();
+            }
+        }
+    }
+}
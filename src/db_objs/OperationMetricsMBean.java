@@ -0,0 +1,34 @@
+package db_objs;
+
+/*
+    JMX view of one OperationMetrics, published as bankapp:type=Operation,name=<operation>
+    Times are in milliseconds, percentiles cover every call since start or the last reset.
+ */
+public interface OperationMetricsMBean {
+    long getCalls();
+
+    long getErrors();
+
+    // rows read or written
+    long getRows();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP99Millis();
+
+    double getP999Millis();
+
+    double getMaxMillis();
+
+    // time spent waiting for a pooled connection, part of the latencies above
+    double getMeanAcquireMillis();
+
+    double getP99AcquireMillis();
+
+    // message of the most recent error, null if there was none
+    String getLastError();
+
+    void reset();
+}
@@ -0,0 +1,39 @@
+package db_objs;
+
+/*
+    One line of a bulk payment: who gets paid and how much
+ */
+public class PaymentLine {
+    private final String recipientUsername;
+    private final Money amount;
+
+    public PaymentLine(String recipientUsername, Money amount) {
+        this.recipientUsername = recipientUsername;
+        this.amount = amount;
+    }
+
+    // reads a pasted payee line such as "alice,12.50", "alice 12.50" or a tab separated spreadsheet row
+    // throws IllegalArgumentException (NumberFormatException for a bad amount) if the line can't be read
+    public static PaymentLine parse(String line) {
+        String value = line.trim();
+        int separator = -1;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == ';' || Character.isWhitespace(c)) {
+                separator = i;
+                break;
+            }
+        }
+        if (separator <= 0) throw new IllegalArgumentException("Expected a username and an amount: " + line);
+
+        return new PaymentLine(value.substring(0, separator), Money.parse(value.substring(separator + 1)));
+    }
+
+    public String getRecipientUsername() {
+        return recipientUsername;
+    }
+
+    public Money getAmount() {
+        return amount;
+    }
+}
@@ -0,0 +1,119 @@
+package db_objs;
+
+/*
+    Point-in-time snapshot of the connection pool counters
+ */
+public class PoolStats {
+    private final int activeConnections, idleConnections, maxConnections;
+    private final long borrowCount, totalBorrowNanos, maxBorrowNanos;
+    private final long waitCount, totalWaitNanos, maxWaitNanos;
+    private final long timeouts, createdConnections, destroyedConnections, validationFailures;
+    private final long statementCacheHits, statementCacheMisses, statementCacheEvictions;
+
+    public PoolStats(int activeConnections, int idleConnections, int maxConnections,
+                     long borrowCount, long totalBorrowNanos, long maxBorrowNanos,
+                     long waitCount, long totalWaitNanos, long maxWaitNanos,
+                     long timeouts, long createdConnections, long destroyedConnections, long validationFailures,
+                     long statementCacheHits, long statementCacheMisses, long statementCacheEvictions) {
+        this.activeConnections = activeConnections;
+        this.idleConnections = idleConnections;
+        this.maxConnections = maxConnections;
+        this.borrowCount = borrowCount;
+        this.totalBorrowNanos = totalBorrowNanos;
+        this.maxBorrowNanos = maxBorrowNanos;
+        this.waitCount = waitCount;
+        this.totalWaitNanos = totalWaitNanos;
+        this.maxWaitNanos = maxWaitNanos;
+        this.timeouts = timeouts;
+        this.createdConnections = createdConnections;
+        this.destroyedConnections = destroyedConnections;
+        this.validationFailures = validationFailures;
+        this.statementCacheHits = statementCacheHits;
+        this.statementCacheMisses = statementCacheMisses;
+        this.statementCacheEvictions = statementCacheEvictions;
+    }
+
+    public int getActiveConnections() {
+        return activeConnections;
+    }
+
+    public int getIdleConnections() {
+        return idleConnections;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public long getBorrowCount() {
+        return borrowCount;
+    }
+
+    // average time spent inside getConnection(), including validation and opening new connections
+    public double getAverageBorrowMillis() {
+        return borrowCount == 0 ? 0 : totalBorrowNanos / 1_000_000.0 / borrowCount;
+    }
+
+    public double getMaxBorrowMillis() {
+        return maxBorrowNanos / 1_000_000.0;
+    }
+
+    // number of borrows that had to block because the pool was exhausted
+    public long getWaitCount() {
+        return waitCount;
+    }
+
+    // average time blocked for the borrows that had to wait
+    public double getAverageWaitMillis() {
+        return waitCount == 0 ? 0 : totalWaitNanos / 1_000_000.0 / waitCount;
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos / 1_000_000.0;
+    }
+
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    public long getCreatedConnections() {
+        return createdConnections;
+    }
+
+    public long getDestroyedConnections() {
+        return destroyedConnections;
+    }
+
+    public long getValidationFailures() {
+        return validationFailures;
+    }
+
+    public long getStatementCacheHits() {
+        return statementCacheHits;
+    }
+
+    public long getStatementCacheMisses() {
+        return statementCacheMisses;
+    }
+
+    public long getStatementCacheEvictions() {
+        return statementCacheEvictions;
+    }
+
+    public double getStatementCacheHitRatio() {
+        long lookups = statementCacheHits + statementCacheMisses;
+        return lookups == 0 ? 0 : (double) statementCacheHits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PoolStats[active=%d, idle=%d, max=%d, borrows=%d, avgBorrow=%.3fms, maxBorrow=%.3fms, "
+                        + "waits=%d, avgWait=%.3fms, maxWait=%.3fms, timeouts=%d, created=%d, destroyed=%d, "
+                        + "validationFailures=%d, statementCacheHits=%d, statementCacheMisses=%d, "
+                        + "statementCacheEvictions=%d]",
+                activeConnections, idleConnections, maxConnections, borrowCount, getAverageBorrowMillis(),
+                getMaxBorrowMillis(), waitCount, getAverageWaitMillis(), getMaxWaitMillis(), timeouts,
+                createdConnections, destroyedConnections, validationFailures, statementCacheHits,
+                statementCacheMisses, statementCacheEvictions);
+    }
+}
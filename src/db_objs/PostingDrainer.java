@@ -0,0 +1,300 @@
+package db_objs;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Applies the records of a PostingLog to the database in log order, on a single background thread.
+    Runs of consecutive deposits and withdrawals go to the JournalWriter together so they share a commit,
+    transfers are applied one at a time. If the database can't be reached the same records are retried with
+    a growing delay, applying is idempotent so a record that was committed before a failure (or before a
+    crash) isn't applied twice. A record the database refuses for good (bad data such as an amount out of the
+    column's range, a constraint violation) or that fails on this side is not retried: its outcome is stored as
+    FAILED, so a replay skips it too, and whoever waits for it gets the error. A record is marked applied in the
+    log only once it is committed or failed.
+    Records left over by a previous run are queued ahead of anything new.
+ */
+public class PostingDrainer {
+    private static final long MIN_RETRY_DELAY_MILLIS = 100;
+    private static final long MAX_RETRY_DELAY_MILLIS = 30_000;
+
+    // applied_postings rows at or below the applied mark are no longer needed, delete them every so often
+    private static final int PRUNE_INTERVAL = 1_000;
+
+    private final ConnectionPool pool;
+    private final PostingLog log;
+    private final JournalWriter journal;
+    private final TransferApplier transferApplier;
+    private final int maxBatchSize;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread drainer;
+    private volatile boolean running = true;
+    private long lastPruned;
+
+    public PostingDrainer(ConnectionPool pool, PostingLog log, JournalWriter journal, TransferApplier transferApplier,
+                          int maxBatchSize) {
+        this.pool = pool;
+        this.log = log;
+        this.journal = journal;
+        this.transferApplier = transferApplier;
+        this.maxBatchSize = maxBatchSize;
+        this.lastPruned = log.getAppliedSequence();
+
+        // replay what a previous run logged but didn't get to apply
+        for (PostingLog.Record record : log.pending()) {
+            queue.add(new Pending(record));
+        }
+
+        drainer = new Thread(this::run, "posting-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    // logs a deposit or withdrawal and queues it, completes with true once applied, false if the withdrawal was
+    // rejected. Throws IOException if it couldn't be logged
+    public CompletableFuture<Boolean> post(byte kind, int userId, long amountCents) throws IOException {
+        return append(kind, userId, 0, amountCents).posted;
+    }
+
+    // logs a transfer and queues it, completes with the outcome once applied
+    public CompletableFuture<TransferResult> transfer(int senderId, int recipientId, long amountCents) throws IOException {
+        return append(PostingLog.TRANSFER, senderId, recipientId, amountCents).transferred;
+    }
+
+    // appended and queued under the log's lock, so the queue is in sequence order: the applied mark only ever
+    // moves over records that were applied, a lower sequence can't still be waiting behind it
+    private Pending append(byte kind, int userId, int recipientId, long amountCents) throws IOException {
+        synchronized (log) {
+            Pending pending = new Pending(log.append(kind, userId, recipientId, amountCents));
+            queue.add(pending);
+            return pending;
+        }
+    }
+
+    // records queued or being applied
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    public void shutdown() {
+        running = false;
+        drainer.interrupt();
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                batch.add(queue.take());
+                if (batch.get(0).record.getKind() != PostingLog.TRANSFER) {
+                    // take the deposits and withdrawals queued right behind it, stop at the next transfer
+                    while (batch.size() < maxBatchSize && queue.peek() != null
+                            && queue.peek().record.getKind() != PostingLog.TRANSFER) {
+                        batch.add(queue.poll());
+                    }
+                }
+
+                applyWithRetry(batch);
+            } catch (InterruptedException e) {
+                // shutting down, whatever wasn't applied stays in the log for the next start
+                return;
+            } catch (Throwable e) {
+                // never lose the drainer, nobody would apply anything anymore. What broke it isn't tried again
+                e.printStackTrace();
+                for (Pending pending : batch) {
+                    pending.fail(e);
+                }
+            }
+            log.markApplied(batch.get(batch.size() - 1).record.getSequence());
+            pruneAppliedKeys();
+            batch.clear();
+        }
+    }
+
+    private void applyWithRetry(List<Pending> batch) throws InterruptedException {
+        long delay = MIN_RETRY_DELAY_MILLIS;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                apply(batch);
+                return;
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                Throwable error = e instanceof ExecutionException ? e.getCause() : e;
+                if (isPermanent(error)) {
+                    if (batch.size() == 1) {
+                        fail(batch.get(0), error);
+                    } else {
+                        // find the one it was about, the others are applied (or already were) on their own
+                        for (Pending pending : batch) {
+                            applyWithRetry(Collections.singletonList(pending));
+                        }
+                    }
+                    return;
+                }
+                if (attempt == 1) e.printStackTrace();
+                TimeUnit.MILLISECONDS.sleep(delay);
+                delay = Math.min(delay * 2, MAX_RETRY_DELAY_MILLIS);
+            }
+        }
+    }
+
+    // true for errors that applying the same record again can't fix, false for the database being unreachable,
+    // a deadlock, a timeout and the like
+    static boolean isPermanent(Throwable error) {
+        if (error instanceof SQLException) {
+            if (error instanceof SQLTransientException || error instanceof SQLRecoverableException
+                    || error instanceof SQLNonTransientConnectionException) {
+                return false;
+            }
+            if (error instanceof SQLDataException || error instanceof SQLIntegrityConstraintViolationException) {
+                return true;
+            }
+            // data exceptions (e.g. out of range) and integrity constraint violations by SQLState class
+            String state = ((SQLException) error).getSQLState();
+            return state != null && (state.startsWith("22") || state.startsWith("23"));
+        }
+        // a bug or bad record on this side, e.g. an unknown kind or an overflowing amount
+        return error instanceof RuntimeException;
+    }
+
+    // stores the record's outcome as FAILED, retried until the database takes it, then hands the error on
+    private void fail(Pending pending, Throwable error) throws InterruptedException {
+        System.err.println("Posting " + pending.record.getSequence() + " can't be applied and is dropped:");
+        error.printStackTrace();
+
+        long delay = MIN_RETRY_DELAY_MILLIS;
+        while (true) {
+            try {
+                recordFailure(pending.record);
+                break;
+            } catch (SQLException e) {
+                TimeUnit.MILLISECONDS.sleep(delay);
+                delay = Math.min(delay * 2, MAX_RETRY_DELAY_MILLIS);
+            }
+        }
+        pending.fail(error);
+    }
+
+    private void recordFailure(PostingLog.Record record) throws SQLException {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement insertOutcome = connection.prepareStatement(
+                     "INSERT INTO applied_postings(log_id, log_sequence, outcome) VALUES(?, ?, ?)")) {
+            insertOutcome.setLong(1, log.getLogId());
+            insertOutcome.setLong(2, record.getSequence());
+            insertOutcome.setString(3, JournalWriter.FAILED);
+            insertOutcome.executeUpdate();
+        } catch (SQLIntegrityConstraintViolationException e) {
+            // an outcome was stored already, e.g. FAILED by an earlier attempt
+        }
+    }
+
+    private void apply(List<Pending> batch) throws SQLException, ExecutionException, InterruptedException {
+        if (batch.get(0).record.getKind() == PostingLog.TRANSFER) {
+            Pending pending = batch.get(0);
+            pending.transferred.complete(transferApplier.apply(pending.record));
+            return;
+        }
+
+        List<CompletableFuture<Boolean>> results = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            PostingLog.Record record = pending.record;
+            Transaction transaction = new Transaction(record.getUserId(), typeName(record.getKind()),
+                    Money.ofCents(record.getAmountCents()), null);
+            results.add(journal.submit(transaction, log.getLogId(), record.getSequence()));
+        }
+
+        // wait for all of them first, a retry resubmits the whole run and the applied ones are skipped
+        ExecutionException failure = null;
+        for (CompletableFuture<Boolean> result : results) {
+            try {
+                result.get();
+            } catch (ExecutionException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) throw failure;
+
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).posted.complete(results.get(i).join());
+        }
+    }
+
+    private void pruneAppliedKeys() {
+        long applied = log.getAppliedSequence();
+        if (applied - lastPruned < PRUNE_INTERVAL) return;
+
+        try (Connection connection = pool.getConnection();
+             PreparedStatement deleteApplied = connection.prepareStatement(
+                     "DELETE FROM applied_postings WHERE log_id = ? AND log_sequence <= ?")) {
+            deleteApplied.setLong(1, log.getLogId());
+            deleteApplied.setLong(2, applied);
+            deleteApplied.executeUpdate();
+            lastPruned = applied;
+        } catch (SQLException e) {
+            // harmless, try again after the next batch
+            e.printStackTrace();
+        }
+    }
+
+    static String typeName(byte kind) {
+        switch (kind) {
+            case PostingLog.DEPOSIT:
+                return "Deposit";
+            case PostingLog.WITHDRAW:
+                return "Withdraw";
+            case PostingLog.TRANSFER:
+                return "Transfer";
+            default:
+                throw new IllegalArgumentException("Unknown posting kind " + kind);
+        }
+    }
+
+    static byte kind(String transactionType) {
+        switch (transactionType) {
+            case "Deposit":
+                return PostingLog.DEPOSIT;
+            case "Withdraw":
+                return PostingLog.WITHDRAW;
+            case "Transfer":
+                return PostingLog.TRANSFER;
+            default:
+                throw new IllegalArgumentException("Unknown transaction type " + transactionType);
+        }
+    }
+
+    // applies one logged transfer at most once
+    public interface TransferApplier {
+        TransferResult apply(PostingLog.Record record) throws SQLException;
+    }
+
+    private static final class Pending {
+        private final PostingLog.Record record;
+        private final CompletableFuture<Boolean> posted = new CompletableFuture<>();
+        private final CompletableFuture<TransferResult> transferred = new CompletableFuture<>();
+
+        private Pending(PostingLog.Record record) {
+            this.record = record;
+        }
+
+        private void fail(Throwable error) {
+            posted.completeExceptionally(error);
+            transferred.completeExceptionally(error);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package db_objs;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/*
+    Local write-ahead log of deposits, withdrawals and transfers, kept in a memory-mapped file.
+    A posting is appended (and forced to disk) before it is sent to the database, so it survives the database
+    being unreachable or the app being closed before the posting was applied. The file is a small header
+    followed by a ring of fixed-size, checksummed records. The header holds a random log id and the sequence
+    number of the last record known to be applied, records up to that mark can be overwritten.
+    Opening the log scans the ring, the valid records past the applied mark are returned by pending() for
+    replay. Records with a bad checksum (a write torn by a crash, or a page that never reached the disk when
+    forceOnAppend is off) can't be replayed, they are counted by getSkippedRecordCount so the loss shows.
+    Only one process can have a log file open at a time.
+ */
+public class PostingLog implements AutoCloseable {
+    public static final byte DEPOSIT = 1;
+    public static final byte WITHDRAW = 2;
+    public static final byte TRANSFER = 3;
+
+    private static final int MAGIC = 0x42414E4B;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_SIZE = 64;
+
+    // header layout
+    private static final int HEADER_MAGIC = 0, HEADER_VERSION = 4, HEADER_CAPACITY = 8, HEADER_LOG_ID = 16,
+            HEADER_APPLIED = 24;
+
+    // record layout, the checksum covers everything before it
+    private static final int SEQUENCE = 0, KIND = 8, USER_ID = 12, RECIPIENT_ID = 16, AMOUNT = 20,
+            CREATED = 28, CHECKSUM = 36, CHECKSUMMED_BYTES = 36;
+
+    private final FileChannel channel;
+    private final FileLock lock;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final long logId;
+    private final boolean forceOnAppend;
+    private final List<Record> recovered;
+    private int skippedRecords;
+    private long nextSequence;
+    private long appliedSequence;
+
+    public PostingLog(Path path, int capacity, boolean forceOnAppend) throws IOException {
+        this.forceOnAppend = forceOnAppend;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            lock = channel.tryLock();
+            if (lock == null) throw new IOException("Posting log " + path + " is in use by another process");
+
+            boolean created = true;
+            if (channel.size() >= HEADER_SIZE) {
+                // an existing log keeps the capacity it was created with
+                MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+                header.order(ByteOrder.LITTLE_ENDIAN);
+                int magic = header.getInt(HEADER_MAGIC);
+                if (magic != 0) {
+                    if (magic != MAGIC || header.getInt(HEADER_VERSION) != FORMAT_VERSION) {
+                        throw new IOException(path + " is not a posting log");
+                    }
+                    capacity = header.getInt(HEADER_CAPACITY);
+                    created = false;
+                }
+            }
+            this.capacity = capacity;
+
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (created) {
+                long newLogId = new SecureRandom().nextLong() & Long.MAX_VALUE;
+                buffer.putInt(HEADER_VERSION, FORMAT_VERSION);
+                buffer.putInt(HEADER_CAPACITY, capacity);
+                buffer.putLong(HEADER_LOG_ID, newLogId);
+                buffer.putLong(HEADER_APPLIED, 0);
+                // magic last, a header torn before this point is recreated on the next start
+                buffer.putInt(HEADER_MAGIC, MAGIC);
+                buffer.force();
+            }
+            logId = buffer.getLong(HEADER_LOG_ID);
+            appliedSequence = buffer.getLong(HEADER_APPLIED);
+
+            recovered = scan();
+            nextSequence = Math.max(appliedSequence,
+                    recovered.isEmpty() ? 0 : recovered.get(recovered.size() - 1).sequence) + 1;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // random id of this log file, together with a record's sequence it identifies the posting in the database
+    public long getLogId() {
+        return logId;
+    }
+
+    // records that were logged by a previous run but not marked applied, oldest first
+    public List<Record> pending() {
+        return recovered;
+    }
+
+    // written slots the opening scan found with a bad checksum, each one may have been a posting that is lost
+    public int getSkippedRecordCount() {
+        return skippedRecords;
+    }
+
+    // appends a record and, if configured, forces it to disk before returning
+    // throws IOException when every slot still holds a record that hasn't been applied yet
+    public synchronized Record append(byte kind, int userId, int recipientId, long amountCents) throws IOException {
+        if (nextSequence - appliedSequence > capacity) {
+            throw new IOException("Posting log is full, " + capacity + " postings are waiting for the database");
+        }
+
+        Record record = new Record(nextSequence, kind, userId, recipientId, amountCents, System.currentTimeMillis());
+        int offset = offset(record.sequence);
+        buffer.putLong(offset + SEQUENCE, record.sequence);
+        buffer.put(offset + KIND, kind);
+        buffer.putInt(offset + USER_ID, userId);
+        buffer.putInt(offset + RECIPIENT_ID, recipientId);
+        buffer.putLong(offset + AMOUNT, amountCents);
+        buffer.putLong(offset + CREATED, record.createdMillis);
+        buffer.putInt(offset + CHECKSUM, checksum(offset));
+        if (forceOnAppend) buffer.force(offset, RECORD_SIZE);
+
+        nextSequence++;
+        return record;
+    }
+
+    // everything up to and including sequence has been applied, its slots may be reused
+    public synchronized void markApplied(long sequence) {
+        if (sequence <= appliedSequence) return;
+        appliedSequence = sequence;
+        buffer.putLong(HEADER_APPLIED, sequence);
+        if (forceOnAppend) buffer.force(HEADER_APPLIED, Long.BYTES);
+    }
+
+    public synchronized long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    // records appended but not yet marked applied
+    public synchronized long getPendingCount() {
+        return nextSequence - 1 - appliedSequence;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            buffer.force();
+        }
+        lock.release();
+        channel.close();
+    }
+
+    private List<Record> scan() {
+        List<Record> records = new ArrayList<>();
+        for (int slot = 0; slot < capacity; slot++) {
+            int offset = HEADER_SIZE + slot * RECORD_SIZE;
+            if (buffer.getInt(offset + CHECKSUM) != checksum(offset)) {
+                // a slot that was never written has nothing to lose, a torn one can't tell what it held
+                if (!isBlank(offset)) skippedRecords++;
+                continue;
+            }
+            long sequence = buffer.getLong(offset + SEQUENCE);
+            if (sequence <= appliedSequence || offset(sequence) != offset) continue;
+
+            records.add(new Record(sequence, buffer.get(offset + KIND), buffer.getInt(offset + USER_ID),
+                    buffer.getInt(offset + RECIPIENT_ID), buffer.getLong(offset + AMOUNT), buffer.getLong(offset + CREATED)));
+        }
+        records.sort(Comparator.comparingLong(Record::getSequence));
+        return records;
+    }
+
+    private boolean isBlank(int offset) {
+        for (int i = 0; i < CHECKSUM + Integer.BYTES; i += Integer.BYTES) {
+            if (buffer.getInt(offset + i) != 0) return false;
+        }
+        return true;
+    }
+
+    private int offset(long sequence) {
+        return HEADER_SIZE + (int) (sequence % capacity) * RECORD_SIZE;
+    }
+
+    private int checksum(int offset) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.duplicate().position(offset).limit(offset + CHECKSUMMED_BYTES));
+        return (int) crc.getValue();
+    }
+
+    public static final class Record {
+        private final long sequence;
+        private final byte kind;
+        private final int userId, recipientId;
+        private final long amountCents;
+        private final long createdMillis;
+
+        private Record(long sequence, byte kind, int userId, int recipientId, long amountCents, long createdMillis) {
+            this.sequence = sequence;
+            this.kind = kind;
+            this.userId = userId;
+            this.recipientId = recipientId;
+            this.amountCents = amountCents;
+            this.createdMillis = createdMillis;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public byte getKind() {
+            return kind;
+        }
+
+        public int getUserId() {
+            return userId;
+        }
+
+        // only set for transfers
+        public int getRecipientId() {
+            return recipientId;
+        }
+
+        // signed for deposits and withdrawals, the positive transferred amount for transfers
+        public long getAmountCents() {
+            return amountCents;
+        }
+
+        public long getCreatedMillis() {
+            return createdMillis;
+        }
+    }
+}
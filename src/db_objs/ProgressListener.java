@@ -0,0 +1,13 @@
+package db_objs;
+
+/*
+    Told how far a long running operation (an export, an import) has got, called on the thread doing the work
+ */
+@FunctionalInterface
+public interface ProgressListener {
+    ProgressListener NONE = (done, total) -> {
+    };
+
+    // total is -1 when it isn't known
+    void progress(long done, long total);
+}
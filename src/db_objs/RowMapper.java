@@ -0,0 +1,12 @@
+package db_objs;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/*
+    Turns the current row of a result set into an object, reading the columns by position
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+    T map(ResultSet resultSet) throws SQLException;
+}
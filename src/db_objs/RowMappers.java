@@ -0,0 +1,32 @@
+package db_objs;
+
+import java.sql.Date;
+
+/*
+    Column lists and the matching index-based mappers for the users and transactions tables.
+    A query must select exactly the listed columns in this order for its mapper to work.
+ */
+public final class RowMappers {
+    public static final String USER_COLUMNS = "id, username, current_balance, version";
+
+    public static final RowMapper<User> USER = resultSet -> new User(
+            resultSet.getInt(1),
+            resultSet.getString(2),
+            Money.read(resultSet, 3),
+            resultSet.getLong(4)
+    );
+
+    public static final String TRANSACTION_COLUMNS =
+            "id, user_id, transaction_type, transaction_amount, transaction_date";
+
+    public static final RowMapper<Transaction> TRANSACTION = resultSet -> new Transaction(
+            resultSet.getInt(1),
+            resultSet.getInt(2),
+            resultSet.getString(3),
+            Money.read(resultSet, 4),
+            new Date(resultSet.getTimestamp(5).getTime())
+    );
+
+    private RowMappers() {
+    }
+}
@@ -0,0 +1,127 @@
+package db_objs;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/*
+    The history one logged in session has already read: the statements of the last months and the newest page
+    of the current month, together with the highest transaction id among them (the high-water mark).
+    Reading it again only asks the store for the user's transactions above the mark, one range read of the
+    (user_id, id) index, and adds them to the current month and the front of the page. Everything is read again
+    when they can't just be added: a new month has started, one is dated before the newest line held (e.g. an
+    import), a page or more came in, or the closing balance no longer matches the committed balance (a
+    transaction with a lower id committed after the mark was read).
+    Every method blocks, call them off the event dispatch thread. Invalidate it when the session ends.
+ */
+public class SessionHistory {
+    private final BankService service;
+    private final User user;
+    private final int months;
+    private final int pageSize;
+
+    // oldest first, the last one is the current month
+    private List<MonthlyStatement> statements;
+
+    // the first page of the current month, newest first
+    private List<StatementLine> newestLines;
+    private long highWaterMark;
+
+    // months - how many months up to the current one are held, pageSize - lines of the current month held
+    public SessionHistory(BankService service, User user, int months, int pageSize) {
+        this.service = service;
+        this.user = user;
+        this.months = months;
+        this.pageSize = pageSize;
+    }
+
+    // the statements of the last months oldest first, the current month last, null if they couldn't be read
+    public synchronized List<MonthlyStatement> getMonthlyStatements() {
+        if (statements != null && !catchUp()) invalidate();
+        if (statements == null && !reload()) return null;
+        return new ArrayList<>(statements);
+    }
+
+    // the newest lines of the month if statement is the current month as last returned by getMonthlyStatements,
+    // newest first, null otherwise
+    public synchronized List<StatementLine> getNewestLines(MonthlyStatement statement) {
+        if (statements == null || statement != statements.get(statements.size() - 1)) return null;
+        return new ArrayList<>(newestLines);
+    }
+
+    // forgets everything, the next read loads it all again
+    public synchronized void invalidate() {
+        statements = null;
+        newestLines = null;
+        highWaterMark = 0;
+    }
+
+    private boolean reload() {
+        // the mark is read first: anything committed after it is counted by the statements and then fetched
+        // once more by the next catch up, which the balance check notices
+        long mark = service.getLastTransactionId(user);
+        if (mark < 0) return false;
+
+        YearMonth currentMonth = YearMonth.now();
+        List<MonthlyStatement> loaded = service.getMonthlyStatements(user, currentMonth.minusMonths(months - 1),
+                currentMonth);
+        if (loaded == null || loaded.isEmpty()) return false;
+
+        List<StatementLine> lines = service.getStatementPage(user, loaded.get(loaded.size() - 1),
+                new StatementQuery().setPageSize(pageSize));
+        if (lines == null) return false;
+
+        statements = loaded;
+        newestLines = lines;
+        highWaterMark = mark;
+        return true;
+    }
+
+    // adds the transactions above the mark, false if the history has to be read again
+    private boolean catchUp() {
+        MonthlyStatement current = statements.get(statements.size() - 1);
+        if (!current.getMonth().equals(YearMonth.now())) return false;
+
+        // a whole page of them is cheaper to read as a page
+        List<Transaction> newer = service.getTransactionsAfter(user, highWaterMark, pageSize);
+        if (newer == null || newer.size() == pageSize) return false;
+
+        Date newestDate = newestLines.isEmpty() ? null : newestLines.get(0).getTransaction().getTransactionDate();
+        for (Transaction transaction : newer) {
+            Date date = transaction.getTransactionDate();
+            if (!monthOf(date).equals(current.getMonth())) return false;
+            if (newestDate != null && date.before(newestDate)) return false;
+            newestDate = date;
+            current = current.plus(transaction);
+        }
+
+        // the ledger and the balance move together, a mismatch means something was missed or counted twice
+        Money committed = service.refreshBalance(user);
+        if (committed == null || !committed.equals(current.getClosingBalance())) return false;
+        if (newer.isEmpty()) return true;
+
+        // the newest lines go in front, their balances counted back from the closing balance
+        List<StatementLine> lines = new ArrayList<>(pageSize);
+        Money balance = current.getClosingBalance();
+        for (int i = newer.size() - 1; i >= 0; i--) {
+            lines.add(new StatementLine(newer.get(i), balance));
+            balance = balance.minus(newer.get(i).getTransactionAmount());
+        }
+        for (int i = 0; i < newestLines.size() && lines.size() < pageSize; i++) {
+            lines.add(newestLines.get(i));
+        }
+
+        statements.set(statements.size() - 1, current);
+        newestLines = lines;
+        highWaterMark = newer.get(newer.size() - 1).getId();
+        return true;
+    }
+
+    private static YearMonth monthOf(Date date) {
+        return YearMonth.from(LocalDateTime.ofInstant(Instant.ofEpochMilli(date.getTime()), ZoneId.systemDefault()));
+    }
+}
@@ -0,0 +1,205 @@
+package db_objs;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    Background job that keeps the ledger tails behind LedgerBalances short.
+    Every intervalMillis it looks at the accounts with ledger entries added since its previous pass and writes
+    a new balance_snapshots row for each one whose tail has reached minTail entries. A pass only snapshots
+    entries up to the highest ledger id seen by an earlier pass, and only once every transaction that was
+    writing when that mark was read has ended (information_schema.innodb_trx): an id is handed out when the row
+    is inserted but becomes visible when it commits, so until then a lower id than the mark can still show up and
+    a snapshot past it would leave it out for good. A long import or batch just delays the snapshots. Without
+    the PROCESS privilege innodb_trx can't be read and no snapshots are taken, balances are still correct.
+    How far the ledger has been looked at is kept in snapshot_marks, so a restart continues from there.
+    Several app instances may run a compactor against the same database, a duplicate snapshot is ignored.
+ */
+public class SnapshotCompactor {
+    private final ConnectionPool pool;
+    private final long intervalMillis;
+    private final int minTail;
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(VirtualThreads.daemonThreadFactory("snapshot-compactor"));
+    private final AtomicLong snapshotsTaken = new AtomicLong();
+
+    // ledger ids up to scannedUpTo have been considered (-1 until read from snapshot_marks), previousMark is the
+    // highest id an earlier pass saw, at previousMarkReadAt by the database clock
+    private long scannedUpTo = -1, previousMark = -1;
+    private Timestamp previousMarkReadAt;
+    private boolean warnedNoTransactionList;
+
+    public SnapshotCompactor(ConnectionPool pool, long intervalMillis, int minTail) {
+        this.pool = pool;
+        this.intervalMillis = intervalMillis;
+        this.minTail = Math.max(1, minTail);
+    }
+
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::runOnce, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    public long getSnapshotsTaken() {
+        return snapshotsTaken.get();
+    }
+
+    // one compaction pass, normally called by the scheduler
+    public void runOnce() {
+        try (Connection connection = pool.getConnection()) {
+            if (scannedUpTo < 0) scannedUpTo = readScannedUpTo(connection);
+
+            long mark;
+            Timestamp markReadAt;
+            try (PreparedStatement queryMark = connection.prepareStatement(
+                    "SELECT COALESCE(MAX(id), 0), CURRENT_TIMESTAMP FROM transactions");
+                 ResultSet resultSet = queryMark.executeQuery()) {
+                resultSet.next();
+                mark = resultSet.getLong(1);
+                markReadAt = resultSet.getTimestamp(2);
+            }
+
+            // the previous mark is kept until its writers are done, the ids below it can't change after that
+            boolean settled = previousMark <= scannedUpTo || writersFinished(connection, previousMarkReadAt);
+            if (previousMark > scannedUpTo && settled) {
+                for (int userId : accountsWithEntries(connection, scannedUpTo, previousMark)) {
+                    snapshot(connection, userId, previousMark);
+                }
+                scannedUpTo = previousMark;
+                saveScannedUpTo(connection, scannedUpTo);
+            }
+            if (settled) {
+                previousMark = mark;
+                previousMarkReadAt = markReadAt;
+            }
+        } catch (SQLException e) {
+            // try again on the next pass
+            e.printStackTrace();
+        }
+    }
+
+    // true once no transaction is open that had started, and written rows, by markReadAt. Every ledger id up to
+    // the mark read then was handed out by such a transaction, so they are all committed or rolled back
+    // trx_started has whole seconds, a transaction started in the same second counts too
+    private boolean writersFinished(Connection connection, Timestamp markReadAt) {
+        try (PreparedStatement queryWriters = connection.prepareStatement(
+                "SELECT COUNT(*) FROM information_schema.innodb_trx WHERE trx_started <= ? AND trx_rows_modified > 0")) {
+            queryWriters.setTimestamp(1, markReadAt);
+            try (ResultSet resultSet = queryWriters.executeQuery()) {
+                resultSet.next();
+                return resultSet.getLong(1) == 0;
+            }
+        } catch (SQLException e) {
+            if (!warnedNoTransactionList) {
+                warnedNoTransactionList = true;
+                System.err.println("No balance snapshots are taken, information_schema.innodb_trx can't be read "
+                        + "(grant the PROCESS privilege): " + e.getMessage());
+            }
+            return false;
+        }
+    }
+
+    private long readScannedUpTo(Connection connection) throws SQLException {
+        try (PreparedStatement queryMark = connection.prepareStatement(
+                "SELECT scanned_up_to FROM snapshot_marks WHERE id = 1");
+             ResultSet resultSet = queryMark.executeQuery()) {
+            return resultSet.next() ? resultSet.getLong(1) : 0;
+        }
+    }
+
+    // another instance may have got further already, the mark never moves back
+    private void saveScannedUpTo(Connection connection, long scannedUpTo) throws SQLException {
+        try (PreparedStatement updateMark = connection.prepareStatement(
+                "UPDATE snapshot_marks SET scanned_up_to = GREATEST(scanned_up_to, ?) WHERE id = 1")) {
+            updateMark.setLong(1, scannedUpTo);
+            if (updateMark.executeUpdate() > 0) return;
+        }
+        try (PreparedStatement insertMark = connection.prepareStatement(
+                "INSERT INTO snapshot_marks(id, scanned_up_to) VALUES(1, ?)")) {
+            insertMark.setLong(1, scannedUpTo);
+            insertMark.executeUpdate();
+        } catch (SQLIntegrityConstraintViolationException e) {
+            // inserted by another instance in the meantime, its mark is as good
+        }
+    }
+
+    private List<Integer> accountsWithEntries(Connection connection, long fromExclusive, long toInclusive) throws SQLException {
+        List<Integer> userIds = new ArrayList<>();
+        try (PreparedStatement queryAccounts = connection.prepareStatement(
+                "SELECT DISTINCT user_id FROM transactions WHERE id > ? AND id <= ?")) {
+            queryAccounts.setLong(1, fromExclusive);
+            queryAccounts.setLong(2, toInclusive);
+            try (ResultSet resultSet = queryAccounts.executeQuery()) {
+                while (resultSet.next()) {
+                    userIds.add(resultSet.getInt(1));
+                }
+            }
+        }
+        return userIds;
+    }
+
+    private void snapshot(Connection connection, int userId, long upTo) throws SQLException {
+        Money balance = Money.ZERO;
+        long lastTransactionId = 0;
+        Timestamp lastTransactionDate = null;
+        try (PreparedStatement querySnapshot = connection.prepareStatement(
+                "SELECT balance, last_transaction_id, last_transaction_date FROM balance_snapshots " +
+                        "WHERE user_id = ? ORDER BY last_transaction_id DESC LIMIT 1")) {
+            querySnapshot.setInt(1, userId);
+            try (ResultSet resultSet = querySnapshot.executeQuery()) {
+                if (resultSet.next()) {
+                    balance = Money.read(resultSet, 1);
+                    lastTransactionId = resultSet.getLong(2);
+                    lastTransactionDate = resultSet.getTimestamp(3);
+                }
+            }
+        }
+        if (lastTransactionId >= upTo) return;
+
+        Money tailSum;
+        long tailLastId;
+        Timestamp tailLastDate;
+        try (PreparedStatement queryTail = connection.prepareStatement(
+                "SELECT COUNT(*), COALESCE(SUM(transaction_amount), 0), MAX(id), MAX(transaction_date) " +
+                        "FROM transactions WHERE user_id = ? AND id > ? AND id <= ?")) {
+            queryTail.setInt(1, userId);
+            queryTail.setLong(2, lastTransactionId);
+            queryTail.setLong(3, upTo);
+            try (ResultSet resultSet = queryTail.executeQuery()) {
+                resultSet.next();
+                if (resultSet.getInt(1) < minTail) return;
+                tailSum = Money.read(resultSet, 2);
+                tailLastId = resultSet.getLong(3);
+                tailLastDate = resultSet.getTimestamp(4);
+            }
+        }
+
+        try (PreparedStatement insertSnapshot = connection.prepareStatement(
+                "INSERT INTO balance_snapshots(user_id, last_transaction_id, last_transaction_date, balance) " +
+                        "VALUES(?, ?, ?, ?)")) {
+            insertSnapshot.setInt(1, userId);
+            insertSnapshot.setLong(2, tailLastId);
+            // the latest date of every entry the snapshot covers, imported entries can be dated before older ones
+            insertSnapshot.setTimestamp(3, lastTransactionDate != null && lastTransactionDate.after(tailLastDate)
+                    ? lastTransactionDate : tailLastDate);
+            Money.bind(insertSnapshot, 4, balance.plus(tailSum));
+            insertSnapshot.executeUpdate();
+            snapshotsTaken.incrementAndGet();
+        } catch (SQLIntegrityConstraintViolationException e) {
+            // another instance took the same snapshot
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package db_objs;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/*
+    Does the slow part of starting the app in the background while the login window is shown, instead of in the
+    first login: loading dbconfig.properties, registering the JDBC driver, opening the store (connecting the pool,
+    loading the username index, replaying the write-ahead log) and warming it up (AccountStore.warmUp). Steps that
+    don't depend on each other run at the same time, each on its own thread, and more can be added with run.
+    A login that comes before the store is ready just waits for it, class initialization does the ordering.
+    Every step is timed. The time from the start of the JVM to the first successful login is published with
+    the step times as bankapp:type=Startup, so are the postings a previous run left in the log to apply and the
+    ones it left corrupt.
+ */
+public final class StartupOrchestrator implements StartupOrchestratorMBean {
+    private static final StartupOrchestrator INSTANCE = new StartupOrchestrator();
+
+    // platform threads, the steps mostly wait on class initialization which would pin a virtual thread
+    private final ExecutorService steps = Executors.newCachedThreadPool(VirtualThreads.daemonThreadFactory("startup"));
+
+    // name=millis of every finished step, in the order they finished
+    private final List<String> stepTimes = new ArrayList<>();
+    private final AtomicLong firstLoginMillis = new AtomicLong(-1);
+    private volatile long readyMillis = -1;
+    private volatile long pendingPostingsAtStart = -1;
+    private volatile long skippedPostingsAtStart = -1;
+    private CompletableFuture<AccountStore> store;
+
+    private StartupOrchestrator() {
+    }
+
+    public static StartupOrchestrator get() {
+        return INSTANCE;
+    }
+
+    // starts the steps (the first call only), completes with the store once it has been opened and warmed up
+    public synchronized CompletableFuture<AccountStore> start() {
+        if (store != null) return store;
+
+        CompletableFuture<Void> config = run("config", () -> {
+            DbConfig.getString("store.engine");
+            Metrics.publish(this, "bankapp:type=Startup");
+        });
+        CompletableFuture<Void> driver = run("driver", StartupOrchestrator::registerDriver);
+        CompletableFuture<AccountStore> opened = config.thenCompose(ignored -> supply("store", AccountStores::get))
+                .thenApply(openedStore -> {
+                    pendingPostingsAtStart = openedStore.getPendingPostingCount();
+                    skippedPostingsAtStart = openedStore.getSkippedPostingCount();
+                    return openedStore;
+                });
+        CompletableFuture<Void> warmedUp = opened.thenCompose(openedStore -> run("warmUp", openedStore::warmUp));
+
+        store = CompletableFuture.allOf(driver, warmedUp).thenApply(ignored -> {
+            readyMillis = uptimeMillis();
+            return opened.join();
+        });
+        return store;
+    }
+
+    // runs step in the background, timed under name
+    public CompletableFuture<Void> run(String name, Runnable step) {
+        return supply(name, () -> {
+            step.run();
+            return null;
+        });
+    }
+
+    // called after every successful login, the first one is recorded
+    public void loginSucceeded() {
+        firstLoginMillis.compareAndSet(-1, uptimeMillis());
+    }
+
+    @Override
+    public long getTimeToFirstLoginMillis() {
+        return firstLoginMillis.get();
+    }
+
+    @Override
+    public long getTimeToReadyMillis() {
+        return readyMillis;
+    }
+
+    @Override
+    public long getPendingPostingsAtStart() {
+        return pendingPostingsAtStart;
+    }
+
+    @Override
+    public long getSkippedPostingsAtStart() {
+        return skippedPostingsAtStart;
+    }
+
+    @Override
+    public String getStepTimes() {
+        synchronized (stepTimes) {
+            return String.join(" ", stepTimes);
+        }
+    }
+
+    private <T> CompletableFuture<T> supply(String name, Supplier<T> step) {
+        return CompletableFuture.supplyAsync(() -> {
+            long started = System.nanoTime();
+            try {
+                return step.get();
+            } finally {
+                long millis = (System.nanoTime() - started) / 1_000_000;
+                synchronized (stepTimes) {
+                    stepTimes.add(name + "=" + millis + "ms");
+                }
+            }
+        }, steps);
+    }
+
+    // loads Connector/J, which registers itself with DriverManager, before the pool asks for a connection
+    private static void registerDriver() {
+        try {
+            Class.forName("com.mysql.cj.jdbc.Driver");
+        } catch (ClassNotFoundException e) {
+            // not on the class path, only the in-memory store can be used
+        }
+    }
+
+    private static long uptimeMillis() {
+        return ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+}
@@ -0,0 +1,23 @@
+package db_objs;
+
+/*
+    JMX view of the StartupOrchestrator, published as bankapp:type=Startup
+ */
+public interface StartupOrchestratorMBean {
+    // milliseconds from the start of the JVM to the first successful login, -1 until a user has logged in
+    long getTimeToFirstLoginMillis();
+
+    // milliseconds from the start of the JVM until every startup step had finished, -1 while one is running
+    long getTimeToReadyMillis();
+
+    // postings a previous run had logged but not applied when the store was opened, applied in the background
+    // -1 until the store is open
+    long getPendingPostingsAtStart();
+
+    // records of the log found corrupt when the store was opened (torn by a crash), each may be a lost posting
+    // -1 until the store is open, anything above 0 needs checking against the account's transactions
+    long getSkippedPostingsAtStart();
+
+    // how long each startup step took, e.g. "config=12ms store=480ms ..." in the order they finished
+    String getStepTimes();
+}
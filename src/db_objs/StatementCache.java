@@ -0,0 +1,130 @@
+package db_objs;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    Least recently used cache of prepared statements for one physical connection.
+    Statements handed out are proxies, closing them only clears their parameters and makes them available to
+    the next prepareStatement call with the same SQL. Settings other than the parameters (fetch size, timeouts)
+    stay on the statement. Only used by the thread currently holding the connection.
+ */
+class StatementCache {
+    private final Connection physical;
+    private final int maxSize;
+    private final LinkedHashMap<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+
+    // shared by all the caches of a pool
+    private final AtomicLong hits, misses, evictions;
+
+    StatementCache(Connection physical, int maxSize, AtomicLong hits, AtomicLong misses, AtomicLong evictions) {
+        this.physical = physical;
+        this.maxSize = maxSize;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+    }
+
+    PreparedStatement prepare(String sql, Connection owner) throws SQLException {
+        CachedStatement cached = statements.get(sql);
+        if (cached != null && !cached.inUse) {
+            hits.incrementAndGet();
+            return cached.lease(owner);
+        }
+        misses.incrementAndGet();
+
+        // same SQL prepared twice without closing the first one, hand out a plain statement
+        if (cached != null) return physical.prepareStatement(sql);
+
+        cached = new CachedStatement(physical.prepareStatement(sql));
+        statements.put(sql, cached);
+        evictOverflow();
+        return cached.lease(owner);
+    }
+
+    private void evictOverflow() {
+        Iterator<Map.Entry<String, CachedStatement>> iterator = statements.entrySet().iterator();
+        while (statements.size() > maxSize && iterator.hasNext()) {
+            CachedStatement eldest = iterator.next().getValue();
+            if (eldest.inUse) continue;
+            iterator.remove();
+            evictions.incrementAndGet();
+            try {
+                eldest.statement.close();
+            } catch (SQLException e) {
+                // the statement is gone either way
+            }
+        }
+    }
+
+    private static final class CachedStatement {
+        private final PreparedStatement statement;
+        private boolean inUse;
+
+        private CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        private PreparedStatement lease(Connection owner) {
+            inUse = true;
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class},
+                    new LeaseHandler(this, owner));
+        }
+    }
+
+    private static final class LeaseHandler implements InvocationHandler {
+        private final CachedStatement cached;
+        private final Connection owner;
+        private boolean closed;
+
+        private LeaseHandler(CachedStatement cached, Connection owner) {
+            this.cached = cached;
+            this.owner = owner;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        try {
+                            cached.statement.clearParameters();
+                            cached.statement.clearBatch();
+                        } finally {
+                            cached.inUse = false;
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || cached.statement.isClosed();
+                case "getConnection":
+                    return owner;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Cached" + cached.statement;
+                default:
+                    if (closed) throw new SQLException("Statement has already been closed");
+                    try {
+                        return method.invoke(cached.statement, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+}
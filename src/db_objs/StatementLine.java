@@ -0,0 +1,37 @@
+package db_objs;
+
+import java.sql.Timestamp;
+
+/*
+    One transaction of a monthly statement together with the account balance right after it
+ */
+public class StatementLine {
+    private final Transaction transaction;
+    private final Money balanceAfter;
+
+    // the transaction date as stored, the transaction's own date drops anything finer than milliseconds
+    // which a statement page continuing after this line must not
+    private final Timestamp storedDate;
+
+    public StatementLine(Transaction transaction, Money balanceAfter) {
+        this(transaction, balanceAfter, null);
+    }
+
+    StatementLine(Transaction transaction, Money balanceAfter, Timestamp storedDate) {
+        this.transaction = transaction;
+        this.balanceAfter = balanceAfter;
+        this.storedDate = storedDate;
+    }
+
+    public Transaction getTransaction() {
+        return transaction;
+    }
+
+    public Money getBalanceAfter() {
+        return balanceAfter;
+    }
+
+    Timestamp getStoredDate() {
+        return storedDate != null ? storedDate : new Timestamp(transaction.getTransactionDate().getTime());
+    }
+}
@@ -0,0 +1,70 @@
+package db_objs;
+
+/*
+    Order and page position for AccountStore.getStatementPage.
+    The next page continues right after the line passed to setAfter (the last line of the previous page in the
+    same order), which is as cheap as the first page. Without it offset rows are skipped, which the database
+    has to count through (from the nearer end of the month in date order), so use it to jump into the middle of a
+    long month only.
+ */
+public class StatementQuery {
+    public enum Order {
+        NEWEST_FIRST,
+        OLDEST_FIRST,
+        // by signed amount, withdrawals and outgoing transfers are negative
+        LARGEST_FIRST,
+        SMALLEST_FIRST;
+
+        // true for the orders of the (user_id, transaction_date, id) index
+        public boolean isByDate() {
+            return this == NEWEST_FIRST || this == OLDEST_FIRST;
+        }
+    }
+
+    private int pageSize = TransactionQuery.DEFAULT_PAGE_SIZE;
+    private Order order = Order.NEWEST_FIRST;
+    private int offset;
+    private StatementLine after;
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public StatementQuery setPageSize(int pageSize) {
+        if (pageSize < 1 || pageSize > TransactionQuery.MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("pageSize must be between 1 and " + TransactionQuery.MAX_PAGE_SIZE);
+        }
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    public Order getOrder() {
+        return order;
+    }
+
+    public StatementQuery setOrder(Order order) {
+        this.order = order;
+        return this;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    // lines of the month to skip, ignored when after is set
+    public StatementQuery setOffset(int offset) {
+        if (offset < 0) throw new IllegalArgumentException("offset must not be negative");
+        this.offset = offset;
+        return this;
+    }
+
+    public StatementLine getAfter() {
+        return after;
+    }
+
+    // the last line of the previous page in the same order
+    public StatementQuery setAfter(StatementLine after) {
+        this.after = after;
+        return this;
+    }
+}
@@ -1,25 +1,35 @@
 package db_objs;
 
 
-import java.math.BigDecimal;
 import java.sql.Date;
 
 /*
     Transaction entity used to store transaction data
  */
 public class Transaction {
+    private final int id;
     private final int userId;
     private final String transactionType;
-    private final BigDecimal transactionAmount;
+    private final Money transactionAmount;
     private final Date transactionDate;
 
-    public Transaction(int userId, String transactionType, BigDecimal transactionAmount, Date transactionDate){
+    public Transaction(int userId, String transactionType, Money transactionAmount, Date transactionDate){
+        // id is assigned by the database once the transaction has been inserted
+        this(0, userId, transactionType, transactionAmount, transactionDate);
+    }
+
+    public Transaction(int id, int userId, String transactionType, Money transactionAmount, Date transactionDate){
+        this.id = id;
         this.userId = userId;
         this.transactionType = transactionType;
         this.transactionAmount = transactionAmount;
         this.transactionDate = transactionDate;
     }
 
+    public int getId() {
+        return id;
+    }
+
     public int getUserId() {
         return userId;
     }
@@ -28,7 +38,7 @@ public class Transaction {
         return transactionType;
     }
 
-    public BigDecimal getTransactionAmount() {
+    public Money getTransactionAmount() {
         return transactionAmount;
     }
 
@@ -0,0 +1,36 @@
+package db_objs;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Exports the transactions of every user from the command line, e.g. for an audit:
+        java -cp app/target/bankapp-0.0.1-SNAPSHOT-all.jar db_objs.TransactionExportTool transactions.csv.gz
+    The format follows the file name, see TransactionExportWriter. Single users export from the history view.
+ */
+public final class TransactionExportTool {
+    private TransactionExportTool() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.err.println("Usage: TransactionExportTool <file.csv | file.jsonl>[.gz]");
+            System.exit(2);
+        }
+
+        Path file = Paths.get(args[0]);
+        long started = System.nanoTime();
+        long rows = BankService.get().exportTransactions(null, file,
+                (done, total) -> System.err.print("\r" + done + (total >= 0 ? " / " + total : "") + " rows"));
+        System.err.println();
+
+        if (rows < 0) {
+            System.err.println("Export failed");
+            System.exit(1);
+        }
+        long seconds = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started);
+        System.out.println("Exported " + rows + " transactions to " + file + " in " + seconds + "s");
+        System.exit(0);
+    }
+}
@@ -0,0 +1,143 @@
+package db_objs;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.format.DateTimeFormatter;
+import java.util.zip.GZIPOutputStream;
+
+/*
+    Writes exported transactions one row at a time to a CSV or JSON Lines file, nothing is kept in memory
+    besides the output buffer. The format comes from the file name: .csv or .jsonl, with .gz appended the file
+    is gzip compressed. CSV files start with a header row naming the columns.
+ */
+public class TransactionExportWriter implements Closeable {
+    public enum Format {
+        CSV,
+        JSONL
+    }
+
+    private static final String[] COLUMNS = {"id", "user_id", "username", "transaction_type", "transaction_amount",
+            "transaction_date"};
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Format format;
+    private final BufferedWriter writer;
+    private long rowsWritten;
+
+    private TransactionExportWriter(Format format, OutputStream out) throws IOException {
+        this.format = format;
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        if (format == Format.CSV) {
+            writer.write(String.join(",", COLUMNS));
+            writer.newLine();
+        }
+    }
+
+    // creates (or replaces) the file, throws IllegalArgumentException for a name without a known extension
+    public static TransactionExportWriter open(Path file) throws IOException {
+        String name = file.getFileName().toString().toLowerCase();
+        boolean gzip = name.endsWith(".gz");
+        if (gzip) name = name.substring(0, name.length() - 3);
+
+        Format format;
+        if (name.endsWith(".csv")) {
+            format = Format.CSV;
+        } else if (name.endsWith(".jsonl")) {
+            format = Format.JSONL;
+        } else {
+            throw new IllegalArgumentException("Export file must end in .csv, .jsonl, .csv.gz or .jsonl.gz: " + file);
+        }
+
+        OutputStream out = Files.newOutputStream(file);
+        try {
+            if (gzip) out = new GZIPOutputStream(out, BUFFER_SIZE);
+            return new TransactionExportWriter(format, out);
+        } catch (IOException e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public void write(long id, int userId, String username, String transactionType, Money amount,
+                      Timestamp transactionDate) throws IOException {
+        String date = DATE_FORMAT.format(transactionDate.toLocalDateTime());
+        if (format == Format.CSV) {
+            writer.write(Long.toString(id));
+            writer.write(',');
+            writer.write(Integer.toString(userId));
+            writer.write(',');
+            writeCsvField(username);
+            writer.write(',');
+            writeCsvField(transactionType);
+            writer.write(',');
+            writer.write(amount.toString());
+            writer.write(',');
+            writer.write(date);
+        } else {
+            writer.write("{\"id\":");
+            writer.write(Long.toString(id));
+            writer.write(",\"user_id\":");
+            writer.write(Integer.toString(userId));
+            writer.write(",\"username\":");
+            writeJsonString(username);
+            writer.write(",\"transaction_type\":");
+            writeJsonString(transactionType);
+            // amounts are written as strings so no reader turns them into floating point
+            writer.write(",\"transaction_amount\":\"");
+            writer.write(amount.toString());
+            writer.write("\",\"transaction_date\":\"");
+            writer.write(date);
+            writer.write("\"}");
+        }
+        writer.newLine();
+        rowsWritten++;
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // also finishes the gzip stream
+        writer.close();
+    }
+
+    private void writeCsvField(String value) throws IOException {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    private void writeJsonString(String value) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                writer.write('\\');
+                writer.write(c);
+            } else if (c < 0x20) {
+                writer.write(String.format("\\u%04x", (int) c));
+            } else {
+                writer.write(c);
+            }
+        }
+        writer.write('"');
+    }
+}
@@ -0,0 +1,49 @@
+package db_objs;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Imports transactions from a CSV file on the command line, e.g. when migrating accounts from another system:
+        java -cp app/target/bankapp-0.0.1-SNAPSHOT-all.jar db_objs.TransactionImportTool [--restart] legacy.csv [rejects.csv]
+    Running it again after an interruption continues where it stopped. A file that was imported completely is
+    refused, --restart imports it again from the start. See TransactionImporter for the format.
+ */
+public final class TransactionImportTool {
+    private TransactionImportTool() {
+    }
+
+    public static void main(String[] args) {
+        boolean restart = args.length > 0 && args[0].equals("--restart");
+        int first = restart ? 1 : 0;
+        if (args.length - first < 1 || args.length - first > 2) {
+            System.err.println("Usage: TransactionImportTool [--restart] <file.csv> [rejects.csv]");
+            System.exit(2);
+        }
+
+        Path file = Paths.get(args[first]);
+        Path rejectsFile = Paths.get(args.length - first > 1 ? args[first + 1] : args[first] + ".rejects.csv");
+        long started = System.nanoTime();
+        ImportResult result = MyJDBC.importTransactions(file, rejectsFile, restart,
+                (done, total) -> System.err.print("\r" + (total > 0 ? done * 100 / total : 0) + "%"));
+        System.err.println();
+
+        if (result == null) {
+            System.err.println("Import failed, run it again to continue after the last committed chunk");
+            System.exit(1);
+        }
+        if (result.isAlreadyImported()) {
+            System.err.println("This file was imported before (" + result.getRowsImported() + " transactions, "
+                    + result.getRowsRejected() + " rejected), use --restart to import it again");
+            System.exit(1);
+        }
+        if (result.getLinesResumedFrom() > 0) {
+            System.out.println("Resumed after line " + result.getLinesResumedFrom());
+        }
+        long seconds = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started);
+        System.out.println("Imported " + result.getRowsImported() + " transactions in " + seconds + "s, "
+                + result.getRowsRejected() + " rejected" + (result.getRowsRejected() > 0 ? " (see " + rejectsFile + ")" : ""));
+        System.exit(0);
+    }
+}
@@ -0,0 +1,493 @@
+package db_objs;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/*
+    Bulk import of transactions from a CSV file of (username, type, amount, date) rows, e.g. when migrating
+    accounts from another system.
+    The file is read as a stream, chunkSize rows at a time. For each chunk the usernames are resolved with a
+    few IN queries, the rows are inserted with multi-row INSERTs and the balance of every account it touches
+    is updated once, all in one commit together with the import's checkpoint row (sql/007_import_checkpoints.sql).
+    A run that gets interrupted therefore resumes right after the last committed chunk and never imports a row
+    twice. Imports are keyed by the SHA-256 of the file's content, so another file with the same name is a new
+    import, and the checkpoint is marked complete at the end: importing the same content again is refused unless
+    restart is asked for. Rows that can't be imported are written to the rejects file with the reason, nothing is rejected
+    after the fact so that file is written once the chunk has committed.
+    A first line naming a username column is read as a header (so exports can be imported), otherwise the
+    columns are username, type, amount, date. Amounts are signed like the ledger, a positive withdrawal is
+    taken to mean money going out. Dates are yyyy-MM-dd HH:mm:ss or yyyy-MM-dd.
+ */
+public class TransactionImporter {
+    // rows per INSERT statement, the last statement of a chunk takes the rest
+    private static final int ROWS_PER_INSERT = 500;
+
+    // usernames per IN list, padded to a power of two so only a few distinct statements are prepared
+    private static final int USERNAMES_PER_QUERY = 512;
+
+    private final ConnectionPool pool;
+    private final AccountCache accountCache;
+    private final ClosedMonthCache closedMonths;
+    private final int chunkSize;
+
+    public TransactionImporter(ConnectionPool pool, AccountCache accountCache, ClosedMonthCache closedMonths,
+                               int chunkSize) {
+        if (chunkSize < 1) throw new IllegalArgumentException("chunkSize must be at least 1");
+        this.pool = pool;
+        this.accountCache = accountCache;
+        this.closedMonths = closedMonths;
+        this.chunkSize = chunkSize;
+    }
+
+    // imports file, continuing an earlier run of the same file (same content) where it stopped
+    // a file that was imported completely before is left alone and reported as such, unless restart is true
+    // restart imports it again from the first line
+    // rejected rows are appended to rejectsFile, progress is reported in bytes of the file read
+    public ImportResult importFile(Path file, Path rejectsFile, boolean restart, ProgressListener progress)
+            throws IOException, SQLException {
+        long fileSize = Files.size(file);
+        String importKey = importKey(file);
+        String fileName = fileName(file);
+
+        long linesDone = 0, rowsImported = 0, rowsRejected = 0;
+        try (Connection connection = pool.getConnection()) {
+            long[] checkpoint = readCheckpoint(connection, importKey);
+            if (checkpoint[3] != 0 && !restart) {
+                return new ImportResult(checkpoint[1], checkpoint[2], checkpoint[0], true);
+            }
+            if (restart) {
+                deleteCheckpoint(connection, importKey);
+            } else {
+                linesDone = checkpoint[0];
+                rowsImported = checkpoint[1];
+                rowsRejected = checkpoint[2];
+            }
+        }
+        long resumedFrom = linesDone;
+
+        CountingInputStream in = new CountingInputStream(Files.newInputStream(file));
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+             BufferedWriter rejects = resumedFrom > 0
+                     ? Files.newBufferedWriter(rejectsFile, StandardCharsets.UTF_8,
+                     StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+                     : Files.newBufferedWriter(rejectsFile, StandardCharsets.UTF_8)) {
+
+            // the header decides which column is which, also when resuming past it
+            long lineNumber = 0;
+            String line = reader.readLine();
+            int[] columns = {0, 1, 2, 3};
+            if (line != null) {
+                int[] header = headerColumns(parseCsvLine(line));
+                if (header != null) {
+                    columns = header;
+                    lineNumber++;
+                    line = reader.readLine();
+                }
+            }
+
+            // skip what an earlier run committed
+            while (line != null && lineNumber < linesDone) {
+                lineNumber++;
+                line = reader.readLine();
+            }
+
+            List<ImportRow> chunk = new ArrayList<>(chunkSize);
+            List<String> chunkRejects = new ArrayList<>();
+            while (line != null) {
+                chunk.clear();
+                chunkRejects.clear();
+                while (line != null && chunk.size() < chunkSize) {
+                    lineNumber++;
+                    if (!line.isBlank()) {
+                        ImportRow row = new ImportRow(lineNumber, line);
+                        String reason = row.parse(columns);
+                        if (reason == null) {
+                            chunk.add(row);
+                        } else {
+                            chunkRejects.add(reject(row, reason));
+                        }
+                    }
+                    line = reader.readLine();
+                }
+
+                int imported = importChunk(importKey, fileName, chunk, chunkRejects, lineNumber,
+                        rowsImported, rowsRejected);
+                rowsImported += imported;
+                rowsRejected += chunkRejects.size();
+
+                // only once the chunk is committed, a chunk that is imported again mustn't reject twice
+                for (String rejected : chunkRejects) {
+                    rejects.write(rejected);
+                    rejects.newLine();
+                }
+                rejects.flush();
+                progress.progress(Math.min(in.getCount(), fileSize), fileSize);
+            }
+        }
+
+        // after the last chunk, a run that stops before this just finds nothing left to import next time
+        try (Connection connection = pool.getConnection()) {
+            completeCheckpoint(connection, importKey, fileName);
+        }
+        progress.progress(fileSize, fileSize);
+        return new ImportResult(rowsImported, rowsRejected, resumedFrom, false);
+    }
+
+    // inserts the rows in one commit, rows with unknown usernames are moved to rejects
+    // returns the number of rows inserted
+    private int importChunk(String importKey, String fileName, List<ImportRow> chunk, List<String> rejects,
+                            long linesDone, long rowsImportedBefore, long rowsRejectedBefore) throws SQLException {
+        Map<Integer, Long> balanceChanges = new TreeMap<>();
+        int inserted = 0;
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                Map<String, Integer> userIds = resolveUsernames(connection, chunk);
+                List<ImportRow> rows = new ArrayList<>(chunk.size());
+                for (ImportRow row : chunk) {
+                    Integer userId = userIds.get(row.username);
+                    if (userId == null) {
+                        rejects.add(reject(row, "unknown user"));
+                        continue;
+                    }
+                    row.userId = userId;
+                    rows.add(row);
+                    balanceChanges.merge(userId, row.amount.getCents(), Long::sum);
+                }
+
+                for (int from = 0; from < rows.size(); from += ROWS_PER_INSERT) {
+                    insertRows(connection, rows.subList(from, Math.min(rows.size(), from + ROWS_PER_INSERT)));
+                }
+                inserted = rows.size();
+
+                // one update per account and chunk, in id order like every other statement that locks users rows
+                if (!balanceChanges.isEmpty()) {
+                    try (PreparedStatement updateBalance = connection.prepareStatement(
+                            "UPDATE users SET current_balance = current_balance + ?, version = version + 1 WHERE id = ?")) {
+                        for (Map.Entry<Integer, Long> change : balanceChanges.entrySet()) {
+                            Money.bind(updateBalance, 1, Money.ofCents(change.getValue()));
+                            updateBalance.setInt(2, change.getKey());
+                            updateBalance.addBatch();
+                        }
+                        updateBalance.executeBatch();
+                    }
+                }
+
+                writeCheckpoint(connection, importKey, fileName, linesDone, rowsImportedBefore + inserted,
+                        rowsRejectedBefore + rejects.size());
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+
+        // the balances changed and the rows may be dated in months that are already closed
+        for (int userId : balanceChanges.keySet()) {
+            accountCache.invalidate(userId);
+        }
+        closedMonths.invalidate(balanceChanges.keySet());
+        return inserted;
+    }
+
+    private Map<String, Integer> resolveUsernames(Connection connection, List<ImportRow> rows) throws SQLException {
+        Set<String> usernames = new LinkedHashSet<>();
+        for (ImportRow row : rows) {
+            usernames.add(row.username);
+        }
+
+        Map<String, Integer> userIds = new HashMap<>();
+        Iterator<String> names = usernames.iterator();
+        List<String> batch = new ArrayList<>(USERNAMES_PER_QUERY);
+        while (names.hasNext()) {
+            batch.clear();
+            while (names.hasNext() && batch.size() < USERNAMES_PER_QUERY) {
+                batch.add(names.next());
+            }
+
+            int placeholders = Math.max(8, Integer.highestOneBit(Math.max(1, batch.size() - 1)) << 1);
+            StringBuilder sql = new StringBuilder("SELECT id, username FROM users WHERE username IN (");
+            for (int i = 0; i < placeholders; i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(")");
+
+            try (PreparedStatement queryIds = connection.prepareStatement(sql.toString())) {
+                // pad with the last username, repeating a value in the IN list doesn't change the result
+                for (int i = 0; i < placeholders; i++) {
+                    queryIds.setString(i + 1, batch.get(Math.min(i, batch.size() - 1)));
+                }
+                try (ResultSet resultSet = queryIds.executeQuery()) {
+                    while (resultSet.next()) {
+                        userIds.put(resultSet.getString(2), resultSet.getInt(1));
+                    }
+                }
+            }
+        }
+        return userIds;
+    }
+
+    private static void insertRows(Connection connection, List<ImportRow> rows) throws SQLException {
+        StringBuilder sql = new StringBuilder(
+                "INSERT INTO transactions(user_id, transaction_type, transaction_amount, transaction_date) VALUES");
+        for (int i = 0; i < rows.size(); i++) {
+            sql.append(i == 0 ? " " : ", ").append("(?, ?, ?, ?)");
+        }
+        try (PreparedStatement insertTransactions = connection.prepareStatement(sql.toString())) {
+            int index = 1;
+            for (ImportRow row : rows) {
+                insertTransactions.setInt(index++, row.userId);
+                insertTransactions.setString(index++, row.type);
+                Money.bind(insertTransactions, index++, row.amount);
+                insertTransactions.setTimestamp(index++, row.date);
+            }
+            insertTransactions.executeUpdate();
+        }
+    }
+
+    // {linesDone, rowsImported, rowsRejected, completed (1 or 0)}, all 0 for an import that hasn't started
+    private static long[] readCheckpoint(Connection connection, String importKey) throws SQLException {
+        try (PreparedStatement queryCheckpoint = connection.prepareStatement(
+                "SELECT lines_done, rows_imported, rows_rejected, completed_at FROM import_checkpoints " +
+                        "WHERE import_key = ?")) {
+            queryCheckpoint.setString(1, importKey);
+            try (ResultSet resultSet = queryCheckpoint.executeQuery()) {
+                if (!resultSet.next()) return new long[4];
+                return new long[]{resultSet.getLong(1), resultSet.getLong(2), resultSet.getLong(3),
+                        resultSet.getTimestamp(4) != null ? 1 : 0};
+            }
+        }
+    }
+
+    private static void writeCheckpoint(Connection connection, String importKey, String fileName, long linesDone,
+                                        long rowsImported, long rowsRejected) throws SQLException {
+        try (PreparedStatement upsertCheckpoint = connection.prepareStatement(
+                "INSERT INTO import_checkpoints(import_key, file_name, lines_done, rows_imported, rows_rejected) " +
+                        "VALUES(?, ?, ?, ?, ?) " +
+                        "ON DUPLICATE KEY UPDATE file_name = VALUES(file_name), lines_done = VALUES(lines_done), " +
+                        "rows_imported = VALUES(rows_imported), rows_rejected = VALUES(rows_rejected)")) {
+            upsertCheckpoint.setString(1, importKey);
+            upsertCheckpoint.setString(2, fileName);
+            upsertCheckpoint.setLong(3, linesDone);
+            upsertCheckpoint.setLong(4, rowsImported);
+            upsertCheckpoint.setLong(5, rowsRejected);
+            upsertCheckpoint.executeUpdate();
+        }
+    }
+
+    // also writes a checkpoint for a file without any lines, so it counts as imported too
+    private static void completeCheckpoint(Connection connection, String importKey, String fileName)
+            throws SQLException {
+        try (PreparedStatement upsertCheckpoint = connection.prepareStatement(
+                "INSERT INTO import_checkpoints(import_key, file_name, lines_done, rows_imported, rows_rejected, " +
+                        "completed_at) VALUES(?, ?, 0, 0, 0, NOW()) " +
+                        "ON DUPLICATE KEY UPDATE completed_at = VALUES(completed_at)")) {
+            upsertCheckpoint.setString(1, importKey);
+            upsertCheckpoint.setString(2, fileName);
+            upsertCheckpoint.executeUpdate();
+        }
+    }
+
+    private static void deleteCheckpoint(Connection connection, String importKey) throws SQLException {
+        try (PreparedStatement deleteCheckpoint = connection.prepareStatement(
+                "DELETE FROM import_checkpoints WHERE import_key = ?")) {
+            deleteCheckpoint.setString(1, importKey);
+            deleteCheckpoint.executeUpdate();
+        }
+    }
+
+    // SHA-256 of the content, a file that is changed afterwards counts as a new import whatever its name and size
+    private static String importKey(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[1 << 16];
+            for (int read; (read = in.read(buffer)) > 0; ) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return "sha256:" + HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static String fileName(Path file) {
+        String name = file.getFileName().toString();
+        return name.length() <= 255 ? name : name.substring(name.length() - 255);
+    }
+
+    // column indexes of {username, type, amount, date} if the line is a header, null otherwise
+    private static int[] headerColumns(List<String> fields) {
+        int[] columns = {-1, -1, -1, -1};
+        for (int i = 0; i < fields.size(); i++) {
+            switch (fields.get(i).trim().toLowerCase()) {
+                case "username":
+                    columns[0] = i;
+                    break;
+                case "type":
+                case "transaction_type":
+                    columns[1] = i;
+                    break;
+                case "amount":
+                case "transaction_amount":
+                    columns[2] = i;
+                    break;
+                case "date":
+                case "transaction_date":
+                    columns[3] = i;
+                    break;
+            }
+        }
+        if (columns[0] < 0) return null;
+        for (int column : columns) {
+            if (column < 0) throw new IllegalArgumentException("Header needs username, type, amount and date columns");
+        }
+        return columns;
+    }
+
+    // splits a CSV line, fields may be quoted with "" standing for a quote inside a quoted field
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static String reject(ImportRow row, String reason) {
+        return row.lineNumber + ",\"" + reason + "\"," + row.line;
+    }
+
+    // one data line of the file
+    private static final class ImportRow {
+        private final long lineNumber;
+        private final String line;
+        private String username, type;
+        private Money amount;
+        private Timestamp date;
+        private int userId;
+
+        private ImportRow(long lineNumber, String line) {
+            this.lineNumber = lineNumber;
+            this.line = line;
+        }
+
+        // null if the row is fine, otherwise why it is rejected
+        private String parse(int[] columns) {
+            List<String> fields = parseCsvLine(line);
+            for (int column : columns) {
+                if (column >= fields.size()) return "missing columns";
+            }
+
+            username = fields.get(columns[0]).trim();
+            if (username.isEmpty()) return "missing username";
+
+            String typeField = fields.get(columns[1]).trim();
+            if (typeField.equalsIgnoreCase("Deposit")) {
+                type = "Deposit";
+            } else if (typeField.equalsIgnoreCase("Withdraw")) {
+                type = "Withdraw";
+            } else if (typeField.equalsIgnoreCase("Transfer")) {
+                type = "Transfer";
+            } else {
+                return "unknown type";
+            }
+
+            try {
+                amount = Money.parse(fields.get(columns[2]));
+            } catch (NumberFormatException | ArithmeticException e) {
+                return "invalid amount";
+            }
+            if (type.equals("Withdraw") && amount.signum() > 0) amount = amount.negate();
+            if (amount.signum() == 0 || (type.equals("Deposit") && amount.isNegative())) return "invalid amount";
+
+            String dateField = fields.get(columns[3]).trim();
+            try {
+                date = Timestamp.valueOf(dateField.length() == 10
+                        ? LocalDate.parse(dateField).atStartOfDay()
+                        : LocalDateTime.parse(dateField.replace(' ', 'T')));
+            } catch (DateTimeParseException e) {
+                return "invalid date";
+            }
+            return null;
+        }
+    }
+
+    // counts the bytes read so the progress can be reported against the file size
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) count += read;
+            return read;
+        }
+
+        private long getCount() {
+            return count;
+        }
+    }
+}
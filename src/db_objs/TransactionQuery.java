@@ -0,0 +1,90 @@
+package db_objs;
+
+import java.sql.Timestamp;
+
+/*
+    Filters and page position for MyJDBC.getTransactionPage.
+    Every filter is optional, leave it null to not filter on it. Pages are ordered newest first and
+    cursor is the continuation token of the previous page (null for the first page).
+ */
+public class TransactionQuery {
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 500;
+
+    private int pageSize = DEFAULT_PAGE_SIZE;
+    private String cursor;
+    private String transactionType;
+    private Timestamp fromDate, toDate;
+    private Money minAmount, maxAmount;
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public TransactionQuery setPageSize(int pageSize) {
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("pageSize must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public TransactionQuery setCursor(String cursor) {
+        this.cursor = cursor;
+        return this;
+    }
+
+    public String getTransactionType() {
+        return transactionType;
+    }
+
+    // Deposit, Withdraw or Transfer
+    public TransactionQuery setTransactionType(String transactionType) {
+        this.transactionType = transactionType;
+        return this;
+    }
+
+    public Timestamp getFromDate() {
+        return fromDate;
+    }
+
+    // inclusive
+    public TransactionQuery setFromDate(Timestamp fromDate) {
+        this.fromDate = fromDate;
+        return this;
+    }
+
+    public Timestamp getToDate() {
+        return toDate;
+    }
+
+    // exclusive
+    public TransactionQuery setToDate(Timestamp toDate) {
+        this.toDate = toDate;
+        return this;
+    }
+
+    public Money getMinAmount() {
+        return minAmount;
+    }
+
+    // inclusive, compared against the signed amount (withdrawals and outgoing transfers are negative)
+    public TransactionQuery setMinAmount(Money minAmount) {
+        this.minAmount = minAmount;
+        return this;
+    }
+
+    public Money getMaxAmount() {
+        return maxAmount;
+    }
+
+    // inclusive, compared against the signed amount (withdrawals and outgoing transfers are negative)
+    public TransactionQuery setMaxAmount(Money maxAmount) {
+        this.maxAmount = maxAmount;
+        return this;
+    }
+}
@@ -0,0 +1,77 @@
+package db_objs;
+
+/*
+    Outcome of MyJDBC.transfer, on success it carries the balances of both accounts as they were committed
+    so callers don't need to read them again
+ */
+public class TransferResult {
+    public enum Status {
+        SUCCESS,
+        RECIPIENT_NOT_FOUND,
+        SAME_ACCOUNT,
+        INSUFFICIENT_FUNDS,
+        // the sender had enough by the balance the session showed, but the committed balance has less
+        CONFLICT,
+        INVALID_AMOUNT,
+        // logged locally but not applied by the database yet, it will be applied in the background
+        PENDING,
+        FAILED
+    }
+
+    private final Status status;
+    private final int recipientId;
+    private final Money senderBalance, recipientBalance;
+    private final long senderVersion, recipientVersion;
+
+    private TransferResult(Status status, int recipientId, Money senderBalance, long senderVersion,
+                           Money recipientBalance, long recipientVersion) {
+        this.status = status;
+        this.recipientId = recipientId;
+        this.senderBalance = senderBalance;
+        this.senderVersion = senderVersion;
+        this.recipientBalance = recipientBalance;
+        this.recipientVersion = recipientVersion;
+    }
+
+    public static TransferResult success(int recipientId, Money senderBalance, long senderVersion,
+                                         Money recipientBalance, long recipientVersion) {
+        return new TransferResult(Status.SUCCESS, recipientId, senderBalance, senderVersion, recipientBalance,
+                recipientVersion);
+    }
+
+    public static TransferResult failure(Status status) {
+        return new TransferResult(status, -1, null, 0, null, 0);
+    }
+
+    public boolean isSuccess() {
+        return status == Status.SUCCESS;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public int getRecipientId() {
+        return recipientId;
+    }
+
+    // sender balance after the transfer, null if the transfer failed
+    public Money getSenderBalance() {
+        return senderBalance;
+    }
+
+    // row version of the sender's balance after the transfer
+    public long getSenderVersion() {
+        return senderVersion;
+    }
+
+    // recipient balance after the transfer, null if the transfer failed
+    public Money getRecipientBalance() {
+        return recipientBalance;
+    }
+
+    // row version of the recipient's balance after the transfer
+    public long getRecipientVersion() {
+        return recipientVersion;
+    }
+}
@@ -1,22 +1,27 @@
 package db_objs;
 
-
-import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.util.concurrent.atomic.AtomicReference;
 
 /*
-    User entity which is used to store user information (i.e. id, username, password, and current balance)
+    User entity which is used to store user information (i.e. id, username, and current balance)
+    the password is only ever checked against its stored hash and is never kept on the user
  */
 public class User {
     private final int id;
-    private final String username, password;
-    private BigDecimal currentBalance;
+    private final String username;
+
+    // the balance and its row version (bumped by the database on every balance change), replaced together
+    // the user is shared by the window, background tasks and the store's threads
+    private final AtomicReference<Balance> balance;
+
+    public User(int id, String username, Money currentBalance){
+        this(id, username, currentBalance, 0);
+    }
 
-    public User(int id, String username, String password, BigDecimal currentBalance){
+    public User(int id, String username, Money currentBalance, long version){
         this.id = id;
         this.username = username;
-        this.password = password;
-        this.currentBalance = currentBalance;
+        this.balance = new AtomicReference<>(new Balance(currentBalance, version));
     }
 
     public int getId() {
@@ -27,17 +32,41 @@ public class User {
         return username;
     }
 
-    public String getPassword() {
-        return password;
+    public Money getCurrentBalance() {
+        return balance.get().amount;
+    }
+
+    public long getVersion() {
+        return balance.get().version;
     }
 
-    public BigDecimal getCurrentBalance() {
-        return currentBalance;
+    // takes the committed balance of the given row version, unless the user already holds a newer one
+    // true if it did
+    public boolean updateBalance(Money newBalance, long version) {
+        while (true) {
+            Balance current = balance.get();
+            if (current.version > version) return false;
+            if (balance.compareAndSet(current, new Balance(newBalance, version))) return true;
+        }
     }
 
-    public void setCurrentBalance(BigDecimal newBalance){
-        // store new value to the 2nd decimal place
-        currentBalance = newBalance.setScale(2, RoundingMode.FLOOR);
+    // for stores without row versions, the version stays as it is
+    public void setCurrentBalance(Money newBalance){
+        balance.updateAndGet(current -> new Balance(newBalance, current.version));
+    }
+
+    public void addToBalance(Money amount){
+        balance.updateAndGet(current -> new Balance(current.amount.plus(amount), current.version));
+    }
+
+    private static final class Balance {
+        private final Money amount;
+        private final long version;
+
+        private Balance(Money amount, long version) {
+            this.amount = amount;
+            this.version = version;
+        }
     }
 }
 
@@ -0,0 +1,115 @@
+package db_objs;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/*
+    username -> user id for every account, loaded once at startup and kept current by this process's
+    registrations, so register and transfer can answer "is this username taken" and "who is the recipient"
+    without a round trip.
+    Other clients register accounts too. When a username isn't found the index first catches up on accounts
+    added since its last refresh (one range query on the primary key), at most once every refreshMillis, so a
+    "not found" is never staler than that. A Bloom filter in front of the map answers most misses without
+    touching the map.
+    Keys are lower-cased to match the case-insensitive collation MySQL uses for the username column.
+ */
+public class UsernameIndex {
+    // ids are assigned at insert but rows become visible at commit, re-read this many ids below the highest
+    // one seen so a slow commit that got a lower id isn't skipped
+    private static final int REFRESH_OVERLAP = 64;
+
+    private final ConnectionPool pool;
+    private final ConcurrentHashMap<String, Integer> ids;
+    private final BloomFilter bloomFilter;
+    private final long refreshNanos;
+    private final Object refreshLock = new Object();
+    private volatile int highestId;
+    private volatile long lastRefresh = System.nanoTime();
+
+    public UsernameIndex(ConnectionPool pool, int expectedUsers, double falsePositiveRate, long refreshMillis) {
+        this.pool = pool;
+        this.ids = new ConcurrentHashMap<>(Math.max(16, expectedUsers * 4 / 3));
+        this.bloomFilter = new BloomFilter(expectedUsers, falsePositiveRate);
+        this.refreshNanos = TimeUnit.MILLISECONDS.toNanos(refreshMillis);
+    }
+
+    // loads every account, call once before the index is used
+    public void load() {
+        try {
+            refresh();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // the user id of username, or null if no such account exists
+    public Integer find(String username) {
+        String key = key(username);
+        Integer id = bloomFilter.mightContain(key) ? ids.get(key) : null;
+        if (id != null) return id;
+
+        // maybe registered by another client since the last refresh
+        if (System.nanoTime() - lastRefresh < refreshNanos) return null;
+        try {
+            refresh();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return null;
+        }
+        return ids.get(key);
+    }
+
+    // true if the username is known to be taken, false means a registration may go ahead (the unique
+    // constraint on the column still has the final say)
+    public boolean contains(String username) {
+        String key = key(username);
+        return bloomFilter.mightContain(key) && ids.containsKey(key);
+    }
+
+    // records an account this process just inserted
+    public void add(String username, int id) {
+        String key = key(username);
+        ids.put(key, id);
+        bloomFilter.add(key);
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    // reads the accounts added since the last refresh, concurrent callers share one query
+    private void refresh() throws SQLException {
+        long started = System.nanoTime();
+        synchronized (refreshLock) {
+            // somebody else refreshed while we waited for the lock
+            if (lastRefresh - started > 0) return;
+
+            int newHighestId = highestId;
+            try (Connection connection = pool.getConnection();
+                 PreparedStatement queryUsers = connection.prepareStatement(
+                         "SELECT id, username FROM users WHERE id > ? ORDER BY id")) {
+
+                queryUsers.setInt(1, Math.max(0, highestId - REFRESH_OVERLAP));
+                queryUsers.setFetchSize(1_000);
+                try (ResultSet resultSet = queryUsers.executeQuery()) {
+                    while (resultSet.next()) {
+                        int id = resultSet.getInt(1);
+                        add(resultSet.getString(2), id);
+                        newHighestId = Math.max(newHighestId, id);
+                    }
+                }
+            }
+            highestId = newHighestId;
+            lastRefresh = System.nanoTime();
+        }
+    }
+
+    private static String key(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+}
@@ -1,15 +1,42 @@
 package guis;
 
+import db_objs.AccountStore;
+import db_objs.Money;
+import db_objs.StartupOrchestrator;
 import db_objs.User;
 import guis.BankingAppGui;
 import guis.LoginGui;
 import guis.RegisterGui;
 
 import javax.swing.*;
-import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
 
 public class AppLauncher {
+    // classes of the main window, loaded in the background so the first login doesn't read them from the jar
+    private static final String[] MAIN_WINDOW_CLASSES = {
+            "guis.BankingAppGui", "guis.BankingAppDialog", "guis.StatementTableModel",
+            "guis.StatementTableModel$Renderer", "javax.swing.JTable", "javax.swing.JScrollPane",
+            "javax.swing.JOptionPane", "javax.swing.JDialog", "javax.swing.table.DefaultTableCellRenderer"
+    };
+
     public static void main(String[] args) {
+        // open the store and get it ready for the first login off the EDT while the login window is shown,
+        // this also replays the postings a previous run logged but didn't get to apply
+        StartupOrchestrator startup = StartupOrchestrator.get();
+        CompletableFuture<Void> guiClasses = startup.run("guiClasses", AppLauncher::loadMainWindowClasses);
+        CompletableFuture<AccountStore> store = startup.start();
+        store.exceptionally(error -> {
+            error.printStackTrace();
+            return null;
+        });
+
+        // training run of a class data sharing archive (see README): load what a start loads, then exit so the
+        // JVM writes the archive
+        if (args.length > 0 && args[0].equals("--cds-training")) {
+            CompletableFuture.allOf(guiClasses, store).handle((ignored, error) -> null).join();
+            System.exit(0);
+        }
+
         // use invokeLater to make updates to the GUI more thread-safe
         SwingUtilities.invokeLater(new Runnable(){
             @Override
@@ -17,9 +44,20 @@ public class AppLauncher {
                 new LoginGui().setVisible(true);
 //                new RegisterGui().setVisible(true);
 //                new BankingAppGui(
-//                        new User(4, "username", "password", new BigDecimal("20.00"))
+//                        new User(4, "username", Money.parse("20.00"))
 //                ).setVisible(true);
             }
         });
     }
+
+    private static void loadMainWindowClasses() {
+        for (String name : MAIN_WINDOW_CLASSES) {
+            try {
+                // loaded only, Swing classes are initialized on the EDT when the window is built
+                Class.forName(name, false, AppLauncher.class.getClassLoader());
+            } catch (ClassNotFoundException e) {
+                e.printStackTrace();
+            }
+        }
+    }
 }
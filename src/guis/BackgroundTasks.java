@@ -0,0 +1,257 @@
+package guis;
+
+import db_objs.DbConfig;
+import db_objs.ProgressListener;
+import db_objs.VirtualThreads;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/*
+    Runs banking operations off the event dispatch thread so a slow database never freezes the window.
+    While an operation is in flight the window's buttons are disabled and a progress bar with a cancel button
+    is shown over it. The result (or the error) is handed back on the event dispatch thread. Operations that
+    move money can't be cancelled, see submitIrrevocable.
+ */
+public final class BackgroundTasks {
+    private static final ExecutorService EXECUTOR = VirtualThreads.newExecutor("bank-operation");
+
+    // how long an operation may take before it is abandoned
+    private static final long DEFAULT_TIMEOUT_MILLIS = DbConfig.getLong("ui.operationTimeoutMillis", 15_000);
+
+    private BackgroundTasks() {
+    }
+
+    // an operation that reports how far it has got
+    @FunctionalInterface
+    public interface ProgressOperation<T> {
+        T call(ProgressListener progress) throws Exception;
+    }
+
+    public static <T> CompletableFuture<T> submit(RootPaneContainer window, Callable<T> operation,
+                                                  Consumer<? super T> onSuccess, Consumer<? super Throwable> onFailure) {
+        return submit(window, operation, DEFAULT_TIMEOUT_MILLIS, onSuccess, onFailure);
+    }
+
+    // must be called on the event dispatch thread
+    // onSuccess and onFailure are called on the event dispatch thread, onFailure receives a TimeoutException
+    // when the operation took longer than timeoutMillis, nothing is called when the user cancels
+    public static <T> CompletableFuture<T> submit(RootPaneContainer window, Callable<T> operation, long timeoutMillis,
+                                                  Consumer<? super T> onSuccess, Consumer<? super Throwable> onFailure) {
+        return submitWithProgress(window, progress -> operation.call(), timeoutMillis, onSuccess, onFailure);
+    }
+
+    // like submit, the progress bar shows how far the operation has got instead of just spinning
+    public static <T> CompletableFuture<T> submitWithProgress(RootPaneContainer window, ProgressOperation<T> operation,
+                                                              long timeoutMillis, Consumer<? super T> onSuccess,
+                                                              Consumer<? super Throwable> onFailure) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        BusyOverlay overlay = new BusyOverlay(window, () -> future.cancel(true));
+        overlay.show();
+
+        Future<?> task = EXECUTOR.submit(() -> {
+            try {
+                future.complete(operation.call(overlay::showProgress));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+
+        future.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS).whenComplete((result, error) -> {
+            // stop the worker if we gave up on it (timeout or cancel)
+            if (error != null) task.cancel(true);
+
+            SwingUtilities.invokeLater(() -> {
+                overlay.hide();
+                if (error == null) {
+                    onSuccess.accept(result);
+                } else if (!(error instanceof CancellationException)) {
+                    onFailure.accept(unwrap(error));
+                }
+            });
+        });
+        return future;
+    }
+
+    // for operations that move money: once started the store has logged them and they go through whatever
+    // happens to the window, so the cancel button is disabled and a timeout doesn't stop the worker. onFailure
+    // receives the TimeoutException and onSuccess or onFailure is called again with the outcome once the
+    // operation finishes. Cancelling the returned future (e.g. the window was closed) only drops the callbacks
+    public static <T> CompletableFuture<T> submitIrrevocable(RootPaneContainer window, Callable<T> operation,
+                                                             Consumer<? super T> onSuccess,
+                                                             Consumer<? super Throwable> onFailure) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        BusyOverlay overlay = new BusyOverlay(window, null);
+        overlay.show();
+
+        EXECUTOR.submit(() -> {
+            try {
+                future.complete(operation.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+
+        // completes once the outcome has been handed to the callbacks
+        CompletableFuture<T> callbacks = new CompletableFuture<>();
+        future.copy().orTimeout(DEFAULT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).whenComplete((result, error) ->
+                SwingUtilities.invokeLater(() -> {
+                    overlay.hide();
+                    if (callbacks.isCancelled()) return;
+                    Throwable cause = error != null ? unwrap(error) : null;
+                    if (cause instanceof TimeoutException) {
+                        onFailure.accept(cause);
+                        future.whenComplete((lateResult, lateError) ->
+                                SwingUtilities.invokeLater(() -> deliver(callbacks, lateResult, lateError, onSuccess, onFailure)));
+                    } else {
+                        deliver(callbacks, result, error, onSuccess, onFailure);
+                    }
+                }));
+        return callbacks;
+    }
+
+    private static <T> void deliver(CompletableFuture<T> callbacks, T result, Throwable error,
+                                    Consumer<? super T> onSuccess, Consumer<? super Throwable> onFailure) {
+        if (callbacks.isCancelled()) return;
+        if (error == null) {
+            onSuccess.accept(result);
+            callbacks.complete(result);
+        } else {
+            onFailure.accept(unwrap(error));
+            callbacks.completeExceptionally(error);
+        }
+    }
+
+    // runs the operation without the busy overlay, for reads the window stays usable during (e.g. table rows
+    // loaded as they scroll into view). onSuccess and onFailure are called on the event dispatch thread
+    public static <T> CompletableFuture<T> fetch(Callable<T> operation, Consumer<? super T> onSuccess,
+                                                 Consumer<? super Throwable> onFailure) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Future<?> task = EXECUTOR.submit(() -> {
+            try {
+                future.complete(operation.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+
+        future.orTimeout(DEFAULT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).whenComplete((result, error) -> {
+            if (error != null) task.cancel(true);
+
+            SwingUtilities.invokeLater(() -> {
+                if (error == null) {
+                    onSuccess.accept(result);
+                } else if (!(error instanceof CancellationException)) {
+                    onFailure.accept(unwrap(error));
+                }
+            });
+        });
+        return future;
+    }
+
+    // short text for an error dialog
+    public static String describe(Throwable error) {
+        if (error instanceof TimeoutException) return "the operation timed out";
+        return error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    /*
+        Glass pane with an indeterminate progress bar, it swallows mouse clicks and the buttons underneath are
+        disabled so nothing can be triggered twice while the operation runs
+     */
+    private static final class BusyOverlay {
+        private final RootPaneContainer window;
+        private final JPanel glassPane = new JPanel(new GridBagLayout());
+        private final JProgressBar progressBar = new JProgressBar(0, 1000);
+        private final List<AbstractButton> disabledButtons = new ArrayList<>();
+        private Component previousGlassPane;
+
+        // without a cancelAction the cancel button is shown disabled
+        private BusyOverlay(RootPaneContainer window, Runnable cancelAction) {
+            this.window = window;
+
+            progressBar.setIndeterminate(true);
+            progressBar.setPreferredSize(new Dimension(200, 20));
+
+            JButton cancelButton = new JButton("Cancel");
+            cancelButton.setFont(new Font("Dialog", Font.PLAIN, 14));
+            if (cancelAction != null) {
+                cancelButton.addActionListener(e -> cancelAction.run());
+            } else {
+                cancelButton.setEnabled(false);
+            }
+
+            GridBagConstraints constraints = new GridBagConstraints();
+            constraints.gridx = 0;
+            constraints.insets = new Insets(5, 5, 5, 5);
+            glassPane.add(progressBar, constraints);
+            glassPane.add(cancelButton, constraints);
+            glassPane.setOpaque(false);
+
+            // consume mouse events so they don't reach the components below
+            glassPane.addMouseListener(new MouseAdapter() {});
+            glassPane.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        }
+
+        private void show() {
+            disableButtons(window.getContentPane());
+            previousGlassPane = window.getGlassPane();
+            window.setGlassPane(glassPane);
+            glassPane.setVisible(true);
+        }
+
+        // called by the worker, switches the bar to done out of total (just done while total isn't known)
+        private void showProgress(long done, long total) {
+            SwingUtilities.invokeLater(() -> {
+                progressBar.setStringPainted(true);
+                if (total > 0) {
+                    progressBar.setIndeterminate(false);
+                    progressBar.setValue((int) Math.min(1000, done * 1000 / total));
+                    progressBar.setString(done + " / " + total);
+                } else {
+                    progressBar.setString(String.valueOf(done));
+                }
+            });
+        }
+
+        private void hide() {
+            glassPane.setVisible(false);
+            window.setGlassPane(previousGlassPane);
+            for (AbstractButton button : disabledButtons) {
+                button.setEnabled(true);
+            }
+            disabledButtons.clear();
+        }
+
+        private void disableButtons(Container container) {
+            for (Component component : container.getComponents()) {
+                if (component instanceof AbstractButton && component.isEnabled()) {
+                    component.setEnabled(false);
+                    disabledButtons.add((AbstractButton) component);
+                } else if (component instanceof Container) {
+                    disableButtons((Container) component);
+                }
+            }
+        }
+    }
+}
@@ -1,27 +1,51 @@
 package guis;
 
-import db_objs.MyJDBC;
-import db_objs.Transaction;
+import db_objs.BankService;
+import db_objs.BatchTransferResult;
+import db_objs.Money;
+import db_objs.MonthlyStatement;
+import db_objs.PaymentLine;
+import db_objs.SessionHistory;
+import db_objs.TransferResult;
 import db_objs.User;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.math.BigDecimal;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.nio.file.Path;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
 
 /*
     Displays a custom dialog for our BankingAppGui
  */
 public class BankingAppDialog extends JDialog implements ActionListener {
+    // months offered in the past transaction view
+    static final int STATEMENT_MONTHS = 12;
+    private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("MMMM yyyy");
+
+    // an export runs until it is done or cancelled
+    private static final long EXPORT_TIMEOUT_MILLIS = Long.MAX_VALUE;
+
     private User user;
     private BankingAppGui bankingAppGui;
     private JLabel balanceLabel, enterAmountLabel, enterUserLabel;
     private JTextField enterAmountField, enterUserField;
     private JButton actionButton;
-    private JPanel pastTransactionPanel;
-    private ArrayList<Transaction> pastTransactions;
+    private JTextArea payeeListArea;
+    private JComboBox<MonthlyStatement> monthBox;
+    private JLabel statementSummaryLabel;
+    private StatementTableModel statementTableModel;
+    private final List<CompletableFuture<?>> inFlightOperations = new ArrayList<>();
 
     public BankingAppDialog(BankingAppGui bankingAppGui, User user){
         // set the size
@@ -47,6 +71,16 @@ public class BankingAppDialog extends JDialog implements ActionListener {
 
         // we will need access to the user info to make updates to our db or retrieve data about the user
         this.user = user;
+
+        // stop waiting for database operations when the dialog gets closed, postings and transfers still go through
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                for(CompletableFuture<?> operation : inFlightOperations){
+                    operation.cancel(true);
+                }
+            }
+        });
     }
 
     public void addCurrentBalanceAndAmount(){
@@ -70,6 +104,16 @@ public class BankingAppDialog extends JDialog implements ActionListener {
         enterAmountField.setFont(new Font("Dialog", Font.BOLD, 20));
         enterAmountField.setHorizontalAlignment(SwingConstants.RIGHT);
         add(enterAmountField);
+
+        // the balance we were handed may be stale (e.g. a transfer from another session), reload it
+        track(BackgroundTasks.submit(this,
+                () -> BankService.get().refreshBalance(user),
+                balance -> {
+                    if(balance != null) showCurrentBalance();
+                },
+                error -> {
+                    // keep showing the balance we have
+                }));
     }
 
     public void addActionButton(String actionButtonType){
@@ -95,95 +139,238 @@ public class BankingAppDialog extends JDialog implements ActionListener {
         add(enterUserField);
     }
 
-    public void addPastTransactionComponents(){
-        // container where we will store each transaction
-        pastTransactionPanel = new JPanel();
-
-        // make layout 1x1
-        pastTransactionPanel.setLayout(new BoxLayout(pastTransactionPanel, BoxLayout.Y_AXIS));
-
-        // add scrollability to the container
-        JScrollPane scrollPane = new JScrollPane(pastTransactionPanel);
-
-        // displays the vertical scroll only when it is required
-        scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
-        scrollPane.setBounds(0, 20, getWidth() - 15, getHeight() - 80);
-
-        // perform db call to retrieve all of the past transaction and store into array list
-        pastTransactions = MyJDBC.getPastTransaction(user);
-
-        // iterate through the list and add to the gui
-        for(int i = 0; i < pastTransactions.size(); i++){
-            // store current transaction
-            Transaction pastTransaction = pastTransactions.get(i);
-
-            // create a container to store an individual transaction
-            JPanel pastTransactionContainer = new JPanel();
-            pastTransactionContainer.setLayout(new BorderLayout());
-
-            // create transaction type label
-            JLabel transactionTypeLabel = new JLabel(pastTransaction.getTransactionType());
-            transactionTypeLabel.setFont(new Font("Dialog", Font.BOLD, 20));
-
-            // create transaction amount label
-            JLabel transactionAmountLabel = new JLabel(String.valueOf(pastTransaction.getTransactionAmount()));
-            transactionAmountLabel.setFont(new Font("Dialog", Font.BOLD, 20));
+    public void addBulkPaymentComponents(){
+        // balance label
+        balanceLabel = new JLabel("Balance: $" + user.getCurrentBalance());
+        balanceLabel.setBounds(0, 10, getWidth() - 20, 20);
+        balanceLabel.setFont(new Font("Dialog", Font.BOLD, 16));
+        balanceLabel.setHorizontalAlignment(SwingConstants.CENTER);
+        add(balanceLabel);
 
-            // create transaction date label
-            JLabel transactionDateLabel = new JLabel(String.valueOf(pastTransaction.getTransactionDate()));
-            transactionDateLabel.setFont(new Font("Dialog", Font.BOLD, 20));
+        // payee list label
+        JLabel payeeListLabel = new JLabel("One payee per line: username, amount");
+        payeeListLabel.setBounds(0, 40, getWidth() - 20, 20);
+        payeeListLabel.setFont(new Font("Dialog", Font.PLAIN, 14));
+        payeeListLabel.setHorizontalAlignment(SwingConstants.CENTER);
+        add(payeeListLabel);
+
+        // payee list, pasted from a spreadsheet or typed in
+        payeeListArea = new JTextArea();
+        payeeListArea.setFont(new Font("Monospaced", Font.PLAIN, 14));
+        JScrollPane scrollPane = new JScrollPane(payeeListArea);
+        scrollPane.setBounds(15, 70, getWidth() - 50, 215);
+        add(scrollPane);
 
-            // add to the container
-            pastTransactionContainer.add(transactionTypeLabel, BorderLayout.WEST); // place this on the west side
-            pastTransactionContainer.add(transactionAmountLabel, BorderLayout.EAST); // place this on the east side
-            pastTransactionContainer.add(transactionDateLabel, BorderLayout.SOUTH); // place this on the south side
+        // the balance we were handed may be stale, reload it
+        track(BackgroundTasks.submit(this,
+                () -> BankService.get().refreshBalance(user),
+                balance -> {
+                    if(balance != null) showCurrentBalance();
+                },
+                error -> {
+                    // keep showing the balance we have
+                }));
+    }
 
-            // give a white background to each container
-            pastTransactionContainer.setBackground(Color.WHITE);
+    public void addPastTransactionComponents(){
+        // month picker, newest month first
+        monthBox = new JComboBox<>();
+        monthBox.setBounds(15, 10, getWidth() - 160, 30);
+        monthBox.setFont(new Font("Dialog", Font.BOLD, 16));
+        monthBox.setRenderer(new DefaultListCellRenderer(){
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+                if(value != null) setText(MONTH_FORMAT.format(((MonthlyStatement) value).getMonth()));
+                return this;
+            }
+        });
+        monthBox.addActionListener(e -> showStatement((MonthlyStatement) monthBox.getSelectedItem()));
+
+        // writes the whole history to a file
+        JButton exportButton = new JButton("Export");
+        exportButton.setBounds(getWidth() - 140, 10, 105, 30);
+        exportButton.setFont(new Font("Dialog", Font.BOLD, 16));
+        exportButton.addActionListener(e -> handleExport());
+
+        // totals of the selected month
+        statementSummaryLabel = new JLabel();
+        statementSummaryLabel.setBounds(15, 45, getWidth() - 50, 60);
+        statementSummaryLabel.setFont(new Font("Dialog", Font.PLAIN, 14));
+
+        // the month's transactions, only the rows on screen are fetched and painted
+        statementTableModel = new StatementTableModel(user, error -> JOptionPane.showMessageDialog(this,
+                "Failed to load transactions: " + BackgroundTasks.describe(error)));
+        JTable transactionTable = new JTable(statementTableModel);
+        transactionTable.setDefaultRenderer(Object.class, new StatementTableModel.Renderer());
+        transactionTable.setRowHeight(24);
+        transactionTable.setFillsViewportHeight(true);
+        transactionTable.getTableHeader().setReorderingAllowed(false);
+        transactionTable.getTableHeader().setFont(new Font("Dialog", Font.BOLD, 14));
+        transactionTable.getColumnModel().getColumn(StatementTableModel.DATE_COLUMN).setPreferredWidth(130);
+
+        // clicking the date or amount header sorts by it, the database returns the rows in that order
+        transactionTable.getTableHeader().addMouseListener(new MouseAdapter(){
+            @Override
+            public void mouseClicked(MouseEvent e){
+                int column = transactionTable.convertColumnIndexToModel(transactionTable.columnAtPoint(e.getPoint()));
+                if(column < 0 || !statementTableModel.sortBy(column)) return;
+
+                // the arrow moves to the sorted column
+                for(int i = 0; i < statementTableModel.getColumnCount(); i++){
+                    transactionTable.getColumnModel().getColumn(transactionTable.convertColumnIndexToView(i))
+                            .setHeaderValue(statementTableModel.getColumnName(i));
+                }
+                transactionTable.getTableHeader().repaint();
+            }
+        });
 
-            // give a black border to each transaction container
-            pastTransactionContainer.setBorder(BorderFactory.createLineBorder(Color.BLACK));
+        // add scrollability to the table
+        JScrollPane scrollPane = new JScrollPane(transactionTable);
 
-            // add transaction component to the transaction panel
-            pastTransactionPanel.add(pastTransactionContainer);
-        }
+        // displays the vertical scroll only when it is required
+        scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
+        scrollPane.setBounds(0, 110, getWidth() - 15, getHeight() - 150);
+
+        // the monthly totals are aggregated by the database (closed months are cached), only the rows of
+        // the selected month that are on screen are fetched. What this session has read is kept, opening the
+        // history again only fetches the transactions made since
+        SessionHistory sessionHistory = bankingAppGui.getSessionHistory();
+        track(BackgroundTasks.submit(this,
+                sessionHistory::getMonthlyStatements,
+                statements -> {
+                    if(statements == null){
+                        JOptionPane.showMessageDialog(this, "Failed to load statements");
+                        return;
+                    }
+                    // selecting the first month loads its transactions
+                    for(int i = statements.size() - 1; i >= 0; i--){
+                        monthBox.addItem(statements.get(i));
+                    }
+                },
+                error -> JOptionPane.showMessageDialog(this,
+                        "Failed to load statements: " + BackgroundTasks.describe(error))));
 
         // add to the dialog
+        add(monthBox);
+        add(exportButton);
+        add(statementSummaryLabel);
         add(scrollPane);
     }
 
-    private void handleTransaction(String transactionType, float amountVal){
-        Transaction transaction;
+    // the account has new transactions, possibly from another session. The user object already holds the new
+    // balance, the history only fetches the new transactions
+    void accountChanged(){
+        if(balanceLabel != null) balanceLabel.setText("Balance: $" + user.getCurrentBalance());
+        if(monthBox == null || monthBox.getItemCount() == 0) return;
+
+        BackgroundTasks.fetch(
+                bankingAppGui.getSessionHistory()::getMonthlyStatements,
+                statements -> {
+                    if(statements == null || monthBox.getItemCount() == 0) return;
+                    MonthlyStatement current = statements.get(statements.size() - 1);
+                    if(current.getMonth().equals(monthBox.getItemAt(0).getMonth())){
+                        // removing the old one while it is selected selects the new one, which shows it
+                        monthBox.insertItemAt(current, 0);
+                        monthBox.removeItemAt(1);
+                    }else{
+                        // a new month has started
+                        monthBox.removeAllItems();
+                        for(int i = statements.size() - 1; i >= 0; i--){
+                            monthBox.addItem(statements.get(i));
+                        }
+                    }
+                },
+                error -> {
+                    // the next change tries again
+                });
+    }
 
-        if(transactionType.equalsIgnoreCase("Deposit")){
-            // deposit transaction type
-            // add to current balance
-            user.setCurrentBalance(user.getCurrentBalance().add(new BigDecimal(amountVal)));
+    private void showStatement(MonthlyStatement statement){
+        if(statement == null) return;
 
-            // create transaction
-            // we leave date null because we are going to be using the NOW() in sql which will get the current date
-            transaction = new Transaction(user.getId(), transactionType, new BigDecimal(amountVal), null);
-        }else{
-            // withdraw transaction type
-            // subtract from current balance
-            user.setCurrentBalance(user.getCurrentBalance().subtract(new BigDecimal(amountVal)));
+        String summary = "<html>Opening: $" + statement.getOpeningBalance()
+                + " &nbsp; Closing: $" + statement.getClosingBalance()
+                + "<br>In: $" + statement.getDeposits() + " deposits, $" + statement.getTransfersIn() + " transfers"
+                + "<br>Out: $" + statement.getWithdrawals() + " withdrawals, $" + statement.getTransfersOut()
+                + " transfers";
+        if(statement.getAdjustments().signum() != 0) summary += ", $" + statement.getAdjustments() + " adjusted";
+        statementSummaryLabel.setText(summary + "</html>");
 
-            // we want to show a negative sign for the amount val when withdrawing
-            transaction = new Transaction(user.getId(), transactionType, new BigDecimal(-amountVal), null);
-        }
+        // the newest lines of the current month are kept by the session
+        statementTableModel.setStatement(statement, bankingAppGui.getSessionHistory().getNewestLines(statement));
+    }
 
-        // update database
-        if(MyJDBC.addTransactionToDatabase(transaction) && MyJDBC.updateCurrentBalance(user)){
-            // show success dialog
-            JOptionPane.showMessageDialog(this, transactionType + " Successfully!");
+    private void handleExport(){
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Export Transactions");
+        fileChooser.setSelectedFile(new File(user.getUsername() + "-transactions.csv"));
+        if(fileChooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
 
-            // reset the fields
-            resetFieldsAndUpdateCurrentBalance();
-        }else{
-            // show failure dialog
-            JOptionPane.showMessageDialog(this, transactionType + " Failed...");
+        Path file = fileChooser.getSelectedFile().toPath();
+        if(!file.getFileName().toString().toLowerCase().matches(".*\\.(csv|jsonl)(\\.gz)?")){
+            JOptionPane.showMessageDialog(this, "Error: File name must end in .csv, .jsonl, .csv.gz or .jsonl.gz");
+            return;
         }
 
+        // streamed straight into the file, the progress bar shows how many rows are done
+        track(BackgroundTasks.submitWithProgress(this,
+                progress -> BankService.get().exportTransactions(user, file, progress),
+                EXPORT_TIMEOUT_MILLIS,
+                rows -> {
+                    if(rows < 0){
+                        JOptionPane.showMessageDialog(this, "Export Failed...");
+                    }else{
+                        JOptionPane.showMessageDialog(this, "Exported " + rows + " transactions to " + file.getFileName());
+                    }
+                },
+                error -> JOptionPane.showMessageDialog(this, "Export Failed: " + BackgroundTasks.describe(error))));
+    }
+
+    private void handleTransaction(String transactionType, Money amountVal){
+        // the deposit or withdrawal is posted and the balance we show is reloaded once it is applied
+        BankService bankService = BankService.get();
+        track(BackgroundTasks.submitIrrevocable(this,
+                () -> transactionType.equalsIgnoreCase("Deposit")
+                        ? bankService.deposit(user, amountVal)
+                        : bankService.withdraw(user, amountVal),
+                status -> {
+                    if(status == BankService.PostingStatus.SUCCESS){
+                        // show success dialog
+                        JOptionPane.showMessageDialog(this, transactionType + " Successfully!");
+
+                        // reset the fields
+                        resetFieldsAndUpdateCurrentBalance();
+                    }else if(status == BankService.PostingStatus.PENDING){
+                        JOptionPane.showMessageDialog(this,
+                                transactionType + " saved, it will be applied once the database responds");
+                        resetFieldsAndUpdateCurrentBalance();
+                    }else if(status == BankService.PostingStatus.INSUFFICIENT_FUNDS){
+                        JOptionPane.showMessageDialog(this, "Error: Input value is more than current balance");
+                    }else if(status == BankService.PostingStatus.CONFLICT){
+                        // the balance we showed was out of date, show the current one
+                        showCurrentBalance();
+                        JOptionPane.showMessageDialog(this, "Your balance changed in the meantime and is now $"
+                                + user.getCurrentBalance() + ", nothing was withdrawn");
+                    }else{
+                        // show failure dialog
+                        JOptionPane.showMessageDialog(this, transactionType + " Failed...");
+                    }
+                },
+                error -> {
+                    if(error instanceof TimeoutException){
+                        showStillProcessing(transactionType);
+                    }else{
+                        JOptionPane.showMessageDialog(this, transactionType + " Failed: " + BackgroundTasks.describe(error));
+                    }
+                }));
+    }
+
+    // a money-moving operation took longer than the timeout, it can't be taken back and its outcome is shown
+    // once it is known
+    private void showStillProcessing(String operation){
+        JOptionPane.showMessageDialog(this, operation + " is still processing, you will be told once it is done");
     }
 
     private void resetFieldsAndUpdateCurrentBalance(){
@@ -195,6 +382,10 @@ public class BankingAppDialog extends JDialog implements ActionListener {
             enterUserField.setText("");
         }
 
+        showCurrentBalance();
+    }
+
+    private void showCurrentBalance(){
         // update current balance on dialog
         balanceLabel.setText("Balance: $" + user.getCurrentBalance());
 
@@ -202,53 +393,155 @@ public class BankingAppDialog extends JDialog implements ActionListener {
         bankingAppGui.getCurrentBalanceField().setText("$" + user.getCurrentBalance());
     }
 
-    private void handleTransfer(User user, String transferredUser, float amount){
+    private void handleTransfer(User user, String transferredUser, Money amount){
         // attempt to perform transfer
-        if(MyJDBC.transfer(user, transferredUser, amount)){
-            // show success dialog
-            JOptionPane.showMessageDialog(this, "Transfer Success!");
-            resetFieldsAndUpdateCurrentBalance();
-        }else{
-            // show failure dialog
-            JOptionPane.showMessageDialog(this, "Transfer Failed...");
+        track(BackgroundTasks.submitIrrevocable(this,
+                () -> BankService.get().transfer(user, transferredUser, amount),
+                result -> {
+                    if(result.isSuccess()){
+                        // show success dialog
+                        JOptionPane.showMessageDialog(this, "Transfer Success!");
+                        resetFieldsAndUpdateCurrentBalance();
+                    }else if(result.getStatus() == TransferResult.Status.RECIPIENT_NOT_FOUND){
+                        JOptionPane.showMessageDialog(this, "Transfer Failed: user not found");
+                    }else if(result.getStatus() == TransferResult.Status.PENDING){
+                        JOptionPane.showMessageDialog(this, "Transfer saved, it will be applied once the database responds");
+                        resetFieldsAndUpdateCurrentBalance();
+                    }else if(result.getStatus() == TransferResult.Status.INSUFFICIENT_FUNDS){
+                        JOptionPane.showMessageDialog(this, "Transfer Failed: insufficient funds");
+                    }else if(result.getStatus() == TransferResult.Status.CONFLICT){
+                        showCurrentBalance();
+                        JOptionPane.showMessageDialog(this, "Your balance changed in the meantime and is now $"
+                                + user.getCurrentBalance() + ", nothing was transferred");
+                    }else if(result.getStatus() == TransferResult.Status.SAME_ACCOUNT){
+                        JOptionPane.showMessageDialog(this, "Transfer Failed: can't transfer to yourself");
+                    }else{
+                        // show failure dialog
+                        JOptionPane.showMessageDialog(this, "Transfer Failed...");
+                    }
+                },
+                error -> {
+                    if(error instanceof TimeoutException){
+                        showStillProcessing("Transfer");
+                    }else{
+                        JOptionPane.showMessageDialog(this, "Transfer Failed: " + BackgroundTasks.describe(error));
+                    }
+                }));
+    }
+
+    private void handleBulkPayment(){
+        // read every non-empty line, report all the lines we can't read at once
+        List<PaymentLine> lines = new ArrayList<>();
+        StringBuilder errors = new StringBuilder();
+        String[] rows = payeeListArea.getText().split("\\R");
+        for(int i = 0; i < rows.length; i++){
+            if(rows[i].isBlank()) continue;
+            try{
+                lines.add(PaymentLine.parse(rows[i]));
+            }catch(IllegalArgumentException ex){
+                errors.append("Line ").append(i + 1).append(": ").append(ex.getMessage()).append('\n');
+            }
+        }
+        if(errors.length() > 0){
+            JOptionPane.showMessageDialog(this, "Error: Fix these lines first\n" + errors);
+            return;
         }
+        if(lines.isEmpty()){
+            JOptionPane.showMessageDialog(this, "Error: Enter at least one payee");
+            return;
+        }
+
+        actionButton.setEnabled(false);
+        track(BackgroundTasks.submitIrrevocable(this,
+                () -> BankService.get().transferBatch(user, lines),
+                result -> {
+                    actionButton.setEnabled(true);
+                    showBulkPaymentResult(lines, result);
+                },
+                error -> {
+                    if(error instanceof TimeoutException){
+                        showStillProcessing("Bulk payment");
+                        return;
+                    }
+                    actionButton.setEnabled(true);
+                    JOptionPane.showMessageDialog(this, "Bulk Payment Failed: " + BackgroundTasks.describe(error));
+                }));
+    }
+
+    private void showBulkPaymentResult(List<PaymentLine> lines, BatchTransferResult result){
+        StringBuilder message = new StringBuilder("Paid " + result.getSucceededCount() + " of " + lines.size()
+                + " payees, $" + result.getTotalTransferred() + " in total");
+
+        // list the first few lines that didn't go through
+        int listed = 0, failed = lines.size() - result.getSucceededCount();
+        for(int i = 0; i < lines.size() && listed < 10; i++){
+            if(result.getStatus(i) == TransferResult.Status.SUCCESS) continue;
+            message.append('\n').append(lines.get(i).getRecipientUsername()).append(": ")
+                    .append(describe(result.getStatus(i)));
+            listed++;
+        }
+        if(failed > listed) message.append("\n... and ").append(failed - listed).append(" more");
+        JOptionPane.showMessageDialog(this, message.toString());
+
+        if(result.getSucceededCount() > 0){
+            payeeListArea.setText("");
+            showCurrentBalance();
+        }
+    }
+
+    private static String describe(TransferResult.Status status){
+        switch(status){
+            case RECIPIENT_NOT_FOUND:
+                return "user not found";
+            case SAME_ACCOUNT:
+                return "can't pay yourself";
+            case INSUFFICIENT_FUNDS:
+                return "insufficient funds";
+            case INVALID_AMOUNT:
+                return "amount must be more than zero";
+            default:
+                return "failed";
+        }
+    }
+
+    // remember the operations in flight so closing the dialog can cancel them
+    private void track(CompletableFuture<?> operation){
+        inFlightOperations.removeIf(CompletableFuture::isDone);
+        inFlightOperations.add(operation);
     }
 
     @Override
     public void actionPerformed(ActionEvent e) {
         String buttonPressed = e.getActionCommand();
 
-        // get amount val
-        float amountVal = Float.parseFloat(enterAmountField.getText());
+        // the bulk payment has an amount on every line instead of one amount field
+        if(buttonPressed.equalsIgnoreCase("Pay All")){
+            handleBulkPayment();
+            return;
+        }
+
+        // get amount val, parsed exactly to the cent
+        Money amountVal;
+        try{
+            amountVal = Money.parse(enterAmountField.getText());
+        }catch(NumberFormatException ex){
+            JOptionPane.showMessageDialog(this, "Error: Enter an amount such as 12.34");
+            return;
+        }
+        if(amountVal.signum() <= 0){
+            JOptionPane.showMessageDialog(this, "Error: Amount must be more than zero");
+            return;
+        }
 
-        // pressed deposit
-        if(buttonPressed.equalsIgnoreCase("Deposit")){
-            // we want to handle the deposit transaction
+        // the balance checks are done by the bank service
+        if(buttonPressed.equalsIgnoreCase("Deposit") || buttonPressed.equalsIgnoreCase("Withdraw")){
             handleTransaction(buttonPressed, amountVal);
         }else{
-            // pressed withdraw or transfer
-
-            // validate input by making sure that withdraw or transfer amount is less than current balance
-            // if result is -1 it means that the entered amount is more, 0 means they are equal, and 1 means that
-            // the entered amount is less
-            int result = user.getCurrentBalance().compareTo(BigDecimal.valueOf(amountVal));
-            if(result < 0){
-                // display error dialog
-                JOptionPane.showMessageDialog(this, "Error: Input value is more than current balance");
-                return;
-            }
-
-            // check to see if withdraw or transfer was pressed
-            if(buttonPressed.equalsIgnoreCase("Withdraw")){
-                handleTransaction(buttonPressed, amountVal);
-            }else{
-                // transfer
-                String transferredUser = enterUserField.getText();
-
-                // handle transfer
-                handleTransfer(user, transferredUser, amountVal);
-            }
+            // transfer
+            String transferredUser = enterUserField.getText();
 
+            // handle transfer
+            handleTransfer(user, transferredUser, amountVal);
         }
     }
 }
@@ -1,6 +1,10 @@
 package guis;
 
 
+import db_objs.AccountChange;
+import db_objs.BankService;
+import db_objs.ChangeFeed;
+import db_objs.SessionHistory;
 import db_objs.User;
 
 import javax.swing.*;
@@ -16,8 +20,36 @@ public class BankingAppGui extends BaseFrame implements ActionListener {
     private JTextField currentBalanceField;
     public JTextField getCurrentBalanceField(){return currentBalanceField;}
 
+    // the history this session has read, reopening the past transactions only fetches what is new
+    private SessionHistory sessionHistory;
+    public SessionHistory getSessionHistory(){
+        if(sessionHistory == null){
+            sessionHistory = new SessionHistory(BankService.get(), user, BankingAppDialog.STATEMENT_MONTHS,
+                    StatementTableModel.PAGE_SIZE);
+        }
+        return sessionHistory;
+    }
+
+    // the dialog that is open right now, it is shown the changes too
+    private BankingAppDialog openDialog;
+
+    // changes of the account made by any session, e.g. an incoming transfer
+    private ChangeFeed.Subscription accountChanges;
+
     public BankingAppGui(User user){
         super("Banking App", user);
+
+        // the balance follows the account without asking the database, the change feed does that for every window
+        accountChanges = BankService.get().subscribe(user,
+                change -> SwingUtilities.invokeLater(() -> showAccountChange(change)));
+    }
+
+    private void showAccountChange(AccountChange change){
+        // this session already holds a newer balance (e.g. it made the change itself)
+        if(!user.updateBalance(change.getBalance(), change.getVersion())) return;
+
+        currentBalanceField.setText("$" + user.getCurrentBalance());
+        if(openDialog != null) openDialog.accountChanged();
     }
     @Override
     protected void addGuiComponents() {
@@ -75,9 +107,16 @@ public class BankingAppGui extends BaseFrame implements ActionListener {
         transferButton.addActionListener(this);
         add(transferButton);
 
+        // bulk payment button
+        JButton bulkPaymentButton = new JButton("Bulk Payment");
+        bulkPaymentButton.setBounds(15, 455, getWidth() - 50, 40);
+        bulkPaymentButton.setFont(new Font("Dialog", Font.BOLD, 20));
+        bulkPaymentButton.addActionListener(this);
+        add(bulkPaymentButton);
+
         // logout button
         JButton logoutButton = new JButton("Logout");
-        logoutButton.setBounds(15, 500, getWidth() - 50, 50);
+        logoutButton.setBounds(15, 510, getWidth() - 50, 40);
         logoutButton.setFont(new Font("Dialog", Font.BOLD, 22));
         logoutButton.addActionListener(this);
         add(logoutButton);
@@ -89,6 +128,10 @@ public class BankingAppGui extends BaseFrame implements ActionListener {
 
         // user pressed logout
         if(buttonPressed.equalsIgnoreCase("Logout")){
+            // nothing read in this session is kept for the next one
+            if(sessionHistory != null) sessionHistory.invalidate();
+            accountChanges.close();
+
             // return user to the login gui
             new LoginGui().setVisible(true);
 
@@ -121,10 +164,16 @@ public class BankingAppGui extends BaseFrame implements ActionListener {
 
         }else if(buttonPressed.equalsIgnoreCase("Past Transaction")){
             bankingAppDialog.addPastTransactionComponents();
+        }else if(buttonPressed.equalsIgnoreCase("Bulk Payment")){
+            // paste a payee list and pay all of it at once
+            bankingAppDialog.addBulkPaymentComponents();
+            bankingAppDialog.addActionButton("Pay All");
         }
 
-        // make the app dialog visible
+        // make the app dialog visible, it is modal so this returns once it has been closed
+        openDialog = bankingAppDialog;
         bankingAppDialog.setVisible(true);
+        openDialog = null;
     }
 }
 
@@ -1,6 +1,6 @@
 package guis;
 
-import db_objs.MyJDBC;
+import db_objs.BankService;
 import db_objs.User;
 
 import javax.swing.*;
@@ -101,25 +101,28 @@ public class LoginGui extends BaseFrame {
                 // JPasswordField.getPassword() returns a char[] for security reasons
                 String password = String.valueOf(passwordField.getPassword());
 
-                // Validate the login credentials using a custom MyJDBC class method
-                // This presumably checks a database for a matching username and password
-                User user = MyJDBC.validateLogin(username, password);
-
-                // Check if the login was successful (user object is not null)
-                if (user != null) {
-                    // If valid, close the current login window
-                    LoginGui.this.dispose();
-
-                    // Launch the main banking application GUI, passing the authenticated user object
-                    BankingAppGui bankingAppGui = new BankingAppGui(user);
-                    bankingAppGui.setVisible(true);
-
-                    // Display a success message dialog attached to the new banking GUI
-                    JOptionPane.showMessageDialog(bankingAppGui, "Login Successfully!");
-                } else {
-                    // If login fails (user is null), show an error message attached to the login GUI
-                    JOptionPane.showMessageDialog(LoginGui.this, "Login failed...");
-                }
+                // Validate the login credentials using the configured account store
+                // This runs in the background so a slow database doesn't freeze the window
+                BackgroundTasks.submit(LoginGui.this,
+                        () -> BankService.get().login(username, password),
+                        user -> {
+                            // Check if the login was successful (user object is not null)
+                            if (user != null) {
+                                // If valid, close the current login window
+                                LoginGui.this.dispose();
+
+                                // Launch the main banking application GUI, passing the authenticated user object
+                                BankingAppGui bankingAppGui = new BankingAppGui(user);
+                                bankingAppGui.setVisible(true);
+
+                                // Display a success message dialog attached to the new banking GUI
+                                JOptionPane.showMessageDialog(bankingAppGui, "Login Successfully!");
+                            } else {
+                                // If login fails (user is null), show an error message attached to the login GUI
+                                JOptionPane.showMessageDialog(LoginGui.this, "Login failed...");
+                            }
+                        },
+                        error -> JOptionPane.showMessageDialog(LoginGui.this, "Login failed: " + BackgroundTasks.describe(error)));
             }
         });
         add(loginButton);
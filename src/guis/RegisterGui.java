@@ -1,6 +1,6 @@
 package guis;
 
-import db_objs.MyJDBC;
+import db_objs.BankService;
 
 import javax.swing.*;
 import java.awt.*;
@@ -122,27 +122,33 @@ public class RegisterGui extends BaseFrame {
                 // Retrieve the re-typed password as a char array and convert it to a String
                 String rePassword = String.valueOf(rePasswordField.getPassword());
 
-                // Validate the user input using a helper method
-                if (validateUserInput(username, password, rePassword)) {
-                    // If input is valid, attempt to register the user in the database
-                    if (MyJDBC.register(username, password)) {
-                        // Registration successful: close the current window
-                        RegisterGui.this.dispose();
-
-                        // Open the login GUI for the user to sign in
-                        LoginGui loginGui = new LoginGui();
-                        loginGui.setVisible(true);
-
-                        // Show a success message attached to the login GUI
-                        JOptionPane.showMessageDialog(loginGui, "Registered Account Successfully!");
-                    } else {
-                        // Registration failed (e.g., username already exists)
-                        JOptionPane.showMessageDialog(RegisterGui.this, "Error: Username already taken");
-                    }
+                // Validate the user input with the same rules the bank service applies
+                if (BankService.isValidRegistration(username, password, rePassword)) {
+                    // If input is valid, attempt to register the user in the database (in the background)
+                    BackgroundTasks.submit(RegisterGui.this,
+                            () -> BankService.get().register(username, password, rePassword),
+                            registered -> {
+                                if (registered) {
+                                    // Registration successful: close the current window
+                                    RegisterGui.this.dispose();
+
+                                    // Open the login GUI for the user to sign in
+                                    LoginGui loginGui = new LoginGui();
+                                    loginGui.setVisible(true);
+
+                                    // Show a success message attached to the login GUI
+                                    JOptionPane.showMessageDialog(loginGui, "Registered Account Successfully!");
+                                } else {
+                                    // Registration failed (e.g., username already exists)
+                                    JOptionPane.showMessageDialog(RegisterGui.this, "Error: Username already taken");
+                                }
+                            },
+                            error -> JOptionPane.showMessageDialog(RegisterGui.this,
+                                    "Error: Registration failed: " + BackgroundTasks.describe(error)));
                 } else {
                     // Input validation failed: show an error message with specific requirements
                     JOptionPane.showMessageDialog(RegisterGui.this,
-                            "Error: Username must be at least 6 characters\n" +
+                            "Error: Username must be at least " + BankService.MIN_USERNAME_LENGTH + " characters\n" +
                             "and/or Password must match");
                 }
             }
@@ -175,19 +181,4 @@ public class RegisterGui extends BaseFrame {
         });
         add(loginLabel);
     }
-
-    // Helper method to validate user input before attempting registration
-    private boolean validateUserInput(String username, String password, String rePassword) {
-        // Check that all fields are non-empty
-        if (username.length() == 0 || password.length() == 0 || rePassword.length() == 0) return false;
-
-        // Ensure the username is at least 6 characters long for security
-        if (username.length() < 6) return false;
-
-        // Verify that the password and re-typed password match
-        if (!password.equals(rePassword)) return false;
-
-        // If all checks pass, the input is valid
-        return true;
-    }
 }
\ No newline at end of file
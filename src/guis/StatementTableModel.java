@@ -0,0 +1,250 @@
+package guis;
+
+import db_objs.BankService;
+import db_objs.MonthlyStatement;
+import db_objs.StatementLine;
+import db_objs.StatementQuery;
+import db_objs.User;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+import java.awt.*;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/*
+    Table model of one month's statement that only holds the pages of rows around what is on screen.
+    The row count comes from the statement, a page is fetched in the background the first time one of its rows
+    is painted (its cells show "..." until then) and the least recently painted pages are dropped once
+    CACHED_PAGES are held, so a month of a million transactions costs the same to open and scroll through as one
+    of a hundred in date order. Dragging the scroll bar far into a long month, or sorting by amount, makes the
+    database pass over more of the month's index (see LedgerStatements). Sorting reads the pages again in the
+    new order.
+ */
+public class StatementTableModel extends AbstractTableModel {
+    public static final int DATE_COLUMN = 0, TYPE_COLUMN = 1, AMOUNT_COLUMN = 2, BALANCE_COLUMN = 3;
+    private static final String[] COLUMN_NAMES = {"Date", "Type", "Amount", "Balance"};
+    private static final String DESCENDING = " \u25BC", ASCENDING = " \u25B2";
+
+    public static final int PAGE_SIZE = 100;
+    private static final int CACHED_PAGES = 20;
+
+    private final User user;
+    private final Consumer<Throwable> onFailure;
+    private MonthlyStatement statement;
+    private List<StatementLine> newestLines;
+    private StatementQuery.Order order = StatementQuery.Order.NEWEST_FIRST;
+
+    // pages by index, in the order they were last painted
+    private final Map<Integer, List<StatementLine>> pages = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<StatementLine>> eldest) {
+            return size() > CACHED_PAGES;
+        }
+    };
+    private final Set<Integer> loadingPages = new HashSet<>();
+
+    // pages waiting for the page before them, so they can continue after its last line instead of skipping rows
+    private final Set<Integer> deferredPages = new HashSet<>();
+
+    // bumped whenever the rows change, pages fetched for an older generation are dropped
+    private int generation;
+    private boolean failureReported;
+
+    // onFailure is called (once per statement or order) when a page couldn't be read
+    public StatementTableModel(User user, Consumer<Throwable> onFailure) {
+        this.user = user;
+        this.onFailure = onFailure;
+    }
+
+    // shows the month of statement, null shows nothing
+    // newestLines is the month's first page newest first when it is already known (null otherwise)
+    public void setStatement(MonthlyStatement statement, List<StatementLine> newestLines) {
+        this.statement = statement;
+        this.newestLines = newestLines;
+        reset();
+    }
+
+    public StatementQuery.Order getOrder() {
+        return order;
+    }
+
+    // sorts by the column, clicking it again reverses the order. Only date and amount can be sorted,
+    // false for the other columns
+    public boolean sortBy(int column) {
+        if (column == DATE_COLUMN) {
+            order = order == StatementQuery.Order.NEWEST_FIRST
+                    ? StatementQuery.Order.OLDEST_FIRST : StatementQuery.Order.NEWEST_FIRST;
+        } else if (column == AMOUNT_COLUMN) {
+            order = order == StatementQuery.Order.LARGEST_FIRST
+                    ? StatementQuery.Order.SMALLEST_FIRST : StatementQuery.Order.LARGEST_FIRST;
+        } else {
+            return false;
+        }
+        reset();
+        return true;
+    }
+
+    @Override
+    public int getRowCount() {
+        return statement == null ? 0 : statement.getTransactionCount();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    // the name with an arrow on the column the rows are sorted by
+    @Override
+    public String getColumnName(int column) {
+        String name = COLUMN_NAMES[column];
+        switch (order) {
+            case NEWEST_FIRST:
+                return column == DATE_COLUMN ? name + DESCENDING : name;
+            case OLDEST_FIRST:
+                return column == DATE_COLUMN ? name + ASCENDING : name;
+            case LARGEST_FIRST:
+                return column == AMOUNT_COLUMN ? name + DESCENDING : name;
+            default:
+                return column == AMOUNT_COLUMN ? name + ASCENDING : name;
+        }
+    }
+
+    // null while the row's page is being fetched
+    @Override
+    public Object getValueAt(int row, int column) {
+        StatementLine line = lineAt(row);
+        if (line == null) return null;
+
+        switch (column) {
+            case DATE_COLUMN:
+                return line.getTransaction().getTransactionDate();
+            case TYPE_COLUMN:
+                return line.getTransaction().getTransactionType();
+            case AMOUNT_COLUMN:
+                return line.getTransaction().getTransactionAmount();
+            default:
+                return line.getBalanceAfter();
+        }
+    }
+
+    private StatementLine lineAt(int row) {
+        int page = row / PAGE_SIZE;
+        List<StatementLine> lines = pages.get(page);
+        if (lines == null) {
+            load(page);
+            return null;
+        }
+
+        // the month may have fewer lines by now than the statement counted
+        int index = row % PAGE_SIZE;
+        return index < lines.size() ? lines.get(index) : null;
+    }
+
+    private void load(int page) {
+        if (loadingPages.contains(page) || deferredPages.contains(page)) return;
+
+        // the page continues after the last line of the one before, which is cheap for the database, skipping
+        // rows to get to it isn't
+        StatementQuery query = new StatementQuery().setPageSize(PAGE_SIZE).setOrder(order);
+        if (page > 0) {
+            if (loadingPages.contains(page - 1)) {
+                deferredPages.add(page);
+                return;
+            }
+            List<StatementLine> previous = pages.get(page - 1);
+            if (previous != null && previous.size() == PAGE_SIZE) {
+                query.setAfter(previous.get(PAGE_SIZE - 1));
+            } else {
+                query.setOffset(page * PAGE_SIZE);
+            }
+        }
+
+        int requestedGeneration = generation;
+        MonthlyStatement requestedStatement = statement;
+        loadingPages.add(page);
+        BackgroundTasks.fetch(
+                () -> BankService.get().getStatementPage(user, requestedStatement, query),
+                lines -> {
+                    if (requestedGeneration != generation) return;
+                    loadingPages.remove(page);
+                    if (lines == null) {
+                        // the page after it is asked for again the next time it is painted
+                        deferredPages.remove(page + 1);
+                        reportFailure(new IllegalStateException("Failed to load transactions"));
+                        return;
+                    }
+                    pages.put(page, lines);
+                    fireRowsOfPageUpdated(page);
+
+                    // the next page was asked for while this one was loading
+                    if (deferredPages.remove(page + 1)) load(page + 1);
+                },
+                error -> {
+                    if (requestedGeneration != generation) return;
+                    loadingPages.remove(page);
+                    deferredPages.remove(page + 1);
+                    reportFailure(error);
+                });
+    }
+
+    private void fireRowsOfPageUpdated(int page) {
+        int firstRow = page * PAGE_SIZE;
+        int lastRow = Math.min(getRowCount(), firstRow + PAGE_SIZE) - 1;
+        if (lastRow >= firstRow) fireTableRowsUpdated(firstRow, lastRow);
+    }
+
+    private void reportFailure(Throwable error) {
+        if (failureReported) return;
+        failureReported = true;
+        onFailure.accept(error);
+    }
+
+    private void reset() {
+        generation++;
+        pages.clear();
+        loadingPages.clear();
+        deferredPages.clear();
+        failureReported = false;
+        if (newestLines != null && order == StatementQuery.Order.NEWEST_FIRST) pages.put(0, newestLines);
+        fireTableDataChanged();
+    }
+
+    /*
+        The one renderer of every cell, it only swaps its text so painting a row creates nothing
+     */
+    public static class Renderer extends DefaultTableCellRenderer {
+        private static final Font CELL_FONT = new Font("Dialog", Font.PLAIN, 14);
+        private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+        @Override
+        public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+                                                       boolean hasFocus, int row, int column) {
+            super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+            setFont(CELL_FONT);
+
+            int modelColumn = table.convertColumnIndexToModel(column);
+            setHorizontalAlignment(modelColumn == AMOUNT_COLUMN || modelColumn == BALANCE_COLUMN ? RIGHT : LEFT);
+            if (value == null) {
+                setText("...");
+            } else if (value instanceof Date) {
+                setText(DATE_FORMAT.format(LocalDateTime.ofInstant(
+                        Instant.ofEpochMilli(((Date) value).getTime()), ZoneId.systemDefault())));
+            } else if (modelColumn == BALANCE_COLUMN) {
+                setText("$" + value);
+            }
+            return this;
+        }
+    }
+}